@@ -0,0 +1,43 @@
+#!/bin/bash
+# Runs the thread-modes.js mix against the platform-thread and the virtual-thread modes
+# at 1k, 5k and 10k concurrent clients and prints one table with throughput and p99.
+# Needs a built jar (./gradlew bootJar), a running Mongo (./start_mongo_only.sh) and k6 on the PATH.
+set -e
+
+cd "$(dirname "$0")"
+JAR=../../build/libs/hello-0.0.1-SNAPSHOT.jar
+BASE_URL=${BASE_URL:-http://localhost:8081}
+DURATION=${DURATION:-2m}
+RESULTS=results
+mkdir -p $RESULTS
+
+# the load generator needs as many open files as clients
+ulimit -n 65536
+
+run_mode() {
+    local mode=$1
+    local profile=$2
+
+    SPRING_PROFILES_ACTIVE=$profile java -jar $JAR > $RESULTS/app-$mode.log 2>&1 &
+    local app_pid=$!
+    until curl -sf $BASE_URL/actuator/health > /dev/null; do sleep 1; done
+
+    for clients in 1000 5000 10000; do
+        k6 run --quiet -e BASE_URL=$BASE_URL -e CLIENTS=$clients -e DURATION=$DURATION -e MODE=$mode \
+            -e SUMMARY_FILE=$RESULTS/$mode-$clients.json thread-modes.js
+    done
+
+    kill $app_pid
+    wait $app_pid || true
+}
+
+run_mode platform default
+run_mode virtual virtual-threads
+
+printf "%-10s %8s %12s %10s %10s %8s\n" mode clients "req/s" "p50 ms" "p99 ms" errors
+for mode in platform virtual; do
+    for clients in 1000 5000 10000; do
+        jq -r '[.mode, .clients, (.requestsPerSecond|floor), (.p50*10|floor/10), (.p99*10|floor/10), ((.failedRate*1000|floor)/10|tostring + "%")] | @tsv' \
+            $RESULTS/$mode-$clients.json | awk -F'\t' '{ printf "%-10s %8s %12s %10s %10s %8s\n", $1, $2, $3, $4, $5, $6 }'
+    done
+done
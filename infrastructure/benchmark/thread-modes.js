@@ -0,0 +1,82 @@
+// k6 load test for comparing the platform-thread and the virtual-thread execution modes.
+// Every virtual user loops over the same read mix, all of them blocking on Mongo:
+//   GET /reviews/by-driver/{id}  - uncached query
+//   GET /rides?limit=50          - keyset page
+//   GET /users/{id}              - user cache, mostly hits
+//
+// Usage: k6 run -e BASE_URL=http://localhost:8081 -e CLIENTS=1000 thread-modes.js
+import http from 'k6/http';
+import { check } from 'k6';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8081';
+const CLIENTS = parseInt(__ENV.CLIENTS || '1000');
+const DURATION = __ENV.DURATION || '2m';
+const DRIVERS = 50;
+
+export const options = {
+    scenarios: {
+        clients: {
+            executor: 'constant-vus',
+            vus: CLIENTS,
+            duration: DURATION,
+            gracefulStop: '10s',
+        },
+    },
+    summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+    // keep the connections open, like the real clients do
+    noConnectionReuse: false,
+};
+
+// creates the drivers the mix reads, POST /users does not return the id so they are found through the listing
+export function setup() {
+    const runId = String(Date.now());
+    for (let i = 0; i < DRIVERS; i++) {
+        http.post(`${BASE_URL}/users`, JSON.stringify({
+            firstName: 'bench',
+            lastName: `driver${i}`,
+            mail: `bench-${runId}-${i}@mail.com`,
+            phoneNumber: '09' + runId.slice(-6) + String(i).padStart(2, '0'),
+            password: 'benchmark',
+        }), { headers: { 'Content-Type': 'application/json' } });
+    }
+
+    const drivers = [];
+    let cursor = null;
+    do {
+        const page = http.get(`${BASE_URL}/users?limit=500` + (cursor ? `&cursor=${cursor}` : '')).json();
+        page.items
+            .filter((user) => user.mail && user.mail.startsWith(`bench-${runId}-`))
+            .forEach((user) => drivers.push(user.id));
+        cursor = page.nextCursor;
+    } while (cursor);
+    return { drivers };
+}
+
+export default function (data) {
+    const driverId = data.drivers[Math.floor(Math.random() * data.drivers.length)];
+
+    const responses = http.batch([
+        ['GET', `${BASE_URL}/reviews/by-driver/${driverId}`, null, { tags: { endpoint: 'reviews-by-driver' } }],
+        ['GET', `${BASE_URL}/rides?limit=50`, null, { tags: { endpoint: 'rides-page' } }],
+        ['GET', `${BASE_URL}/users/${driverId}`, null, { tags: { endpoint: 'user-by-id' } }],
+    ]);
+
+    responses.forEach((response) => check(response, { 'status is 2xx': (r) => r.status >= 200 && r.status < 300 }));
+}
+
+export function handleSummary(data) {
+    const out = __ENV.SUMMARY_FILE;
+    const summary = {
+        mode: __ENV.MODE || 'unknown',
+        clients: CLIENTS,
+        requestsPerSecond: data.metrics.http_reqs.values.rate,
+        p50: data.metrics.http_req_duration.values['p(50)'],
+        p99: data.metrics.http_req_duration.values['p(99)'],
+        failedRate: data.metrics.http_req_failed.values.rate,
+    };
+    const result = { stdout: JSON.stringify(summary) + '\n' };
+    if (out) {
+        result[out] = JSON.stringify(summary, null, 2);
+    }
+    return result;
+}
@@ -1,18 +1,25 @@
 package ro.unibuc.hello.config;
 
 import java.time.Clock;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.client.RestTemplate;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 
+import io.micrometer.context.ContextExecutorService;
+import io.micrometer.context.ContextSnapshotFactory;
+
 import java.time.Clock;
 
 @Configuration
+@EnableScheduling
 public class AppConfig {
 
     @Bean
@@ -24,6 +31,16 @@ public class AppConfig {
     public Clock clock() {
         return Clock.systemDefaultZone();
     }
+
+    // one virtual thread per independent lookup of a request, they spend their time waiting on Mongo.
+    // Not a default candidate, so it is only injected by name and Spring Boot still creates its own task executor.
+    // The lookups carry the trace of the request, their Mongo commands show up in it next to each other.
+    @Bean(destroyMethod = "shutdown", defaultCandidate = false)
+    public ExecutorService lookupExecutor() {
+        return ContextExecutorService.wrap(Executors.newVirtualThreadPerTaskExecutor(),
+            ContextSnapshotFactory.builder().build()::captureAll);
+    }
+
     @Bean
     public ObjectMapper objectMapper() {
         ObjectMapper objectMapper = new ObjectMapper();
@@ -0,0 +1,101 @@
+package ro.unibuc.hello.config;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+// Rate, errors and duration of every controller method, as the api.requests timer.
+// Tagged by endpoint (Controller.method), status and outcome: success, rejected for a 4xx, error for a 5xx.
+// A rejected request is also counted by api.requests.rejected, with the type of the exception the controller
+// answered with as the reason (InvalidRideBookingException becomes invalid_ride_booking). The messages carry
+// mails, phone numbers and plates, they never become tags. The reason stays off the timer, every value would
+// repeat all of its histogram buckets.
+@Component
+public class EndpointMetrics implements AsyncHandlerInterceptor {
+    private static final String STARTED_AT = EndpointMetrics.class.getName() + ".startedAt";
+    private static final String REASON = EndpointMetrics.class.getName() + ".reason";
+    private static final String CONTROLLER_PACKAGE = "ro.unibuc.hello.controller";
+
+    private final MeterRegistry meterRegistry;
+    private final Duration[] slos;
+
+    public EndpointMetrics(MeterRegistry meterRegistry,
+                           @Value("${api.metrics.slos:50ms,100ms,250ms,500ms,1s,2s}") Duration[] slos) {
+        this.meterRegistry = meterRegistry;
+        this.slos = slos;
+    }
+
+    // the message of a rejection, for the response body; the type of the exception is kept as the reason
+    public static String rejection(Exception e) {
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            attributes.getRequest().setAttribute(REASON, reason(e.getClass()));
+        }
+        return e.getMessage();
+    }
+
+    static String reason(Class<?> exceptionType) {
+        String name = exceptionType.getSimpleName().replaceAll("Exception$", "");
+        return name.replaceAll("([a-z0-9])([A-Z])", "$1_$2").toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // the async dispatch of a streamed response runs the interceptors again, the first start is kept
+        if (request.getAttribute(STARTED_AT) == null) {
+            request.setAttribute(STARTED_AT, System.nanoTime());
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (!(handler instanceof HandlerMethod method) || !method.getBeanType().getPackageName().equals(CONTROLLER_PACKAGE)) {
+            return;
+        }
+        Long startedAt = (Long) request.getAttribute(STARTED_AT);
+        if (startedAt == null) {
+            return;
+        }
+        String endpoint = method.getBeanType().getSimpleName() + "." + method.getMethod().getName();
+        int status = ex != null && response.getStatus() < 500 ? 500 : response.getStatus();
+        String outcome = status >= 500 ? "error" : status >= 400 ? "rejected" : "success";
+
+        Timer.builder("api.requests")
+            .description("requests handled by the controllers")
+            .tags("endpoint", endpoint, "method", request.getMethod(), "status", String.valueOf(status),
+                  "outcome", outcome)
+            .publishPercentileHistogram()
+            .serviceLevelObjectives(slos)
+            .minimumExpectedValue(Duration.ofMillis(1))
+            .maximumExpectedValue(Duration.ofSeconds(30))
+            .register(meterRegistry)
+            .record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+
+        if ("rejected".equals(outcome)) {
+            Counter.builder("api.requests.rejected")
+                .description("requests rejected by the controllers, by reason")
+                .tags("endpoint", endpoint, "reason", reasonOf(request))
+                .register(meterRegistry)
+                .increment();
+        }
+    }
+
+    // a 4xx the controller did not answer itself, a bad request body or an unknown path, has no reason
+    private static String reasonOf(HttpServletRequest request) {
+        Object reason = request.getAttribute(REASON);
+        return reason == null ? "unknown" : (String) reason;
+    }
+}
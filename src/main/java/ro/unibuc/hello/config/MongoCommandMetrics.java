@@ -0,0 +1,313 @@
+package ro.unibuc.hello.config;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.client.MongoClient;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+// Times every command the Mongo clients send, per command and collection, with the documents and bytes it returned.
+// A query slower than mongodb.slow-query.threshold is kept with the shape of its filter, the values replaced by "?",
+// and its plan is explained in the background. The last mongodb.slow-query.capacity ones are read from /actuator/slowqueries.
+// The driver only lends the command document during commandStarted, so the queries that can be explained are copied there.
+@Component
+public class MongoCommandMetrics implements CommandListener {
+    private static final Logger log = LoggerFactory.getLogger(MongoCommandMetrics.class);
+
+    // the commands whose plan can be explained, and the field holding their filter
+    private static final Map<String, String> EXPLAINABLE = Map.of(
+        "find", "filter",
+        "aggregate", "pipeline",
+        "count", "query",
+        "distinct", "query",
+        "findAndModify", "query",
+        "update", "updates",
+        "delete", "deletes");
+    // driver and session fields, explain refuses some of them
+    private static final Set<String> NOT_EXPLAINED = Set.of(
+        "$db", "lsid", "$clusterTime", "txnNumber", "autocommit", "startTransaction", "$readPreference", "readConcern",
+        "writeConcern", "cursor", "documents");
+
+    public record SlowQuery(Instant at, String database, String command, String collection, long durationMillis,
+                            String filterShape, int documents, String plan) {}
+
+    private record Started(String database, String command, String collection, BsonDocument explainable) {}
+
+    private final ObjectProvider<MongoClient> mongoClient;
+    private final MeterRegistry meterRegistry;
+    private final long thresholdNanos;
+    private final int capacity;
+    private final boolean recordBytes;
+
+    private final ConcurrentHashMap<Integer, Started> started = new ConcurrentHashMap<>();
+    private final ArrayDeque<SlowQuery> slowQueries;
+    // a lock instead of synchronized, the listener runs on the virtual threads that send the commands
+    private final ReentrantLock slowQueriesLock = new ReentrantLock();
+    // the plans by database and filter shape, a shape that keeps being slow is explained once
+    private final Cache<String, String> plans;
+    private final ThreadPoolExecutor explainer;
+
+    public MongoCommandMetrics(ObjectProvider<MongoClient> mongoClient,
+                               MeterRegistry meterRegistry,
+                               @Value("${mongodb.slow-query.threshold:100ms}") Duration threshold,
+                               @Value("${mongodb.slow-query.capacity:100}") int capacity,
+                               @Value("${mongodb.slow-query.plan-ttl:10m}") Duration planTtl,
+                               @Value("${mongodb.metrics.record-bytes:true}") boolean recordBytes) {
+        this.mongoClient = mongoClient;
+        this.meterRegistry = meterRegistry;
+        this.thresholdNanos = threshold.toNanos();
+        this.capacity = capacity;
+        this.recordBytes = recordBytes;
+        this.slowQueries = new ArrayDeque<>(capacity);
+        this.plans = Caffeine.newBuilder()
+            .maximumSize(capacity)
+            .expireAfterWrite(planTtl)
+            .build();
+
+        // one explain at a time, the ones that do not fit in the queue are dropped and the query is kept without a plan
+        this.explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(capacity),
+            task -> {
+                Thread thread = new Thread(task, "mongo-slow-query-explain");
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        BsonDocument command = event.getCommand();
+        String collection = collection(event.getCommandName(), command);
+        BsonDocument explainable = EXPLAINABLE.containsKey(event.getCommandName()) ? explainable(command) : null;
+        started.put(event.getRequestId(), new Started(event.getDatabaseName(), event.getCommandName(), collection, explainable));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        Started command = started.remove(event.getRequestId());
+        String collection = command == null ? "unknown" : command.collection();
+        long nanos = event.getElapsedTime(TimeUnit.NANOSECONDS);
+
+        timer(event.getCommandName(), collection, "success").record(nanos, TimeUnit.NANOSECONDS);
+        int documents = documents(event.getResponse());
+        DistributionSummary.builder("mongodb.command.documents")
+            .description("documents returned or written by a command")
+            .tags("command", event.getCommandName(), "collection", collection)
+            .register(meterRegistry)
+            .record(documents);
+        // the driver hands the listener the raw response, its size is known without encoding it again
+        if (recordBytes && event.getResponse() instanceof RawBsonDocument response) {
+            DistributionSummary.builder("mongodb.command.response.size")
+                .description("size of the command responses")
+                .baseUnit("bytes")
+                .tags("command", event.getCommandName(), "collection", collection)
+                .register(meterRegistry)
+                .record(response.getByteBuffer().remaining());
+        }
+
+        if (nanos >= thresholdNanos && command != null && command.explainable() != null) {
+            slow(command, TimeUnit.NANOSECONDS.toMillis(nanos), documents);
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        Started command = started.remove(event.getRequestId());
+        String collection = command == null ? "unknown" : command.collection();
+        timer(event.getCommandName(), collection, "failure").record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+
+    public List<SlowQuery> slowQueries() {
+        slowQueriesLock.lock();
+        try {
+            return new ArrayList<>(slowQueries);
+        } finally {
+            slowQueriesLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        explainer.shutdownNow();
+    }
+
+    private Timer timer(String command, String collection, String status) {
+        return Timer.builder("mongodb.command")
+            .description("time of the commands sent to Mongo")
+            .tags("command", command, "collection", collection, "status", status)
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    }
+
+    private void slow(Started command, long durationMillis, int documents) {
+        String shape = toJson(shape(filter(command)));
+        String planKey = command.database() + ":" + command.command() + ":" + command.collection() + ":" + shape;
+        SlowQuery slowQuery = new SlowQuery(Instant.now(), command.database(), command.command(), command.collection(),
+            durationMillis, shape, documents, plans.getIfPresent(planKey));
+        add(slowQuery);
+        meterRegistry.counter("mongodb.command.slow", "command", command.command(), "collection", command.collection()).increment();
+
+        if (slowQuery.plan() == null) {
+            explainer.execute(() -> explain(command, planKey, slowQuery));
+        }
+    }
+
+    private void explain(Started command, String planKey, SlowQuery slowQuery) {
+        String plan = plans.getIfPresent(planKey);
+        if (plan == null) {
+            try {
+                BsonDocument explain = new BsonDocument("explain", command.explainable())
+                    .append("verbosity", new BsonString("queryPlanner"));
+                plan = mongoClient.getObject()
+                    .getDatabase(command.database())
+                    .runCommand(explain, BsonDocument.class)
+                    .toJson();
+                plans.put(planKey, plan);
+            } catch (RuntimeException e) {
+                log.warn("Could not explain the slow {} on {}: {}", command.command(), command.collection(), e.getMessage());
+                return;
+            }
+        }
+        replace(slowQuery, new SlowQuery(slowQuery.at(), slowQuery.database(), slowQuery.command(), slowQuery.collection(),
+            slowQuery.durationMillis(), slowQuery.filterShape(), slowQuery.documents(), plan));
+    }
+
+    private void add(SlowQuery slowQuery) {
+        slowQueriesLock.lock();
+        try {
+            if (slowQueries.size() == capacity) {
+                slowQueries.pollFirst();
+            }
+            slowQueries.addLast(slowQuery);
+        } finally {
+            slowQueriesLock.unlock();
+        }
+    }
+
+    // the buffer keeps records, the one waiting for its plan is swapped if it was not evicted meanwhile
+    private void replace(SlowQuery waiting, SlowQuery explained) {
+        slowQueriesLock.lock();
+        try {
+            List<SlowQuery> queries = new ArrayList<>(slowQueries);
+            for (int i = 0; i < queries.size(); i++) {
+                if (queries.get(i) == waiting) {
+                    queries.set(i, explained);
+                    slowQueries.clear();
+                    slowQueries.addAll(queries);
+                    return;
+                }
+            }
+        } finally {
+            slowQueriesLock.unlock();
+        }
+    }
+
+    private static String collection(String commandName, BsonDocument command) {
+        BsonValue value = "getMore".equals(commandName) ? command.get("collection") : command.get(commandName);
+        return value != null && value.isString() ? value.asString().getValue() : "none";
+    }
+
+    // a detached copy of the command without the driver fields, with only the first statement of an update or delete
+    private static BsonDocument explainable(BsonDocument command) {
+        BsonDocument copy = new BsonDocument();
+        for (Map.Entry<String, BsonValue> field : command.entrySet()) {
+            if (NOT_EXPLAINED.contains(field.getKey())) {
+                continue;
+            }
+            BsonValue value = field.getValue();
+            if (value.isArray() && ("updates".equals(field.getKey()) || "deletes".equals(field.getKey()))) {
+                BsonArray statements = value.asArray();
+                value = new BsonArray(statements.isEmpty() ? List.of() : List.of(statements.get(0)));
+            }
+            copy.append(field.getKey(), copy(value));
+        }
+        return copy;
+    }
+
+    // BsonValue.clone is not public, documents and arrays are copied deeply and the other values are immutable
+    private static BsonValue copy(BsonValue value) {
+        if (value.isDocument()) {
+            return value.asDocument().clone();
+        }
+        if (value.isArray()) {
+            return value.asArray().clone();
+        }
+        return value;
+    }
+
+    private static BsonValue filter(Started command) {
+        BsonValue filter = command.explainable().get(EXPLAINABLE.get(command.command()));
+        if (filter != null && filter.isArray() && !"aggregate".equals(command.command())) {
+            // update and delete statements, q is the filter
+            BsonArray statements = filter.asArray();
+            filter = statements.isEmpty() ? null : statements.get(0).asDocument().get("q");
+        }
+        return filter == null ? new BsonDocument() : filter;
+    }
+
+    // keeps the field names and operators, replaces every value with "?"
+    static BsonValue shape(BsonValue value) {
+        if (value.isDocument()) {
+            BsonDocument shape = new BsonDocument();
+            value.asDocument().forEach((key, field) -> shape.append(key, shape(field)));
+            return shape;
+        }
+        if (value.isArray()) {
+            BsonArray array = value.asArray();
+            // arrays of documents are pipelines or $and/$or, the others are lists of values
+            if (!array.isEmpty() && array.get(0).isDocument()) {
+                BsonArray shape = new BsonArray();
+                array.forEach(element -> shape.add(shape(element)));
+                return shape;
+            }
+        }
+        return new BsonString("?");
+    }
+
+    // a pipeline has no JSON of its own, it is wrapped in a document
+    private static String toJson(BsonValue shape) {
+        return shape.isDocument() ? shape.asDocument().toJson() : new BsonDocument("pipeline", shape).toJson();
+    }
+
+    private static int documents(BsonDocument response) {
+        BsonDocument cursor = response.getDocument("cursor", null);
+        if (cursor != null) {
+            BsonArray batch = cursor.getArray("firstBatch", cursor.getArray("nextBatch", null));
+            return batch == null ? 0 : batch.size();
+        }
+        BsonValue n = response.get("n");
+        return n != null && n.isNumber() ? n.asNumber().intValue() : 0;
+    }
+}
@@ -0,0 +1,165 @@
+package ro.unibuc.hello.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.stereotype.Component;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionClosedEvent;
+import com.mongodb.event.ConnectionCreatedEvent;
+import com.mongodb.event.ConnectionPoolClosedEvent;
+import com.mongodb.event.ConnectionPoolCreatedEvent;
+import com.mongodb.event.ConnectionPoolListener;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+// Connection pools of the blocking Mongo client, one per server it talks to.
+// The checkout wait is the time a request spends before its query is even sent: a rising p99 while the
+// in-use connections sit at mongodb.pool.max means the pool is the bottleneck, not Mongo.
+@Component
+public class MongoPoolMetrics implements ConnectionPoolListener {
+
+    private static final class Pool {
+        private final AtomicInteger open = new AtomicInteger();
+        private final AtomicInteger inUse = new AtomicInteger();
+        private final AtomicInteger waiting = new AtomicInteger();
+        private final int minSize;
+        private final List<Meter> meters = new ArrayList<>();
+
+        private Pool(int minSize) {
+            this.minSize = minSize;
+        }
+
+        private int idle() {
+            return Math.max(0, open.get() - inUse.get());
+        }
+    }
+
+    private final MeterRegistry meterRegistry;
+    private final Timer checkoutWait;
+    private final ConcurrentHashMap<ServerAddress, Pool> pools = new ConcurrentHashMap<>();
+
+    public MongoPoolMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.checkoutWait = Timer.builder("mongodb.pool.checkout.wait")
+            .description("time waited for a connection of the pool")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+    }
+
+    @Override
+    public void connectionPoolCreated(ConnectionPoolCreatedEvent event) {
+        String server = event.getServerId().getAddress().toString();
+        int maxSize = event.getSettings().getMaxSize();
+        Pool pool = new Pool(event.getSettings().getMinSize());
+
+        pool.meters.add(Gauge.builder("mongodb.pool.connections", pool, p -> p.inUse.get())
+            .description("connections of the pool")
+            .tags("server", server, "state", "in_use")
+            .register(meterRegistry));
+        pool.meters.add(Gauge.builder("mongodb.pool.connections", pool, Pool::idle)
+            .description("connections of the pool")
+            .tags("server", server, "state", "idle")
+            .register(meterRegistry));
+        pool.meters.add(Gauge.builder("mongodb.pool.waiting", pool, p -> p.waiting.get())
+            .description("checkouts waiting for a connection")
+            .tags("server", server)
+            .register(meterRegistry));
+        pool.meters.add(Gauge.builder("mongodb.pool.max", () -> maxSize)
+            .description("maximum size of the pool")
+            .tags("server", server)
+            .register(meterRegistry));
+
+        pools.put(event.getServerId().getAddress(), pool);
+    }
+
+    @Override
+    public void connectionPoolClosed(ConnectionPoolClosedEvent event) {
+        Pool pool = pools.remove(event.getServerId().getAddress());
+        if (pool != null) {
+            pool.meters.forEach(meterRegistry::remove);
+        }
+    }
+
+    @Override
+    public void connectionCreated(ConnectionCreatedEvent event) {
+        Pool pool = pools.get(event.getConnectionId().getServerId().getAddress());
+        if (pool != null) {
+            pool.open.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void connectionClosed(ConnectionClosedEvent event) {
+        Pool pool = pools.get(event.getConnectionId().getServerId().getAddress());
+        if (pool != null) {
+            pool.open.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void connectionCheckOutStarted(ConnectionCheckOutStartedEvent event) {
+        Pool pool = pools.get(event.getServerId().getAddress());
+        if (pool != null) {
+            pool.waiting.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void connectionCheckedOut(ConnectionCheckedOutEvent event) {
+        checkoutWait.record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        Pool pool = pools.get(event.getConnectionId().getServerId().getAddress());
+        if (pool != null) {
+            pool.waiting.decrementAndGet();
+            pool.inUse.incrementAndGet();
+        }
+    }
+
+    // a timeout means the pool stayed at its max size for the whole mongodb.pool.max-wait-time
+    @Override
+    public void connectionCheckOutFailed(ConnectionCheckOutFailedEvent event) {
+        checkoutWait.record(event.getElapsedTime(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        Counter.builder("mongodb.pool.checkout.failures")
+            .description("checkouts that got no connection")
+            .tag("reason", event.getReason().name().toLowerCase())
+            .register(meterRegistry)
+            .increment();
+        Pool pool = pools.get(event.getServerId().getAddress());
+        if (pool != null) {
+            pool.waiting.decrementAndGet();
+        }
+    }
+
+    @Override
+    public void connectionCheckedIn(ConnectionCheckedInEvent event) {
+        Pool pool = pools.get(event.getConnectionId().getServerId().getAddress());
+        if (pool != null) {
+            pool.inUse.decrementAndGet();
+        }
+    }
+
+    // true once every pool has opened at least its min size, false if one is still below it after the timeout
+    public boolean awaitMinSize(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!pools.values().stream().allMatch(pool -> pool.open.get() >= pool.minSize)) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,52 @@
+package ro.unibuc.hello.config;
+
+import java.time.Duration;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.client.MongoClient;
+
+// Opens the min size of the Mongo pool before the first requests come in.
+// Runners finish before the readiness state turns to ACCEPTING_TRAFFIC, so a pod is only sent traffic once
+// its connections are up, instead of the first requests paying for the connection handshakes.
+@Component
+public class MongoPoolWarmUp implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(MongoPoolWarmUp.class);
+
+    private final MongoClient mongoClient;
+    private final MongoPoolMetrics mongoPoolMetrics;
+    private final boolean enabled;
+    private final Duration timeout;
+
+    public MongoPoolWarmUp(MongoClient mongoClient,
+                           MongoPoolMetrics mongoPoolMetrics,
+                           @Value("${mongodb.pool.warm-up.enabled:true}") boolean enabled,
+                           @Value("${mongodb.pool.warm-up.timeout:30s}") Duration timeout) {
+        this.mongoClient = mongoClient;
+        this.mongoPoolMetrics = mongoPoolMetrics;
+        this.enabled = enabled;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        long startedAt = System.nanoTime();
+        // selects a server, which creates its pool, the pool maintenance then opens the min size in the background
+        mongoClient.getDatabase("admin").runCommand(new Document("ping", 1));
+
+        if (mongoPoolMetrics.awaitMinSize(timeout)) {
+            log.info("Mongo connection pool warmed up in {} ms", Duration.ofNanos(System.nanoTime() - startedAt).toMillis());
+        } else {
+            log.warn("Mongo connection pool still below its min size after {}", timeout);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package ro.unibuc.hello.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.SimpleReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.repository.config.EnableReactiveMongoRepositories;
+
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+
+// Reactive Streams Mongo client next to the blocking one, for the read endpoints under /reactive.
+// It shares the mapping of MongoConfig, so both stacks read the same documents the same way.
+// The Spring Boot reactive Mongo auto-configuration is excluded in application.properties, nothing reactive starts without this profile.
+@Configuration
+@Profile("reactive")
+@EnableReactiveMongoRepositories(basePackages = "ro.unibuc.hello.repository.reactive",
+                                 reactiveMongoTemplateRef = "reactiveMongoTemplate")
+public class ReactiveMongoConfig {
+
+    @Value("${mongodb.connection.url}")
+    private String connectionURL;
+
+    @Bean(destroyMethod = "close")
+    public MongoClient reactiveMongoClient(MongoCommandMetrics mongoCommandMetrics) {
+        MongoClientSettings mongoClientSettings = MongoClientSettings.builder()
+                .applyConnectionString(new ConnectionString(connectionURL))
+                .addCommandListener(mongoCommandMetrics)
+                .build();
+
+        return MongoClients.create(mongoClientSettings);
+    }
+
+    @Bean
+    public ReactiveMongoDatabaseFactory reactiveMongoDatabaseFactory(MongoClient reactiveMongoClient) {
+        return new SimpleReactiveMongoDatabaseFactory(reactiveMongoClient, "test");
+    }
+
+    @Bean
+    public ReactiveMongoTemplate reactiveMongoTemplate(ReactiveMongoDatabaseFactory reactiveMongoDatabaseFactory,
+                                                       MappingMongoConverter mappingMongoConverter) {
+        return new ReactiveMongoTemplate(reactiveMongoDatabaseFactory, mappingMongoConverter);
+    }
+}
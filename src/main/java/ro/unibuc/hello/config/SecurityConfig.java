@@ -1,5 +1,8 @@
 package ro.unibuc.hello.config;
 
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -7,13 +10,44 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
 
 @Configuration
 public class SecurityConfig {
-    
+
+    private static final int CALIBRATION_STRENGTH = 10;
+
+    // BCrypt with the highest work factor whose hash still fits the target time on this machine.
+    // The work factor is stored in every hash, so the hashes made with another one keep matching.
+    // It is capped at 12, every step doubles the CPU of each signup and login on the hashing pool.
     @Bean
-    public PasswordEncoder PasswordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder PasswordEncoder(MeterRegistry meterRegistry,
+                                           @Value("${password-hashing.target-time:250ms}") Duration targetTime,
+                                           @Value("${password-hashing.min-strength:10}") int minStrength,
+                                           @Value("${password-hashing.max-strength:12}") int maxStrength) {
+        int strength = calibrateStrength(targetTime, minStrength, maxStrength);
+        Gauge.builder("password.hashing.strength", () -> strength)
+            .description("BCrypt work factor picked at startup")
+            .register(meterRegistry);
+        return new BCryptPasswordEncoder(strength);
+    }
+
+    // every step of the work factor doubles the hashing time, so one measured hash is enough to pick it
+    static int calibrateStrength(Duration targetTime, int minStrength, int maxStrength) {
+        BCryptPasswordEncoder calibration = new BCryptPasswordEncoder(CALIBRATION_STRENGTH);
+        // the first hashes run interpreted, they would make the machine look slower than it is
+        calibration.encode("calibration");
+        calibration.encode("calibration");
+
+        long start = System.nanoTime();
+        calibration.encode("calibration");
+        long elapsed = Math.max(1, System.nanoTime() - start);
+
+        double steps = Math.log((double) targetTime.toNanos() / elapsed) / Math.log(2);
+        int strength = CALIBRATION_STRENGTH + (int) Math.floor(steps);
+        return Math.max(minStrength, Math.min(maxStrength, strength));
     }
 
     @Bean
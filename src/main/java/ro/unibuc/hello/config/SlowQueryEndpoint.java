@@ -0,0 +1,25 @@
+package ro.unibuc.hello.config;
+
+import java.util.List;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import ro.unibuc.hello.config.MongoCommandMetrics.SlowQuery;
+
+// GET /actuator/slowqueries, the last Mongo queries slower than mongodb.slow-query.threshold, oldest first
+@Component
+@Endpoint(id = "slowqueries")
+public class SlowQueryEndpoint {
+    private final MongoCommandMetrics mongoCommandMetrics;
+
+    public SlowQueryEndpoint(MongoCommandMetrics mongoCommandMetrics) {
+        this.mongoCommandMetrics = mongoCommandMetrics;
+    }
+
+    @ReadOperation
+    public List<SlowQuery> slowQueries() {
+        return mongoCommandMetrics.slowQueries();
+    }
+}
@@ -0,0 +1,27 @@
+package ro.unibuc.hello.config;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Where the spans go. Spring Boot sends them to every SpanExporter bean:
+//   management.otlp.tracing.endpoint - an OTLP/HTTP collector, e.g. http://tempo:4318/v1/traces
+//   tracing.file.enabled             - the file at tracing.file.path, one span per line
+// With neither, the spans are only used for the traceId and spanId of the logs.
+@Configuration
+public class TracingConfig {
+
+    @Bean(destroyMethod = "")
+    @ConditionalOnProperty(name = "tracing.file.enabled", havingValue = "true")
+    public FileSpanExporter fileSpanExporter(@Value("${tracing.file.path:traces/spans.jsonl}") Path path,
+                                             ObjectMapper objectMapper) throws IOException {
+        // shut down by the span processor, after its last export
+        return new FileSpanExporter(path, objectMapper);
+    }
+}
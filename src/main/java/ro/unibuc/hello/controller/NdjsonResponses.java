@@ -0,0 +1,45 @@
+package ro.unibuc.hello.controller;
+
+import java.io.OutputStream;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Writes documents as newline delimited JSON while they are read from the database cursor
+final class NdjsonResponses {
+    static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private static final int FLUSH_EVERY = 100;
+
+    private NdjsonResponses() {}
+
+    static <T> ResponseEntity<StreamingResponseBody> of(ObjectMapper objectMapper, Supplier<Stream<T>> source) {
+        StreamingResponseBody body = outputStream -> {
+            try (Stream<T> documents = source.get()) {
+                int written = 0;
+                for (T document : (Iterable<T>) documents::iterator) {
+                    writeLine(objectMapper, outputStream, document);
+                    // flush the first document right away, then in small batches
+                    if (written++ % FLUSH_EVERY == 0) {
+                        outputStream.flush();
+                    }
+                }
+                outputStream.flush();
+            }
+        };
+
+        return ResponseEntity.ok()
+            .contentType(MediaType.parseMediaType(APPLICATION_NDJSON_VALUE))
+            .body(body);
+    }
+
+    private static void writeLine(ObjectMapper objectMapper, OutputStream outputStream, Object document) throws java.io.IOException {
+        outputStream.write(objectMapper.writeValueAsBytes(document));
+        outputStream.write('\n');
+    }
+}
@@ -0,0 +1,36 @@
+package ro.unibuc.hello.controller;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+
+import reactor.core.publisher.Flux;
+import ro.unibuc.hello.model.Review;
+import ro.unibuc.hello.service.ReactiveReviewService;
+
+// Non-blocking review listings, streamed as NDJSON by default
+@Controller
+@Profile("reactive")
+@RequestMapping("/reactive/reviews")
+public class ReactiveReviewController {
+
+    private final ReactiveReviewService reactiveReviewService;
+
+    public ReactiveReviewController(ReactiveReviewService reactiveReviewService) {
+        this.reactiveReviewService = reactiveReviewService;
+    }
+
+    // GET /reactive/reviews/by-ride/{id}
+    @GetMapping(value = "/by-ride/{id}", produces = { NdjsonResponses.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<Flux<Review>> getReviewsByRide(@PathVariable(name = "id", required = true) String id) {
+        return ResponseEntity.ok(reactiveReviewService.getReviewsByRide(id));
+    }
+
+    // GET /reactive/reviews/by-driver/{id}
+    @GetMapping(value = "/by-driver/{id}", produces = { NdjsonResponses.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<Flux<Review>> getReviewsByDriver(@PathVariable(name = "id", required = true) String id) {
+        return ResponseEntity.ok(reactiveReviewService.getReviewsByDriver(id));
+    }
+}
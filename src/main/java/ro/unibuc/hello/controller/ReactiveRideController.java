@@ -0,0 +1,41 @@
+package ro.unibuc.hello.controller;
+
+import java.time.Instant;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+
+import reactor.core.publisher.Flux;
+import ro.unibuc.hello.dto.ride.RideResponseDTO;
+import ro.unibuc.hello.model.Ride;
+import ro.unibuc.hello.service.ReactiveRideService;
+
+// Non-blocking ride listings, streamed as NDJSON by default and pulled from Mongo as fast as the client reads.
+// application/json is still served, collected into one array.
+@Controller
+@Profile("reactive")
+@RequestMapping("/reactive/rides")
+public class ReactiveRideController {
+
+    private final ReactiveRideService reactiveRideService;
+
+    public ReactiveRideController(ReactiveRideService reactiveRideService) {
+        this.reactiveRideService = reactiveRideService;
+    }
+
+    // GET /reactive/rides
+    @GetMapping(produces = { NdjsonResponses.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<Flux<Ride>> getAllRides() {
+        return ResponseEntity.ok(reactiveRideService.getAllRides());
+    }
+
+    // GET /reactive/rides/by-date?date=YYYY-MM-DDTHH:mm:ssZ
+    @GetMapping(value = "/by-date", produces = { NdjsonResponses.APPLICATION_NDJSON_VALUE, MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<Flux<RideResponseDTO>> getRidesByDate(@RequestParam Instant date) {
+        return ResponseEntity.ok(reactiveRideService.getScheduledRidesByDate(date)
+                                                     .map(RideResponseDTO::toDTO));
+    }
+}
@@ -10,10 +10,12 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 
+import ro.unibuc.hello.config.EndpointMetrics;
 import ro.unibuc.hello.dto.review.ReviewRequestDTO;
 import ro.unibuc.hello.dto.review.ReviewResponseDTO;
 import ro.unibuc.hello.exceptions.review.InvalidReviewException;
 import ro.unibuc.hello.model.Review;
+import ro.unibuc.hello.service.IdempotencyService;
 import ro.unibuc.hello.service.ReviewService;
 
 @Controller
@@ -21,9 +23,11 @@ import ro.unibuc.hello.service.ReviewService;
 public class ReviewController {
     
     private final ReviewService reviewService;
+    private final IdempotencyService idempotencyService;
 
-    public ReviewController(ReviewService reviewService) {
+    public ReviewController(ReviewService reviewService, IdempotencyService idempotencyService) {
         this.reviewService = reviewService;
+        this.idempotencyService = idempotencyService;
     }
 
     // GET /reviews/by-ride/{id}
@@ -44,15 +48,19 @@ public class ReviewController {
 
     // POST /reviews
     @PostMapping
-    public ResponseEntity<?> createReview(@RequestBody ReviewRequestDTO reviewRequestDTO) {
-        try {
-            ReviewResponseDTO reviewResponse = reviewService.createReview(reviewRequestDTO);
-            return ResponseEntity.status(HttpStatus.CREATED).body(null);
-        } catch (InvalidReviewException e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body("Error creating review: " + e.getMessage());
-        }
+    public ResponseEntity<?> createReview(
+            @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            @RequestBody ReviewRequestDTO reviewRequestDTO) {
+        return idempotencyService.execute("reviews", idempotencyKey, reviewRequestDTO, () -> {
+            try {
+                ReviewResponseDTO reviewResponse = reviewService.createReview(reviewRequestDTO);
+                return ResponseEntity.status(HttpStatus.CREATED).body(null);
+            } catch (InvalidReviewException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(EndpointMetrics.rejection(e));
+            } catch (Exception e) {
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error creating review: " + e.getMessage());
+            }
+        });
     }
 }
\ No newline at end of file
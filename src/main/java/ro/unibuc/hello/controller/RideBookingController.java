@@ -10,6 +10,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 
+import ro.unibuc.hello.config.EndpointMetrics;
 import ro.unibuc.hello.service.*;
 import ro.unibuc.hello.dto.rideBooking.RideBookingRequestDTO;
 import ro.unibuc.hello.dto.rideBooking.RideBookingResponseDTO;
@@ -25,10 +26,12 @@ import ro.unibuc.hello.model.*;
 public class RideBookingController {
     
     private final RideBookingService rideBookingService;
+    private final IdempotencyService idempotencyService;
 
-    public RideBookingController(RideBookingService rideBookingService)
+    public RideBookingController(RideBookingService rideBookingService, IdempotencyService idempotencyService)
     {
         this.rideBookingService = rideBookingService;
+        this.idempotencyService = idempotencyService;
     }
 
     //Get all passengers for a ride: /bookings/{rideId}/passengers
@@ -39,20 +42,25 @@ public class RideBookingController {
         return ResponseEntity.ok(passengers);
     }
 
+    // a retry sent with the same Idempotency-Key gets the first response, the booking is made once
     @PostMapping
-    public ResponseEntity<?> createRideBooking(@RequestBody RideBookingRequestDTO rideBookingRequestDTO)
+    public ResponseEntity<?> createRideBooking(
+            @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            @RequestBody RideBookingRequestDTO rideBookingRequestDTO)
     {
-        try {
-            RideBookingResponseDTO rideBookingResponse = rideBookingService.createRideBooking(rideBookingRequestDTO);
-            return ResponseEntity.status(HttpStatus.CREATED).body(null);
-        } catch (InvalidRideBookingException e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
-        } catch (RideBookingConflictException e) {
-            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body("Error creating ride: " + e.getMessage());
-        }
+        return idempotencyService.execute("bookings", idempotencyKey, rideBookingRequestDTO, () -> {
+            try {
+                RideBookingResponseDTO rideBookingResponse = rideBookingService.createRideBooking(rideBookingRequestDTO);
+                return ResponseEntity.status(HttpStatus.CREATED).body(null);
+            } catch (InvalidRideBookingException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(EndpointMetrics.rejection(e));
+            } catch (RideBookingConflictException e) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(EndpointMetrics.rejection(e));
+            } catch (Exception e) {
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error creating ride: " + e.getMessage());
+            }
+        });
     }
 
     @PatchMapping("/cancel/{rideId}/{passengerId}")
@@ -62,7 +70,7 @@ public class RideBookingController {
             rideBookingService.updateRideBookingStatusToCancelled(rideId, passengerId);
             return ResponseEntity.status(HttpStatus.ACCEPTED).body(null);
         } catch (InvalidRideBookingException e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(EndpointMetrics.rejection(e));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body("Error cancelling ride: " + e.getMessage());
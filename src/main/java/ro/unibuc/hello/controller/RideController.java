@@ -10,15 +10,21 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
+import ro.unibuc.hello.config.EndpointMetrics;
+import ro.unibuc.hello.dto.page.PageResponseDTO;
+import ro.unibuc.hello.dto.ride.RideBatchResultDTO;
 import ro.unibuc.hello.dto.ride.RideRequestDTO;
 import ro.unibuc.hello.dto.ride.RideResponseDTO;
 import ro.unibuc.hello.enums.RideStatus;
 import ro.unibuc.hello.exceptions.ride.InvalidRideException;
 import ro.unibuc.hello.exceptions.ride.RideConflictException;
 import ro.unibuc.hello.model.Ride;
+import ro.unibuc.hello.service.IdempotencyService;
 import ro.unibuc.hello.service.RideService;
 
 @Controller
@@ -26,9 +32,13 @@ import ro.unibuc.hello.service.RideService;
 public class RideController {
     
     private final RideService rideService;
+    private final ObjectMapper objectMapper;
+    private final IdempotencyService idempotencyService;
 
-    public RideController(RideService rideService) {
+    public RideController(RideService rideService, ObjectMapper objectMapper, IdempotencyService idempotencyService) {
         this.rideService = rideService;
+        this.objectMapper = objectMapper;
+        this.idempotencyService = idempotencyService;
     }
 
     // GET /rides 
@@ -38,31 +48,77 @@ public class RideController {
         return ResponseEntity.ok(rides);
     }
 
+    // GET /rides with Accept: application/x-ndjson, one document per line
+    @GetMapping(produces = NdjsonResponses.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllRides() {
+        return NdjsonResponses.of(objectMapper, rideService::streamAllRides);
+    }
+
+    // GET /rides?limit=50&cursor=...
+    @GetMapping(params = "limit")
+    public ResponseEntity<?> getRidesPage(
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "limit") Integer limit) {
+        try {
+            PageResponseDTO<Ride> page = rideService.getRidesPage(cursor, limit);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(EndpointMetrics.rejection(e));
+        }
+    }
+
     // GET /rides/by-date?date=YYYY-MM-DD 
     @GetMapping("/by-date")
     public ResponseEntity<List<RideResponseDTO>> getRidesByDate(
             @RequestParam @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSSX", timezone = "UTC") Instant date) {
-        List<RideResponseDTO> rides = rideService.getRidesByDate(date)
+        List<RideResponseDTO> rides = rideService.getScheduledRidesByDate(date)
+                                                 .stream()
+                                                 .map(RideResponseDTO::toDTO)
+                                                 .collect(Collectors.toList());
+        return ResponseEntity.ok(rides);
+    }
+
+    // GET /rides/search?date=...&from=...&to=...
+    @GetMapping("/search")
+    public ResponseEntity<List<RideResponseDTO>> searchRides(
+            @RequestParam Instant date,
+            @RequestParam("from") String startLocation,
+            @RequestParam("to") String endLocation) {
+        List<RideResponseDTO> rides = rideService.searchRides(date, startLocation, endLocation)
                                                  .stream()
-                                                 .filter(ride -> ride.getStatus() == RideStatus.SCHEDULED)
                                                  .map(RideResponseDTO::toDTO)
                                                  .collect(Collectors.toList());
         return ResponseEntity.ok(rides);
     }
 
-    // POST /rides
+    // POST /rides, with an optional Idempotency-Key header
     @PostMapping
-    public ResponseEntity<?> createRide(@RequestBody RideRequestDTO rideRequestDTO) {
+    public ResponseEntity<?> createRide(
+            @RequestHeader(name = IdempotencyService.HEADER, required = false) String idempotencyKey,
+            @RequestBody RideRequestDTO rideRequestDTO) {
+        return idempotencyService.execute("rides", idempotencyKey, rideRequestDTO, () -> {
+            try {
+                RideResponseDTO rideResponse = rideService.createRide(rideRequestDTO);
+                return ResponseEntity.status(HttpStatus.CREATED).body(rideResponse);
+            } catch (InvalidRideException e) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(EndpointMetrics.rejection(e));
+            } catch (RideConflictException e) {
+                return ResponseEntity.status(HttpStatus.CONFLICT).body(EndpointMetrics.rejection(e));
+            } catch (Exception e) {
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Error creating ride: " + e.getMessage());
+            }
+        });
+    }
+
+    // POST /rides/batch with a JSON array of rides, answers with one result per ride
+    @PostMapping("/batch")
+    public ResponseEntity<?> createRides(@RequestBody List<RideRequestDTO> rideRequestDTOs) {
         try {
-            RideResponseDTO rideResponse = rideService.createRide(rideRequestDTO);
-            return ResponseEntity.status(HttpStatus.CREATED).body(rideResponse);
+            List<RideBatchResultDTO> results = rideService.createRides(rideRequestDTOs);
+            return ResponseEntity.ok(results);
         } catch (InvalidRideException e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
-        } catch (RideConflictException e) {
-            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body("Error creating ride: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(EndpointMetrics.rejection(e));
         }
     }
 
@@ -72,7 +128,7 @@ public class RideController {
             rideService.updateRideStatusToInProgress(rideId);
             return ResponseEntity.status(HttpStatus.ACCEPTED).body(null);
         } catch (InvalidRideException e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(EndpointMetrics.rejection(e));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body("Error starting ride: " + e.getMessage());
@@ -88,7 +144,7 @@ public class RideController {
             rideService.updateRideStatusToCompleted(rideId, currentLocation);
             return ResponseEntity.status(HttpStatus.ACCEPTED).body(null);
         } catch (InvalidRideException e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(EndpointMetrics.rejection(e));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body("Error completing ride: " + e.getMessage());
@@ -102,7 +158,7 @@ public class RideController {
             rideService.updateRideStatusToCancelled(rideId);
             return ResponseEntity.status(HttpStatus.ACCEPTED).body(null);
         } catch (InvalidRideException e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(EndpointMetrics.rejection(e));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body("Error completing ride: " + e.getMessage());
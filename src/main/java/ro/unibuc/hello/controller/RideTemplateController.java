@@ -0,0 +1,71 @@
+package ro.unibuc.hello.controller;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+
+import ro.unibuc.hello.config.EndpointMetrics;
+import ro.unibuc.hello.dto.ride.RideTemplateRequestDTO;
+import ro.unibuc.hello.exceptions.ride.InvalidRideException;
+import ro.unibuc.hello.exceptions.ride.RideConflictException;
+import ro.unibuc.hello.exceptions.rideBooking.InvalidRideBookingException;
+import ro.unibuc.hello.model.RideTemplate;
+import ro.unibuc.hello.service.RideTemplateService;
+
+@Controller
+@RequestMapping("/ride-templates")
+public class RideTemplateController {
+
+    private final RideTemplateService rideTemplateService;
+
+    public RideTemplateController(RideTemplateService rideTemplateService) {
+        this.rideTemplateService = rideTemplateService;
+    }
+
+    // POST /ride-templates
+    @PostMapping
+    public ResponseEntity<?> createTemplate(@RequestBody RideTemplateRequestDTO request) {
+        try {
+            RideTemplate template = rideTemplateService.createTemplate(request);
+            return ResponseEntity.status(HttpStatus.CREATED).body(template);
+        } catch (InvalidRideException | InvalidRideBookingException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(EndpointMetrics.rejection(e));
+        } catch (RideConflictException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(EndpointMetrics.rejection(e));
+        }
+    }
+
+    // GET /ride-templates?driverId=...
+    @GetMapping
+    public ResponseEntity<List<RideTemplate>> getTemplatesByDriver(@RequestParam String driverId) {
+        return ResponseEntity.ok(rideTemplateService.getTemplatesByDriver(driverId));
+    }
+
+    // GET /ride-templates/{templateId}
+    @GetMapping("/{templateId}")
+    public ResponseEntity<?> getTemplate(@PathVariable String templateId) {
+        try {
+            return ResponseEntity.ok(rideTemplateService.getTemplate(templateId));
+        } catch (InvalidRideException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(EndpointMetrics.rejection(e));
+        }
+    }
+
+    // POST /ride-templates/{templateId}/rides?date=YYYY-MM-DD, the ride of that day, to be booked by its id
+    @PostMapping("/{templateId}/rides")
+    public ResponseEntity<?> materializeRide(
+            @PathVariable String templateId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        try {
+            // the ride itself, its id is needed to book it
+            return ResponseEntity.ok(rideTemplateService.materializeOccurrence(templateId, date));
+        } catch (InvalidRideException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(EndpointMetrics.rejection(e));
+        }
+    }
+}
@@ -1,8 +1,12 @@
 package ro.unibuc.hello.controller;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -10,13 +14,24 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import org.springframework.dao.DuplicateKeyException;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ro.unibuc.hello.config.EndpointMetrics;
+import ro.unibuc.hello.dto.page.PageResponseDTO;
+import ro.unibuc.hello.dto.user.UserImportReportDTO;
 import ro.unibuc.hello.dto.user.UserRequestDTO;
 import ro.unibuc.hello.dto.user.UserResponseDTO;
 import ro.unibuc.hello.exception.EntityNotFoundException;
+import ro.unibuc.hello.exceptions.user.PasswordHashingUnavailableException;
 import ro.unibuc.hello.model.User;
+import ro.unibuc.hello.service.UserImportService;
 import ro.unibuc.hello.service.UserService;
 
 @Controller
@@ -24,9 +39,13 @@ import ro.unibuc.hello.service.UserService;
 public class UserController {
     
     private final UserService userService;
+    private final UserImportService userImportService;
+    private final ObjectMapper objectMapper;
 
-    public UserController(UserService userService) {
+    public UserController(UserService userService, UserImportService userImportService, ObjectMapper objectMapper) {
         this.userService = userService;
+        this.userImportService = userImportService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping
@@ -34,6 +53,25 @@ public class UserController {
         List<User> users = userService.getAllUsers();
         return ResponseEntity.ok(users);
     }
+
+    // GET /users with Accept: application/x-ndjson, one document per line
+    @GetMapping(produces = NdjsonResponses.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllUsers() {
+        return NdjsonResponses.of(objectMapper, userService::streamAllUsers);
+    }
+
+    // GET /users?limit=50&cursor=...
+    @GetMapping(params = "limit")
+    public ResponseEntity<?> getUsersPage(
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "limit") Integer limit) {
+        try {
+            PageResponseDTO<UserResponseDTO> page = userService.getUsersPage(cursor, limit);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(EndpointMetrics.rejection(e));
+        }
+    }
     
     @GetMapping("/{id}")
     public ResponseEntity<?> getUserById(@PathVariable(name="id", required=true) String id) {
@@ -41,7 +79,7 @@ public class UserController {
             UserResponseDTO user = userService.getUserById(id);
             return ResponseEntity.ok(user);
         } catch (EntityNotFoundException e) {
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(EndpointMetrics.rejection(e));
         }
     }
 
@@ -51,9 +89,31 @@ public class UserController {
             UserResponseDTO userResponseDTO = userService.createUser(userRequestDTO);
             return ResponseEntity.status(HttpStatus.CREATED).body(null);
         } catch (DuplicateKeyException ex) {
-            return ResponseEntity.status(HttpStatus.CONFLICT).body(ex.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(EndpointMetrics.rejection(ex));
+        } catch (PasswordHashingUnavailableException ex) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(ex.getMessage());
         } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(EndpointMetrics.rejection(e));
         }
     } 
+
+    // POST /users/import with a JSON array of users, read as it arrives, answers with one result per row
+    @PostMapping(path = "/import", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> importUsers(InputStream body) {
+        try {
+            UserImportReportDTO report = userImportService.importUsers(body);
+            return ResponseEntity.ok(report);
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(EndpointMetrics.rejection(e));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Could not read the request body.");
+        } catch (PasswordHashingUnavailableException e) {
+            // the batches before this one are stored, a retry reports them as duplicates
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(e.getMessage());
+        }
+    }
 }
@@ -6,7 +6,12 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ro.unibuc.hello.config.EndpointMetrics;
+import ro.unibuc.hello.dto.page.PageResponseDTO;
 import ro.unibuc.hello.dto.vehicle.VehicleDTO;
 import ro.unibuc.hello.exceptions.vehicle.VehicleConflictException;
 import ro.unibuc.hello.model.Vehicle;
@@ -16,9 +21,11 @@ import ro.unibuc.hello.service.VehicleService;
 @RequestMapping("/vehicles")
 public class VehicleController {
     private final VehicleService vehicleService;
+    private final ObjectMapper objectMapper;
 
-    public VehicleController(VehicleService vehicleService) {
+    public VehicleController(VehicleService vehicleService, ObjectMapper objectMapper) {
         this.vehicleService = vehicleService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping
@@ -27,15 +34,34 @@ public class VehicleController {
         return ResponseEntity.ok(vehicles);
     }
 
+    // GET /vehicles with Accept: application/x-ndjson, one document per line
+    @GetMapping(produces = NdjsonResponses.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        return NdjsonResponses.of(objectMapper, vehicleService::streamAll);
+    }
+
+    // GET /vehicles?limit=50&cursor=...
+    @GetMapping(params = "limit")
+    public ResponseEntity<?> getPage(
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "limit") Integer limit) {
+        try {
+            PageResponseDTO<Vehicle> page = vehicleService.getPage(cursor, limit);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(EndpointMetrics.rejection(e));
+        }
+    }
+
     @PostMapping
     public ResponseEntity<?> addVehicle(@RequestBody VehicleDTO vehicleDTO) {
         try {
             VehicleDTO vehicleResponse = vehicleService.addVehicle(vehicleDTO);
             return ResponseEntity.status(HttpStatus.CREATED).body(null);
         } catch (VehicleConflictException e) {
-            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(EndpointMetrics.rejection(e));
         } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(EndpointMetrics.rejection(e));
         }
     }
 
@@ -45,9 +71,9 @@ public class VehicleController {
             VehicleDTO vehicleResponse = vehicleService.updateLicensePlate(oldLicensePlate, newLicensePlate);
             return ResponseEntity.status(HttpStatus.OK).body(vehicleResponse);
         } catch (VehicleConflictException e) {
-            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(EndpointMetrics.rejection(e));
         } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(EndpointMetrics.rejection(e));
         }
     }
 
@@ -57,9 +83,9 @@ public class VehicleController {
             vehicleService.deleteByLicensePlate(licensePlate);
             return ResponseEntity.status(HttpStatus.OK).body(null);
         } catch (VehicleConflictException e) {
-            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(EndpointMetrics.rejection(e));
         } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(EndpointMetrics.rejection(e));
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+package ro.unibuc.hello.dto.page;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+// One page of a keyset-paginated listing, nextCursor is null on the last page
+public class PageResponseDTO<T> {
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
+    private List<T> items;
+    private String nextCursor;
+
+    public PageResponseDTO() {}
+
+    public PageResponseDTO(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    // builds a page from a result fetched with pageSize + 1 elements, the extra one tells there is a next page
+    public static <T> PageResponseDTO<T> of(List<T> fetched, int pageSize, Function<T, String> idExtractor) {
+        if (fetched.size() <= pageSize) {
+            return new PageResponseDTO<>(fetched, null);
+        }
+
+        List<T> items = fetched.subList(0, pageSize);
+        return new PageResponseDTO<>(items, encodeCursor(idExtractor.apply(items.get(pageSize - 1))));
+    }
+
+    // the same page with every item converted, the cursor still points after the last stored element
+    public <R> PageResponseDTO<R> map(Function<T, R> mapper) {
+        return new PageResponseDTO<>(items.stream().map(mapper).toList(), nextCursor);
+    }
+
+    public static int clampPageSize(Integer limit) {
+        if (limit == null) {
+            return DEFAULT_PAGE_SIZE;
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page size has to be greater than 0.");
+        }
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    public static String encodeCursor(String lastId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String decodeCursor(String cursor) {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor.");
+        }
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public void setItems(List<T> items) {
+        this.items = items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
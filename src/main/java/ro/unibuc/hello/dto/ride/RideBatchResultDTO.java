@@ -0,0 +1,54 @@
+package ro.unibuc.hello.dto.ride;
+
+import org.springframework.http.HttpStatus;
+
+import ro.unibuc.hello.model.Ride;
+
+// Outcome of one ride of a batch, index is its position in the request.
+// status is the code POST /rides would have answered for it alone.
+public class RideBatchResultDTO {
+    private int index;
+    private int status;
+    private String id;
+    private String message;
+    private RideResponseDTO ride;
+
+    public RideBatchResultDTO() {}
+
+    public static RideBatchResultDTO created(int index, Ride ride) {
+        RideBatchResultDTO result = new RideBatchResultDTO();
+        result.index = index;
+        result.status = HttpStatus.CREATED.value();
+        result.id = ride.getId();
+        result.ride = RideResponseDTO.toDTO(ride);
+        return result;
+    }
+
+    public static RideBatchResultDTO rejected(int index, HttpStatus status, String message) {
+        RideBatchResultDTO result = new RideBatchResultDTO();
+        result.index = index;
+        result.status = status.value();
+        result.message = message;
+        return result;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public RideResponseDTO getRide() {
+        return ride;
+    }
+}
@@ -0,0 +1,147 @@
+package ro.unibuc.hello.dto.ride;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Set;
+
+import ro.unibuc.hello.model.RideTemplate;
+
+public class RideTemplateRequestDTO {
+    private String driverId;
+    private String startLocation;
+    private String endLocation;
+    private Set<DayOfWeek> daysOfWeek;
+    // UTC, like the departure times of the rides
+    private LocalTime departureTime;
+    private int durationMinutes;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private int seatPrice;
+    private int seatsAvailable;
+    private String carLicensePlate;
+
+    public RideTemplateRequestDTO(String driverId, String startLocation, String endLocation,
+            Set<DayOfWeek> daysOfWeek, LocalTime departureTime, int durationMinutes,
+            LocalDate startDate, LocalDate endDate, int seatPrice,
+            int seatsAvailable, String carLicensePlate) {
+
+        this.driverId = driverId;
+        this.startLocation = startLocation;
+        this.endLocation = endLocation;
+        this.daysOfWeek = daysOfWeek;
+        this.departureTime = departureTime;
+        this.durationMinutes = durationMinutes;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.seatPrice = seatPrice;
+        this.seatsAvailable = seatsAvailable;
+        this.carLicensePlate = carLicensePlate;
+    }
+
+    public RideTemplateRequestDTO(){}
+
+    public RideTemplate toEntity() {
+        return new RideTemplate(
+            this.driverId,
+            this.startLocation,
+            this.endLocation,
+            this.daysOfWeek,
+            this.departureTime,
+            this.durationMinutes,
+            this.startDate,
+            this.endDate,
+            this.seatPrice,
+            this.seatsAvailable,
+            this.carLicensePlate
+        );
+    }
+
+    public String getDriverId() {
+        return driverId;
+    }
+
+    public void setDriverId(String driverId) {
+        this.driverId = driverId;
+    }
+
+    public String getStartLocation() {
+        return startLocation;
+    }
+
+    public void setStartLocation(String startLocation) {
+        this.startLocation = startLocation;
+    }
+
+    public String getEndLocation() {
+        return endLocation;
+    }
+
+    public void setEndLocation(String endLocation) {
+        this.endLocation = endLocation;
+    }
+
+    public Set<DayOfWeek> getDaysOfWeek() {
+        return daysOfWeek;
+    }
+
+    public void setDaysOfWeek(Set<DayOfWeek> daysOfWeek) {
+        this.daysOfWeek = daysOfWeek;
+    }
+
+    public LocalTime getDepartureTime() {
+        return departureTime;
+    }
+
+    public void setDepartureTime(LocalTime departureTime) {
+        this.departureTime = departureTime;
+    }
+
+    public int getDurationMinutes() {
+        return durationMinutes;
+    }
+
+    public void setDurationMinutes(int durationMinutes) {
+        this.durationMinutes = durationMinutes;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(LocalDate startDate) {
+        this.startDate = startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(LocalDate endDate) {
+        this.endDate = endDate;
+    }
+
+    public int getSeatPrice() {
+        return seatPrice;
+    }
+
+    public void setSeatPrice(int seatPrice) {
+        this.seatPrice = seatPrice;
+    }
+
+    public int getSeatsAvailable() {
+        return seatsAvailable;
+    }
+
+    public void setSeatsAvailable(int seatsAvailable) {
+        this.seatsAvailable = seatsAvailable;
+    }
+
+    public String getCarLicensePlate() {
+        return carLicensePlate;
+    }
+
+    public void setCarLicensePlate(String carLicensePlate) {
+        this.carLicensePlate = carLicensePlate;
+    }
+}
@@ -0,0 +1,44 @@
+package ro.unibuc.hello.dto.user;
+
+import java.util.List;
+
+import ro.unibuc.hello.enums.UserImportStatus;
+
+// Result of a bulk import, one entry per row of the request
+public class UserImportReportDTO {
+    private long imported;
+    private long rejected;
+    private List<UserImportResultDTO> rows;
+
+    public UserImportReportDTO() {}
+
+    public UserImportReportDTO(List<UserImportResultDTO> rows) {
+        this.rows = rows;
+        this.imported = rows.stream().filter(row -> row.getStatus() == UserImportStatus.IMPORTED).count();
+        this.rejected = rows.size() - imported;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public void setImported(long imported) {
+        this.imported = imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public void setRejected(long rejected) {
+        this.rejected = rejected;
+    }
+
+    public List<UserImportResultDTO> getRows() {
+        return rows;
+    }
+
+    public void setRows(List<UserImportResultDTO> rows) {
+        this.rows = rows;
+    }
+}
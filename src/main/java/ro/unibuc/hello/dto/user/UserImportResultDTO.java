@@ -0,0 +1,70 @@
+package ro.unibuc.hello.dto.user;
+
+import ro.unibuc.hello.enums.UserImportStatus;
+
+// Outcome of one row of a bulk import, rows are numbered from 0 in the order they were sent
+public class UserImportResultDTO {
+    private int row;
+    private String mail;
+    private UserImportStatus status;
+    private String id;
+    private String message;
+
+    public UserImportResultDTO() {}
+
+    public UserImportResultDTO(int row, String mail, UserImportStatus status, String id, String message) {
+        this.row = row;
+        this.mail = mail;
+        this.status = status;
+        this.id = id;
+        this.message = message;
+    }
+
+    public static UserImportResultDTO imported(int row, String mail, String id) {
+        return new UserImportResultDTO(row, mail, UserImportStatus.IMPORTED, id, null);
+    }
+
+    public static UserImportResultDTO rejected(int row, String mail, UserImportStatus status, String message) {
+        return new UserImportResultDTO(row, mail, status, null, message);
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public void setRow(int row) {
+        this.row = row;
+    }
+
+    public String getMail() {
+        return mail;
+    }
+
+    public void setMail(String mail) {
+        this.mail = mail;
+    }
+
+    public UserImportStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(UserImportStatus status) {
+        this.status = status;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -5,6 +5,7 @@ import java.util.List;
 
 import ro.unibuc.hello.enums.Role;
 import ro.unibuc.hello.model.User;
+import ro.unibuc.hello.model.UserView;
 
 public class UserResponseDTO {
     private String firstName;
@@ -39,6 +40,17 @@ public class UserResponseDTO {
         return dto;
     }   
 
+    public static UserResponseDTO toDTO(UserView user) {
+        return new UserResponseDTO(
+            user.firstName(),
+            user.lastName(),
+            user.mail(),
+            user.phoneNumber(),
+            user.createdAt(),
+            user.avgRating()
+        );
+    }
+
     public Double getAvgRating() {
         return avgRating;
     }
@@ -0,0 +1,13 @@
+package ro.unibuc.hello.enums;
+
+
+public enum UserImportStatus {
+    IMPORTED,
+    // a mandatory field is missing
+    INVALID,
+    // mail or phone number already used by an earlier row of the same import
+    DUPLICATE_IN_REQUEST,
+    // mail or phone number already used by a stored user
+    DUPLICATE,
+    FAILED
+}
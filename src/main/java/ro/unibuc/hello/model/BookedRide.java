@@ -0,0 +1,47 @@
+package ro.unibuc.hello.model;
+
+import java.time.Instant;
+
+import lombok.Getter;
+import lombok.Setter;
+
+// The interval of a ride some passenger is booked on, as returned by the booking aggregations
+@Getter
+@Setter
+public class BookedRide {
+    private String passengerId;
+    private Instant departureTime;
+    private Instant arrivalTime;
+
+    public BookedRide() {}
+
+    public BookedRide(String passengerId, Instant departureTime, Instant arrivalTime) {
+        this.passengerId = passengerId;
+        this.departureTime = departureTime;
+        this.arrivalTime = arrivalTime;
+    }
+
+    public String getPassengerId() {
+        return passengerId;
+    }
+
+    public void setPassengerId(String passengerId) {
+        this.passengerId = passengerId;
+    }
+
+    public Instant getDepartureTime() {
+        return departureTime;
+    }
+
+    public void setDepartureTime(Instant departureTime) {
+        this.departureTime = departureTime;
+    }
+
+    public Instant getArrivalTime() {
+        return arrivalTime;
+    }
+
+    public void setArrivalTime(Instant arrivalTime) {
+        this.arrivalTime = arrivalTime;
+    }
+}
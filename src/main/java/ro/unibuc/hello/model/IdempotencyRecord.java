@@ -0,0 +1,104 @@
+package ro.unibuc.hello.model;
+
+import java.time.Instant;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.Getter;
+import lombok.Setter;
+
+// The response given to a request sent with an Idempotency-Key, kept until expiresAt.
+// status is null while the first request with the key is still running, until pendingUntil.
+// A pending record whose lease ran out was left by a node that stopped, another request may take the key over.
+@Document("idempotency_keys")
+@Getter
+@Setter
+public class IdempotencyRecord {
+    // endpoint and key, "bookings:<key>"
+    @Id
+    private String id;
+    // hash of the request body, a key reused with another body is refused
+    private String fingerprint;
+    private Integer status;
+    private String body;
+    // true if body is JSON, false if it is plain text
+    private boolean json;
+    @Indexed(name = "expires_at_ttl_idx", expireAfter = "0s")
+    private Instant expiresAt;
+    private Instant pendingUntil;
+
+    public IdempotencyRecord() {}
+
+    public IdempotencyRecord(String id, String fingerprint, Instant expiresAt, Instant pendingUntil) {
+        this.id = id;
+        this.fingerprint = fingerprint;
+        this.expiresAt = expiresAt;
+        this.pendingUntil = pendingUntil;
+    }
+
+    public boolean isCompleted() {
+        return status != null;
+    }
+
+    public boolean isAbandoned(Instant now) {
+        return !isCompleted() && (pendingUntil == null || pendingUntil.isBefore(now));
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public void setStatus(Integer status) {
+        this.status = status;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public void setBody(String body) {
+        this.body = body;
+    }
+
+    public boolean isJson() {
+        return json;
+    }
+
+    public void setJson(boolean json) {
+        this.json = json;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    public Instant getPendingUntil() {
+        return pendingUntil;
+    }
+
+    public void setPendingUntil(Instant pendingUntil) {
+        this.pendingUntil = pendingUntil;
+    }
+}
@@ -4,12 +4,22 @@ import com.mongodb.ConnectionString;
 import com.mongodb.MongoClientSettings;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.mongodb.config.AbstractMongoClientConfiguration;
+import org.springframework.data.mongodb.observability.ContextProviderFactory;
+import org.springframework.data.mongodb.observability.MongoObservationCommandListener;
 
+import io.micrometer.observation.ObservationRegistry;
+
+import ro.unibuc.hello.config.MongoCommandMetrics;
+import ro.unibuc.hello.config.MongoPoolMetrics;
+
+import java.time.Duration;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class MongoConfig extends AbstractMongoClientConfiguration {
@@ -17,6 +27,48 @@ public class MongoConfig extends AbstractMongoClientConfiguration {
     @Value("${mongodb.connection.url}")
     private String connectionURL;
 
+    // the defaults are the driver ones, the virtual-threads profile sizes them for many more concurrent requests
+    @Value("${mongodb.pool.max-size:100}")
+    private int poolMaxSize;
+
+    @Value("${mongodb.pool.min-size:0}")
+    private int poolMinSize;
+
+    @Value("${mongodb.pool.max-connecting:2}")
+    private int poolMaxConnecting;
+
+    @Value("${mongodb.pool.max-wait-time:2m}")
+    private Duration poolMaxWaitTime;
+
+    // 0 means connections are never closed for being idle or old
+    @Value("${mongodb.pool.max-idle-time:0s}")
+    private Duration poolMaxIdleTime;
+
+    @Value("${mongodb.pool.max-life-time:0s}")
+    private Duration poolMaxLifeTime;
+
+    // how often the pool closes the stale connections and opens up to its min size
+    @Value("${mongodb.pool.maintenance-frequency:60s}")
+    private Duration poolMaintenanceFrequency;
+
+    @Value("${mongodb.connect-timeout:10s}")
+    private Duration connectTimeout;
+
+    // 0 means no timeout
+    @Value("${mongodb.read-timeout:0s}")
+    private Duration readTimeout;
+
+    // command latencies and slow queries, see MongoCommandMetrics
+    @Autowired
+    private MongoCommandMetrics mongoCommandMetrics;
+
+    @Autowired
+    private MongoPoolMetrics mongoPoolMetrics;
+
+    // a span per command, with the collection and the command as attributes, child of the span of the request
+    @Autowired
+    private ObservationRegistry observationRegistry;
+
     @Override
     protected String getDatabaseName() {
         return "test";
@@ -26,6 +78,21 @@ public class MongoConfig extends AbstractMongoClientConfiguration {
     public MongoClient mongoClient() {
         MongoClientSettings mongoClientSettings = MongoClientSettings.builder()
                 .applyConnectionString(new ConnectionString(connectionURL))
+                .applyToConnectionPoolSettings(pool -> pool
+                        .maxSize(poolMaxSize)
+                        .minSize(poolMinSize)
+                        .maxConnecting(poolMaxConnecting)
+                        .maxWaitTime(poolMaxWaitTime.toMillis(), TimeUnit.MILLISECONDS)
+                        .maxConnectionIdleTime(poolMaxIdleTime.toMillis(), TimeUnit.MILLISECONDS)
+                        .maxConnectionLifeTime(poolMaxLifeTime.toMillis(), TimeUnit.MILLISECONDS)
+                        .maintenanceFrequency(poolMaintenanceFrequency.toMillis(), TimeUnit.MILLISECONDS)
+                        .addConnectionPoolListener(mongoPoolMetrics))
+                .applyToSocketSettings(socket -> socket
+                        .connectTimeout(connectTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                        .readTimeout(readTimeout.toMillis(), TimeUnit.MILLISECONDS))
+                .addCommandListener(mongoCommandMetrics)
+                .addCommandListener(new MongoObservationCommandListener(observationRegistry))
+                .contextProvider(ContextProviderFactory.create(observationRegistry))
                 .build();
 
         return MongoClients.create(mongoClientSettings);
@@ -33,6 +100,12 @@ public class MongoConfig extends AbstractMongoClientConfiguration {
 
     @Override
     public Collection<String> getMappingBasePackages() {
-        return Collections.singleton("ro.unibuc.hello.data");
+        return Collections.singleton("ro.unibuc.hello.model");
+    }
+
+    // create the indexes declared on the documents when the mapping context starts
+    @Override
+    protected boolean autoIndexCreation() {
+        return true;
     }
 }
@@ -2,6 +2,8 @@ package ro.unibuc.hello.model;
 
 import java.time.Instant;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import lombok.NoArgsConstructor;
@@ -9,6 +11,7 @@ import lombok.Setter;
 import lombok.Getter;
 
 @Document("reviews")
+@CompoundIndex(name = "ride_reviewer_idx", def = "{ 'rideId': 1, 'reviewerId': 1 }", unique = true)
 @NoArgsConstructor
 @Getter
 @Setter
@@ -16,6 +19,7 @@ public class Review {
     @Id
     private String id;
     private String reviewerId;
+    @Indexed
     private String reviewedId;
     private String rideId;
     private int rating;
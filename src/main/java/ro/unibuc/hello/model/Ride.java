@@ -3,6 +3,8 @@ package ro.unibuc.hello.model;
 import java.time.Instant;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
@@ -14,6 +16,13 @@ import lombok.Setter;
 import ro.unibuc.hello.enums.RideStatus;
 
 @Document("rides")
+@CompoundIndexes({
+    @CompoundIndex(name = "driver_time_idx", def = "{ 'driverId': 1, 'departureTime': 1, 'arrivalTime': 1 }"),
+    @CompoundIndex(name = "departure_status_idx", def = "{ 'departureTime': 1, 'status': 1 }"),
+    // one ride per occurrence of a recurring template, only the rides made from a template are indexed
+    @CompoundIndex(name = "template_departure_idx", def = "{ 'templateId': 1, 'departureTime': 1 }",
+                   unique = true, partialFilter = "{ 'templateId': { $exists: true } }")
+})
 @Getter
 @Setter
 public class Ride {
@@ -28,6 +37,8 @@ public class Ride {
     private int seatsAvailable;
     private String carLicensePlate;
     private RideStatus status;
+    // the recurring template this ride is an occurrence of, null for the rides created one by one
+    private String templateId;
 
     public Ride() {}
 
@@ -141,4 +152,12 @@ public class Ride {
         this.status = status;
     }
 
+    public String getTemplateId() {
+        return templateId;
+    }
+
+    public void setTemplateId(String templateId) {
+        this.templateId = templateId;
+    }
+
 }
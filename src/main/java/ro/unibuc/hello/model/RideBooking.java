@@ -4,6 +4,8 @@ import java.lang.annotation.Inherited;
 import java.time.Instant;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.mongodb.core.mapping.Field;
 
@@ -16,6 +18,10 @@ import ro.unibuc.hello.enums.RideBookingStatus;
 
 
 @Document("ride_passengers")
+@CompoundIndexes({
+    @CompoundIndex(name = "ride_passenger_idx", def = "{ 'rideId': 1, 'passengerId': 1 }", unique = true),
+    @CompoundIndex(name = "passenger_status_idx", def = "{ 'passengerId': 1, 'bookingStatus': 1 }")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -0,0 +1,57 @@
+package ro.unibuc.hello.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+// Result of the eligibility aggregations of RideRepository: the ride together with
+// what the services need to know about the user asking to book or review it.
+@Getter
+@Setter
+public class RideEligibility {
+    private Ride ride;
+    // booking of the passenger or reviewer on this ride, whatever its status, null if there is none
+    private RideBooking booking;
+    // the reviewer already reviewed this ride
+    private boolean reviewed;
+    // the passenger is booked on another ride overlapping this one
+    private boolean overlapping;
+
+    public RideEligibility() {}
+
+    public RideEligibility(Ride ride, RideBooking booking) {
+        this.ride = ride;
+        this.booking = booking;
+    }
+
+    public Ride getRide() {
+        return ride;
+    }
+
+    public void setRide(Ride ride) {
+        this.ride = ride;
+    }
+
+    public RideBooking getBooking() {
+        return booking;
+    }
+
+    public void setBooking(RideBooking booking) {
+        this.booking = booking;
+    }
+
+    public boolean isReviewed() {
+        return reviewed;
+    }
+
+    public void setReviewed(boolean reviewed) {
+        this.reviewed = reviewed;
+    }
+
+    public boolean isOverlapping() {
+        return overlapping;
+    }
+
+    public void setOverlapping(boolean overlapping) {
+        this.overlapping = overlapping;
+    }
+}
@@ -0,0 +1,215 @@
+package ro.unibuc.hello.model;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.Getter;
+import lombok.Setter;
+
+// A ride repeated every week on the given days, from startDate to endDate, times are UTC.
+// Its occurrences of the coming days are stored as rides ahead, the later ones once a search or a booking reaches them.
+@Document("ride_templates")
+@CompoundIndexes({
+    @CompoundIndex(name = "driver_idx", def = "{ 'driverId': 1 }"),
+    @CompoundIndex(name = "days_dates_idx", def = "{ 'daysOfWeek': 1, 'startDate': 1, 'endDate': 1 }")
+})
+@Getter
+@Setter
+public class RideTemplate {
+    @Id
+    private String id;
+    private String driverId;
+    private String startLocation;
+    private String endLocation;
+    private Set<DayOfWeek> daysOfWeek;
+    private LocalTime departureTime;
+    private int durationMinutes;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private int seatPrice;
+    private int seatsAvailable;
+    private String carLicensePlate;
+    private Instant createdAt;
+
+    public record Occurrence(Instant departureTime, Instant arrivalTime) {}
+
+    public RideTemplate() {}
+
+    public RideTemplate(String driverId, String startLocation, String endLocation, Set<DayOfWeek> daysOfWeek,
+                        LocalTime departureTime, int durationMinutes, LocalDate startDate, LocalDate endDate,
+                        int seatPrice, int seatsAvailable, String carLicensePlate) {
+        this.driverId = driverId;
+        this.startLocation = startLocation;
+        this.endLocation = endLocation;
+        this.daysOfWeek = daysOfWeek;
+        this.departureTime = departureTime;
+        this.durationMinutes = durationMinutes;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.seatPrice = seatPrice;
+        this.seatsAvailable = seatsAvailable;
+        this.carLicensePlate = carLicensePlate;
+        this.createdAt = Instant.now();
+    }
+
+    public Duration duration() {
+        return Duration.ofMinutes(durationMinutes);
+    }
+
+    public Optional<Occurrence> occurrenceOn(LocalDate date) {
+        if (date.isBefore(startDate) || date.isAfter(endDate) || !daysOfWeek.contains(date.getDayOfWeek())) {
+            return Optional.empty();
+        }
+        Instant departure = date.atTime(departureTime).toInstant(ZoneOffset.UTC);
+        return Optional.of(new Occurrence(departure, departure.plus(duration())));
+    }
+
+    // every occurrence, in departure order
+    public List<Occurrence> occurrences() {
+        List<Occurrence> occurrences = new ArrayList<>();
+        for (LocalDate date = startDate; !date.isAfter(endDate); date = date.plusDays(1)) {
+            occurrenceOn(date).ifPresent(occurrences::add);
+        }
+        return occurrences;
+    }
+
+    // true if an occurrence intersects [from, to], ends included like the ride overlap queries
+    public boolean overlaps(Instant from, Instant to) {
+        // an occurrence intersecting the interval departs between from - duration and to
+        LocalDate first = from.minus(duration()).atZone(ZoneOffset.UTC).toLocalDate();
+        LocalDate last = to.atZone(ZoneOffset.UTC).toLocalDate();
+        for (LocalDate date = first; !date.isAfter(last); date = date.plusDays(1)) {
+            Optional<Occurrence> occurrence = occurrenceOn(date);
+            if (occurrence.isPresent()
+                    && !occurrence.get().departureTime().isAfter(to)
+                    && !occurrence.get().arrivalTime().isBefore(from)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Ride toRide(Occurrence occurrence) {
+        Ride ride = new Ride(driverId, startLocation, endLocation, occurrence.departureTime(), occurrence.arrivalTime(),
+                seatPrice, seatsAvailable, carLicensePlate);
+        ride.setTemplateId(id);
+        return ride;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getDriverId() {
+        return driverId;
+    }
+
+    public void setDriverId(String driverId) {
+        this.driverId = driverId;
+    }
+
+    public String getStartLocation() {
+        return startLocation;
+    }
+
+    public void setStartLocation(String startLocation) {
+        this.startLocation = startLocation;
+    }
+
+    public String getEndLocation() {
+        return endLocation;
+    }
+
+    public void setEndLocation(String endLocation) {
+        this.endLocation = endLocation;
+    }
+
+    public Set<DayOfWeek> getDaysOfWeek() {
+        return daysOfWeek;
+    }
+
+    public void setDaysOfWeek(Set<DayOfWeek> daysOfWeek) {
+        this.daysOfWeek = daysOfWeek;
+    }
+
+    public LocalTime getDepartureTime() {
+        return departureTime;
+    }
+
+    public void setDepartureTime(LocalTime departureTime) {
+        this.departureTime = departureTime;
+    }
+
+    public int getDurationMinutes() {
+        return durationMinutes;
+    }
+
+    public void setDurationMinutes(int durationMinutes) {
+        this.durationMinutes = durationMinutes;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(LocalDate startDate) {
+        this.startDate = startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(LocalDate endDate) {
+        this.endDate = endDate;
+    }
+
+    public int getSeatPrice() {
+        return seatPrice;
+    }
+
+    public void setSeatPrice(int seatPrice) {
+        this.seatPrice = seatPrice;
+    }
+
+    public int getSeatsAvailable() {
+        return seatsAvailable;
+    }
+
+    public void setSeatsAvailable(int seatsAvailable) {
+        this.seatsAvailable = seatsAvailable;
+    }
+
+    public String getCarLicensePlate() {
+        return carLicensePlate;
+    }
+
+    public void setCarLicensePlate(String carLicensePlate) {
+        this.carLicensePlate = carLicensePlate;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+}
@@ -0,0 +1,19 @@
+package ro.unibuc.hello.model;
+
+import java.time.Instant;
+
+// The fields of a user read by the services, as cached by UserCache.
+// Immutable and without the password hash or the roles, a cached view can be shared by every request.
+public record UserView(String id,
+                       String firstName,
+                       String lastName,
+                       String mail,
+                       String phoneNumber,
+                       Instant createdAt,
+                       Double avgRating) {
+
+    public static UserView of(User user) {
+        return new UserView(user.getId(), user.getFirstName(), user.getLastName(), user.getMail(),
+            user.getPhoneNumber(), user.getCreatedAt(), user.getAvgRating());
+    }
+}
@@ -1,6 +1,7 @@
 package ro.unibuc.hello.model;
 
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import lombok.Getter;
@@ -15,6 +16,7 @@ public class Vehicle {
     private String userId;
     private String brand;
     private String model;
+    @Indexed(unique = true)
     private String licensePlate;
 
     public Vehicle() {}
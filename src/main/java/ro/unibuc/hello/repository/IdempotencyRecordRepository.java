@@ -0,0 +1,17 @@
+package ro.unibuc.hello.repository;
+
+import java.time.Instant;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.Update;
+
+import ro.unibuc.hello.model.IdempotencyRecord;
+
+public interface IdempotencyRecordRepository extends MongoRepository<IdempotencyRecord, String> {
+
+    // takes over a pending record whose lease expired, 0 if it completed or another request took it over first
+    @Query("{ 'id': ?0, 'status': null, 'pendingUntil': ?1 }")
+    @Update("{ '$set': { 'fingerprint': ?2, 'pendingUntil': ?3, 'expiresAt': ?4 } }")
+    long takeOver(String id, Instant expiredLease, String fingerprint, Instant pendingUntil, Instant expiresAt);
+}
@@ -2,12 +2,16 @@ package ro.unibuc.hello.repository;
 
 import java.time.Instant;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.Update;
 
+import ro.unibuc.hello.model.BookedRide;
 import ro.unibuc.hello.model.RideBooking;
 import ro.unibuc.hello.model.Ride;
 
@@ -21,9 +25,63 @@ public interface RideBookingRepository extends MongoRepository<RideBooking, Stri
 
     Optional<RideBooking> findByRideIdAndPassengerId(String rideId, String passengerId);
 
+    // atomically cancels the booking if it is still booked, returns the number of bookings modified
+    @Query("{ 'id': ?0, 'bookingStatus': 'BOOKED' }")
+    @Update("{ '$set': { 'bookingStatus': 'CANCELLED' } }")
+    long cancel(String bookingId);
+
     List<RideBooking> findByRideId(String rideId);
     
     
+    //first ride the passenger is booked on that overlaps the given interval, in one round trip
+    @Aggregation(pipeline = {
+        "{ $match: { 'passengerId': ?0, 'bookingStatus': 'BOOKED' } }",
+        "{ $lookup: { from: 'rides', " +
+            "let: { rideId: { $convert: { input: '$rideId', to: 'objectId', onError: '$rideId', onNull: null } } }, " +
+            "pipeline: [ { $match: { $expr: { $and: [ " +
+                "{ $eq: [ '$_id', '$$rideId' ] }, " +
+                "{ $lte: [ '$departureTime', ?2 ] }, " +
+                "{ $gte: [ '$arrivalTime', ?1 ] } " +
+            "] } } } ], " +
+            "as: 'ride' } }",
+        "{ $unwind: '$ride' }",
+        "{ $replaceRoot: { newRoot: '$ride' } }",
+        "{ $limit: 1 }"
+    })
+    Optional<Ride> findFirstOverlappingRideForPassenger(String passengerId, Instant departureTime, Instant arrivalTime);
+
+    //rides the passenger is booked on that overlap the given interval, in one round trip
+    @Aggregation(pipeline = {
+        "{ $match: { 'passengerId': ?0, 'bookingStatus': 'BOOKED' } }",
+        "{ $lookup: { from: 'rides', " +
+            "let: { rideId: { $convert: { input: '$rideId', to: 'objectId', onError: '$rideId', onNull: null } } }, " +
+            "pipeline: [ { $match: { $expr: { $and: [ " +
+                "{ $eq: [ '$_id', '$$rideId' ] }, " +
+                "{ $lte: [ '$departureTime', ?2 ] }, " +
+                "{ $gte: [ '$arrivalTime', ?1 ] } " +
+            "] } } } ], " +
+            "as: 'ride' } }",
+        "{ $unwind: '$ride' }",
+        "{ $replaceRoot: { newRoot: '$ride' } }"
+    })
+    List<Ride> findOverlappingBookedRidesForPassenger(String passengerId, Instant departureTime, Instant arrivalTime);
+
+    //rides any of the passengers is booked on that overlap the given interval, with the passenger of each
+    @Aggregation(pipeline = {
+        "{ $match: { 'passengerId': { $in: ?0 }, 'bookingStatus': 'BOOKED' } }",
+        "{ $lookup: { from: 'rides', " +
+            "let: { rideId: { $convert: { input: '$rideId', to: 'objectId', onError: '$rideId', onNull: null } } }, " +
+            "pipeline: [ { $match: { $expr: { $and: [ " +
+                "{ $eq: [ '$_id', '$$rideId' ] }, " +
+                "{ $lte: [ '$departureTime', ?2 ] }, " +
+                "{ $gte: [ '$arrivalTime', ?1 ] } " +
+            "] } } } ], " +
+            "as: 'ride' } }",
+        "{ $unwind: '$ride' }",
+        "{ $project: { _id: 0, passengerId: 1, departureTime: '$ride.departureTime', arrivalTime: '$ride.arrivalTime' } }"
+    })
+    List<BookedRide> findOverlappingBookedRidesForPassengers(Collection<String> passengerIds, Instant departureTime, Instant arrivalTime);
+
     //overlapping rides for passenger
     @Query("{ 'passengerId': ?0, 'departureTime': { $lt: ?2 }, 'arrivalTime': { $gt: ?1 } }")
     List<RideBooking> findOverlappingRidesForPassenger(String passengerId, Instant departureTime, Instant arrivalTime);
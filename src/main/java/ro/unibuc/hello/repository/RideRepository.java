@@ -2,16 +2,31 @@ package ro.unibuc.hello.repository;
 
 import java.time.Instant;
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 import java.util.Optional;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.repository.Aggregation;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.Update;
 
+import ro.unibuc.hello.enums.RideStatus;
 import ro.unibuc.hello.model.Ride;
+import ro.unibuc.hello.model.RideEligibility;
 
 public interface RideRepository extends MongoRepository<Ride, String> {
 
+    // keyset pagination on _id, first page and pages after the given id
+    List<Ride> findByOrderByIdAsc(Limit limit);
+    List<Ride> findByIdGreaterThanOrderByIdAsc(String id, Limit limit);
+
+    // whole collection backed by a database cursor, has to be closed by the caller
+    @Query("{}")
+    Stream<Ride> streamAllBy();
+
     @Query("{ 'id': ?0, " +
        "$or: [ " +
        "{ 'departureTime': { $lte: ?1 }, 'arrivalTime': { $gte: ?1 } }, " +
@@ -19,13 +34,86 @@ public interface RideRepository extends MongoRepository<Ride, String> {
        "] }")
     List<Ride> findByIdAndTimeOverlap(String id, Instant departureTime, Instant arrivalTime);
 
-    @Query("{ 'driverId': ?0, " +
-       "$or: [ " +
-       "{ 'departureTime': { $lte: ?1 }, 'arrivalTime': { $gte: ?1 } }, " +
-       "{ 'departureTime': { $lte: ?2 }, 'arrivalTime': { $gte: ?2 } } " +
-       "] }")
+    // rides of the driver whose [departureTime, arrivalTime] intersects the given interval
+    @Query("{ 'driverId': ?0, 'departureTime': { $lte: ?2 }, 'arrivalTime': { $gte: ?1 } }")
     List<Ride> findByDriverIdAndTimeOverlap(String driverId, Instant departureTime, Instant arrivalTime);
 
+    // rides of any of the drivers whose [departureTime, arrivalTime] intersects the given interval
+    @Query("{ 'driverId': { $in: ?0 }, 'departureTime': { $lte: ?2 }, 'arrivalTime': { $gte: ?1 } }")
+    List<Ride> findByDriverIdInAndTimeOverlap(Collection<String> driverIds, Instant departureTime, Instant arrivalTime);
+
     @Query("{ 'departureTime': { $gte: ?0, $lt: ?1 } }") 
     List<Ride> findAllByDepartureDate(Instant startOfDay, Instant endOfDay);
+
+    @Query("{ 'departureTime': { $gte: ?0, $lt: ?1 }, 'startLocation': ?2, 'endLocation': ?3, 'status': 'SCHEDULED' }")
+    List<Ride> findScheduledByDepartureDateAndRoute(Instant startOfDay, Instant endOfDay, String startLocation, String endLocation);
+
+    // scheduled rides departing from the given moment on, backed by a database cursor
+    @Query("{ 'departureTime': { $gte: ?0 }, 'status': 'SCHEDULED' }")
+    Stream<Ride> streamScheduledDepartingFrom(Instant from);
+
+    // atomically takes one seat if the ride is still scheduled and not full, returns the number of rides modified
+    @Query("{ 'id': ?0, 'status': 'SCHEDULED', 'seatsAvailable': { $gt: 0 } }")
+    @Update("{ '$inc': { 'seatsAvailable': -1 } }")
+    long reserveSeat(String rideId);
+
+    // atomically gives one seat back, returns the number of rides modified
+    @Query("{ 'id': ?0 }")
+    @Update("{ '$inc': { 'seatsAvailable': 1 } }")
+    long releaseSeat(String rideId);
+
+    // moves the ride to the new status if it still has the expected one, touching only the status,
+    // returns the number of rides modified
+    @Query("{ 'id': ?0, 'status': ?1 }")
+    @Update("{ '$set': { 'status': ?2 } }")
+    long updateStatus(String rideId, RideStatus expected, RideStatus status);
+
+    // the rides already made from the given templates departing in [from, to)
+    @Query("{ 'templateId': { $in: ?0 }, 'departureTime': { $gte: ?1, $lt: ?2 } }")
+    List<Ride> findTemplateRidesDepartingBetween(Collection<String> templateIds, Instant from, Instant to);
+
+    Optional<Ride> findByTemplateIdAndDepartureTime(String templateId, Instant departureTime);
+
+    // the ride with the booking of the passenger and whether the passenger is booked on an overlapping ride,
+    // empty if the ride does not exist, in one round trip
+    @Aggregation(pipeline = {
+        "{ $match: { 'id': ?0 } }",
+        "{ $replaceRoot: { newRoot: { ride: '$$ROOT' } } }",
+        "{ $lookup: { from: 'ride_passengers', " +
+            "pipeline: [ { $match: { 'rideId': ?0, 'passengerId': ?1 } }, { $limit: 1 } ], " +
+            "as: 'booking' } }",
+        "{ $lookup: { from: 'ride_passengers', " +
+            "let: { departureTime: '$ride.departureTime', arrivalTime: '$ride.arrivalTime' }, " +
+            "pipeline: [ " +
+                "{ $match: { 'passengerId': ?1, 'bookingStatus': 'BOOKED' } }, " +
+                "{ $lookup: { from: 'rides', " +
+                    "let: { rideId: { $convert: { input: '$rideId', to: 'objectId', onError: '$rideId', onNull: null } } }, " +
+                    "pipeline: [ { $match: { $expr: { $and: [ " +
+                        "{ $eq: [ '$_id', '$$rideId' ] }, " +
+                        "{ $lte: [ '$departureTime', '$$arrivalTime' ] }, " +
+                        "{ $gte: [ '$arrivalTime', '$$departureTime' ] } " +
+                    "] } } }, { $project: { _id: 1 } } ], " +
+                    "as: 'ride' } }, " +
+                "{ $match: { 'ride': { $ne: [] } } }, " +
+                "{ $limit: 1 }, " +
+                "{ $project: { _id: 1 } } ], " +
+            "as: 'overlapping' } }",
+        "{ $project: { ride: 1, booking: { $first: '$booking' }, overlapping: { $gt: [ { $size: '$overlapping' }, 0 ] } } }"
+    })
+    Optional<RideEligibility> findBookingEligibility(String rideId, String passengerId);
+
+    // the ride with the booking of the reviewer and whether the reviewer already reviewed it,
+    // empty if the ride does not exist, in one round trip
+    @Aggregation(pipeline = {
+        "{ $match: { 'id': ?0 } }",
+        "{ $replaceRoot: { newRoot: { ride: '$$ROOT' } } }",
+        "{ $lookup: { from: 'ride_passengers', " +
+            "pipeline: [ { $match: { 'rideId': ?0, 'passengerId': ?1 } }, { $limit: 1 } ], " +
+            "as: 'booking' } }",
+        "{ $lookup: { from: 'reviews', " +
+            "pipeline: [ { $match: { 'rideId': ?0, 'reviewerId': ?1 } }, { $limit: 1 }, { $project: { _id: 1 } } ], " +
+            "as: 'reviews' } }",
+        "{ $project: { ride: 1, booking: { $first: '$booking' }, reviewed: { $gt: [ { $size: '$reviews' }, 0 ] } } }"
+    })
+    Optional<RideEligibility> findReviewEligibility(String rideId, String reviewerId);
 }
@@ -0,0 +1,25 @@
+package ro.unibuc.hello.repository;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+
+import ro.unibuc.hello.model.RideTemplate;
+
+public interface RideTemplateRepository extends MongoRepository<RideTemplate, String> {
+
+    List<RideTemplate> findByDriverId(String driverId);
+
+    List<RideTemplate> findByDriverIdIn(Collection<String> driverIds);
+
+    // templates with an occurrence on the given date
+    @Query("{ 'daysOfWeek': ?1, 'startDate': { $lte: ?0 }, 'endDate': { $gte: ?0 } }")
+    List<RideTemplate> findActiveOn(LocalDate date, DayOfWeek dayOfWeek);
+
+    @Query("{ 'daysOfWeek': ?1, 'startDate': { $lte: ?0 }, 'endDate': { $gte: ?0 }, 'startLocation': ?2, 'endLocation': ?3 }")
+    List<RideTemplate> findActiveOnRoute(LocalDate date, DayOfWeek dayOfWeek, String startLocation, String endLocation);
+}
@@ -1,13 +1,60 @@
 package ro.unibuc.hello.repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.Update;
 
 import ro.unibuc.hello.model.User;
 
 public interface UserRepository extends MongoRepository<User, String> {
+    // the fields of UserView, the password hash and the roles are not loaded
+    String VIEW_FIELDS = "{ 'firstName': 1, 'lastName': 1, 'mail': 1, 'phoneNumber': 1, 'createdAt': 1, 'avgRating': 1 }";
+
+    // keyset pagination on _id, first page and pages after the given id
+    List<User> findByOrderByIdAsc(Limit limit);
+    List<User> findByIdGreaterThanOrderByIdAsc(String id, Limit limit);
+
+    // whole collection with the fields of UserView, backed by a database cursor, has to be closed by the caller
+    @Query(value = "{}", fields = VIEW_FIELDS)
+    Stream<User> streamViewsBy();
+
+    // only the mails and phone numbers, has to be closed by the caller
+    @Query(value = "{}", fields = "{ 'mail': 1, 'phoneNumber': 1 }")
+    Stream<User> streamMailsAndPhoneNumbersBy();
+
+    boolean existsByMail(String mail);
+    boolean existsByPhoneNumber(String phoneNumber);
+
     Optional<User> findByMail(String mail);
     Optional<User> findByPhoneNumber(String phoneNumber);
     Optional<User> findById(String userId);
+
+    @Query(value = "{ 'id': ?0 }", fields = VIEW_FIELDS)
+    Optional<User> findViewById(String id);
+
+    @Query(value = "{ 'id': { $in: ?0 } }", fields = VIEW_FIELDS)
+    List<User> findViewsByIdIn(Collection<String> ids);
+
+    @Query(value = "{ 'mail': ?0 }", fields = VIEW_FIELDS)
+    Optional<User> findViewByMail(String mail);
+
+    @Query(value = "{ 'phoneNumber': ?0 }", fields = VIEW_FIELDS)
+    Optional<User> findViewByPhoneNumber(String phoneNumber);
+
+    // atomically adds one rating and recomputes the average, touching only the rating fields
+    @Query("{ 'id': ?0 }")
+    @Update(pipeline = {
+        "{ '$set': { " +
+            "'ratingsSum': { '$add': [ { '$ifNull': [ '$ratingsSum', 0 ] }, ?1 ] }, " +
+            "'reviewsNumber': { '$add': [ { '$ifNull': [ '$reviewsNumber', 0 ] }, 1 ] } " +
+        "} }",
+        "{ '$set': { 'avgRating': { '$divide': [ '$ratingsSum', '$reviewsNumber' ] } } }"
+    })
+    long addRating(String userId, int rating);
 }
@@ -1,5 +1,10 @@
 package ro.unibuc.hello.repository;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.springframework.data.domain.Limit;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 
@@ -7,8 +12,24 @@ import ro.unibuc.hello.model.Vehicle;
 
 public interface VehicleRepository extends MongoRepository<Vehicle, String> {
 
+    // keyset pagination on _id, first page and pages after the given id
+    List<Vehicle> findByOrderByIdAsc(Limit limit);
+    List<Vehicle> findByIdGreaterThanOrderByIdAsc(String id, Limit limit);
+
+    // whole collection backed by a database cursor, has to be closed by the caller
+    @Query("{}")
+    Stream<Vehicle> streamAllBy();
+
+    // only the license plates, has to be closed by the caller
+    @Query(value = "{}", fields = "{ 'licensePlate': 1 }")
+    Stream<Vehicle> streamLicensePlatesBy();
+
     boolean existsByLicensePlate(String licensePlate);
 
+    // the stored ones among the given license plates, only the plate field
+    @Query(value = "{ 'licensePlate': { $in: ?0 } }", fields = "{ 'licensePlate': 1 }")
+    List<Vehicle> findLicensePlatesIn(Collection<String> licensePlates);
+
     @Query("{ 'licensePlate': ?0 }")
     Vehicle findOneByLicensePlate(String licensePlate);
 }
@@ -0,0 +1,12 @@
+package ro.unibuc.hello.repository.reactive;
+
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+import reactor.core.publisher.Flux;
+import ro.unibuc.hello.model.Review;
+
+// Non-blocking reads of the reviews collection, only active with the reactive profile
+public interface ReactiveReviewRepository extends ReactiveMongoRepository<Review, String> {
+    Flux<Review> findByRideId(String rideId);
+    Flux<Review> findByReviewedId(String reviewedId);
+}
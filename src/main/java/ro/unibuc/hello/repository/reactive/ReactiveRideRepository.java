@@ -0,0 +1,16 @@
+package ro.unibuc.hello.repository.reactive;
+
+import java.time.Instant;
+
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+import reactor.core.publisher.Flux;
+import ro.unibuc.hello.model.Ride;
+
+// Non-blocking reads of the rides collection, only active with the reactive profile
+public interface ReactiveRideRepository extends ReactiveMongoRepository<Ride, String> {
+
+    @Query("{ 'departureTime': { $gte: ?0, $lt: ?1 }, 'status': 'SCHEDULED' }")
+    Flux<Ride> findScheduledByDepartureDate(Instant startOfDay, Instant endOfDay);
+}
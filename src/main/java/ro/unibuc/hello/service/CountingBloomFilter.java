@@ -0,0 +1,103 @@
+package ro.unibuc.hello.service;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bloom filter with a small counter per slot instead of a bit, so keys can be removed again.
+// A negative answer is definite, a positive one can be false with about the configured probability.
+// Counters saturate at 255 and are never decremented after that, which only costs false positives.
+class CountingBloomFilter {
+    private static final int MAX_COUNT = 255;
+    private static final VarHandle COUNTER = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private final byte[] counters;
+    private final int slots;
+    private final int hashFunctions;
+    private final AtomicLong entries = new AtomicLong();
+
+    CountingBloomFilter(long expectedEntries, double falsePositiveProbability) {
+        long n = Math.max(1, expectedEntries);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        this.slots = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(64, m));
+        this.hashFunctions = (int) Math.max(1, Math.round((double) slots / n * Math.log(2)));
+        this.counters = new byte[slots];
+    }
+
+    void add(String key) {
+        long h1 = hash(key, 0x9E3779B97F4A7C15L);
+        long h2 = hash(key, 0xC2B2AE3D27D4EB4FL);
+        for (int i = 0; i < hashFunctions; i++) {
+            update(slot(h1, h2, i), 1);
+        }
+        entries.incrementAndGet();
+    }
+
+    // only call this for a key that was added before, removing anything else can hide other keys
+    void remove(String key) {
+        long h1 = hash(key, 0x9E3779B97F4A7C15L);
+        long h2 = hash(key, 0xC2B2AE3D27D4EB4FL);
+        for (int i = 0; i < hashFunctions; i++) {
+            update(slot(h1, h2, i), -1);
+        }
+        entries.decrementAndGet();
+    }
+
+    boolean mightContain(String key) {
+        long h1 = hash(key, 0x9E3779B97F4A7C15L);
+        long h2 = hash(key, 0xC2B2AE3D27D4EB4FL);
+        for (int i = 0; i < hashFunctions; i++) {
+            if ((byte) COUNTER.getVolatile(counters, slot(h1, h2, i)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long entries() {
+        return Math.max(0, entries.get());
+    }
+
+    // (1 - e^(-kn/m))^k for the current number of entries
+    double expectedFalsePositiveProbability() {
+        return Math.pow(1 - Math.exp(-(double) hashFunctions * entries() / slots), hashFunctions);
+    }
+
+    // one byte per counter
+    long memoryBytes() {
+        return slots;
+    }
+
+    // unsigned byte counter, a saturated counter stays saturated
+    private void update(int slot, int delta) {
+        while (true) {
+            byte current = (byte) COUNTER.getVolatile(counters, slot);
+            int count = current & 0xFF;
+            if (count == MAX_COUNT || (delta < 0 && count == 0)) {
+                return;
+            }
+            if (COUNTER.compareAndSet(counters, slot, current, (byte) (count + delta))) {
+                return;
+            }
+        }
+    }
+
+    private int slot(long h1, long h2, int i) {
+        return (int) Math.floorMod(h1 + i * h2, (long) slots);
+    }
+
+    // FNV-1a over the chars, finished with the murmur3 mixer
+    private static long hash(String key, long seed) {
+        long h = seed ^ 0xCBF29CE484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
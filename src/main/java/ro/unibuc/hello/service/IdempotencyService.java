@@ -0,0 +1,245 @@
+package ro.unibuc.hello.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import ro.unibuc.hello.model.IdempotencyRecord;
+import ro.unibuc.hello.repository.IdempotencyRecordRepository;
+
+// Runs a POST at most once per Idempotency-Key and gives the same response to its retries.
+// The responses live in the idempotency_keys collection until their TTL, the recent ones are also kept in memory.
+// The first request with a key inserts a pending record, so a duplicate sent to another node gets a 409 while it runs,
+// a duplicate sent to the same node waits for it and gets its response.
+// The pending record is leased for idempotency.pending-lease, past it the node running the request is taken as gone
+// and a retry takes the key over, it must be longer than the slowest request.
+// Server errors are not kept, the key can be retried.
+@Service
+public class IdempotencyService {
+    public static final String HEADER = "Idempotency-Key";
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+    private final Duration ttl;
+    private final Duration pendingLease;
+    private final Cache<String, StoredResponse> completed;
+    private final ConcurrentHashMap<String, CompletableFuture<StoredResponse>> inFlight = new ConcurrentHashMap<>();
+
+    public IdempotencyService(IdempotencyRecordRepository idempotencyRecordRepository,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry,
+                              Clock clock,
+                              @Value("${idempotency.ttl:24h}") Duration ttl,
+                              @Value("${idempotency.pending-lease:60s}") Duration pendingLease,
+                              @Value("${idempotency.cache.max-size:10000}") long maxSize) {
+        this.idempotencyRecordRepository = idempotencyRecordRepository;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+        this.ttl = ttl;
+        this.pendingLease = pendingLease;
+        this.completed = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(ttl)
+            .build();
+    }
+
+    // status is null while the request holding the key is still running
+    private record StoredResponse(String fingerprint, Integer status, String body, boolean json) {
+        boolean isPending() {
+            return status == null;
+        }
+    }
+
+    // scope tells the endpoints apart, the same key may be used once on each of them
+    public ResponseEntity<?> execute(String scope, String key, Object request, Supplier<ResponseEntity<?>> action) {
+        if (key == null || key.isBlank()) {
+            return action.get();
+        }
+        if (key.length() > MAX_KEY_LENGTH) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .body(HEADER + " can have at most " + MAX_KEY_LENGTH + " characters.");
+        }
+
+        String id = scope + ":" + key;
+        String fingerprint = fingerprint(request);
+
+        StoredResponse cached = completed.getIfPresent(id);
+        if (cached != null) {
+            return replay(cached, fingerprint);
+        }
+
+        CompletableFuture<StoredResponse> execution = new CompletableFuture<>();
+        CompletableFuture<StoredResponse> running = inFlight.putIfAbsent(id, execution);
+        if (running != null) {
+            // collapsed onto the execution already running on this node
+            return replay(await(running), fingerprint);
+        }
+
+        try {
+            StoredResponse taken = claim(id, fingerprint);
+            if (taken != null) {
+                execution.complete(taken);
+                return replay(taken, fingerprint);
+            }
+            StoredResponse response = executeOnce(id, fingerprint, action);
+            execution.complete(response);
+            return toResponse(response, false);
+        } catch (RuntimeException e) {
+            execution.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(id, execution);
+        }
+    }
+
+    // null once this request holds the key, else what the request that took it before left
+    private StoredResponse claim(String id, String fingerprint) {
+        Instant now = clock.instant();
+        try {
+            idempotencyRecordRepository.insert(new IdempotencyRecord(id, fingerprint, now.plus(ttl), now.plus(pendingLease)));
+            return null;
+        } catch (DuplicateKeyException e) {
+            // taken by an earlier request or by a duplicate running on another node
+        }
+
+        IdempotencyRecord record = idempotencyRecordRepository.findById(id).orElse(null);
+        if (record == null) {
+            // removed after a server error meanwhile, a retry can take it
+            return new StoredResponse(fingerprint, null, null, false);
+        }
+        if (record.isCompleted()) {
+            StoredResponse stored = new StoredResponse(record.getFingerprint(), record.getStatus(), record.getBody(), record.isJson());
+            completed.put(id, stored);
+            return stored;
+        }
+        if (record.isAbandoned(now) && idempotencyRecordRepository.takeOver(id, record.getPendingUntil(), fingerprint,
+                now.plus(pendingLease), now.plus(ttl)) > 0) {
+            count("taken_over");
+            return null;
+        }
+        // not kept in memory, a later retry reads the record again
+        return new StoredResponse(record.getFingerprint(), null, null, false);
+    }
+
+    private StoredResponse executeOnce(String id, String fingerprint, Supplier<ResponseEntity<?>> action) {
+        ResponseEntity<?> response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            idempotencyRecordRepository.deleteById(id);
+            throw e;
+        }
+
+        StoredResponse stored = toStored(fingerprint, response);
+        if (response.getStatusCode().is5xxServerError()) {
+            idempotencyRecordRepository.deleteById(id);
+            count("executed");
+            return stored;
+        }
+
+        IdempotencyRecord record = new IdempotencyRecord(id, fingerprint, clock.instant().plus(ttl), null);
+        record.setStatus(stored.status());
+        record.setBody(stored.body());
+        record.setJson(stored.json());
+        idempotencyRecordRepository.save(record);
+        completed.put(id, stored);
+        count("executed");
+        return stored;
+    }
+
+    private ResponseEntity<?> replay(StoredResponse stored, String fingerprint) {
+        if (stored.fingerprint() != null && !stored.fingerprint().equals(fingerprint)) {
+            count("mismatch");
+            return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+                .body(HEADER + " already used for a different request.");
+        }
+        if (stored.isPending()) {
+            count("in_progress");
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                .body("A request with this " + HEADER + " is still being processed.");
+        }
+        count("replayed");
+        return toResponse(stored, true);
+    }
+
+    private static StoredResponse await(CompletableFuture<StoredResponse> running) {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for the duplicate request.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private StoredResponse toStored(String fingerprint, ResponseEntity<?> response) {
+        Object body = response.getBody();
+        if (body == null || body instanceof String) {
+            return new StoredResponse(fingerprint, response.getStatusCode().value(), (String) body, false);
+        }
+        return new StoredResponse(fingerprint, response.getStatusCode().value(), toJson(body), true);
+    }
+
+    private static ResponseEntity<?> toResponse(StoredResponse stored, boolean replayed) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(stored.status());
+        if (replayed) {
+            builder.header(REPLAYED_HEADER, "true");
+        }
+        if (stored.json()) {
+            builder.contentType(MediaType.APPLICATION_JSON);
+        }
+        return builder.body(stored.body());
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(toJson(request).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    private void count(String outcome) {
+        meterRegistry.counter("idempotency.requests", "outcome", outcome).increment();
+    }
+}
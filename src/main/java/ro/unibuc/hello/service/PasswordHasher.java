@@ -0,0 +1,128 @@
+package ro.unibuc.hello.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import ro.unibuc.hello.exceptions.user.PasswordHashingUnavailableException;
+
+// Runs the password hashing on a fixed pool of platform threads, half of the cores by default, so a burst of signups
+// takes at most those cores and the rest of the API keeps its CPU. The waiting hashes are bounded by the queue,
+// a hash that does not fit is rejected right away instead of making the caller wait behind the whole burst.
+@Component
+public class PasswordHasher {
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final int poolSize;
+    private final Timer hashTime;
+    private final Timer waitTime;
+    private final Counter rejected;
+
+    public PasswordHasher(PasswordEncoder passwordEncoder,
+                          MeterRegistry meterRegistry,
+                          @Value("${password-hashing.threads:0}") int threads,
+                          @Value("${password-hashing.queue-capacity:64}") int queueCapacity) {
+        this.passwordEncoder = passwordEncoder;
+
+        // 0 means half of the available cores
+        this.poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            task -> {
+                Thread thread = new Thread(task, "password-hashing-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+
+        this.hashTime = Timer.builder("password.hashing.time")
+            .description("time spent computing a password hash")
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        this.waitTime = Timer.builder("password.hashing.wait")
+            .description("time a password hash waited in the queue")
+            .register(meterRegistry);
+        this.rejected = Counter.builder("password.hashing.rejected")
+            .description("hashes rejected because the queue was full")
+            .register(meterRegistry);
+        Gauge.builder("password.hashing.queue.depth", executor, pool -> pool.getQueue().size())
+            .register(meterRegistry);
+        Gauge.builder("password.hashing.active", executor, ThreadPoolExecutor::getActiveCount)
+            .register(meterRegistry);
+    }
+
+    public String hash(String password) {
+        return await(submit(password));
+    }
+
+    // Hashes a whole batch on the same threads as the signups. At most one hash per thread is submitted at a time,
+    // so the batch never takes the room the queue keeps for the signups.
+    public List<String> hashAll(List<String> passwords) {
+        List<String> hashes = new ArrayList<>(passwords.size());
+        for (int from = 0; from < passwords.size(); from += poolSize) {
+            List<Future<String>> chunk = new ArrayList<>(poolSize);
+            try {
+                for (String password : passwords.subList(from, Math.min(passwords.size(), from + poolSize))) {
+                    chunk.add(submit(password));
+                }
+                for (Future<String> hash : chunk) {
+                    hashes.add(await(hash));
+                }
+            } catch (RuntimeException e) {
+                chunk.forEach(hash -> hash.cancel(false));
+                throw e;
+            }
+        }
+        return hashes;
+    }
+
+    private Future<String> submit(String password) {
+        long submittedAt = System.nanoTime();
+        try {
+            return executor.submit(() -> {
+                waitTime.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                return hashTime.record(() -> passwordEncoder.encode(password));
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PasswordHashingUnavailableException("Too many signups at the moment, please retry later.");
+        }
+    }
+
+    private static String await(Future<String> hash) {
+        try {
+            return hash.get();
+        } catch (InterruptedException e) {
+            hash.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while hashing the password.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,27 @@
+package ro.unibuc.hello.service;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import reactor.core.publisher.Flux;
+import ro.unibuc.hello.model.Review;
+import ro.unibuc.hello.repository.reactive.ReactiveReviewRepository;
+
+// Non-blocking counterpart of the ReviewService listings, the writes stay on the blocking service
+@Service
+@Profile("reactive")
+public class ReactiveReviewService {
+    private final ReactiveReviewRepository reactiveReviewRepository;
+
+    public ReactiveReviewService(ReactiveReviewRepository reactiveReviewRepository) {
+        this.reactiveReviewRepository = reactiveReviewRepository;
+    }
+
+    public Flux<Review> getReviewsByRide(String id) {
+        return reactiveReviewRepository.findByRideId(id);
+    }
+
+    public Flux<Review> getReviewsByDriver(String id) {
+        return reactiveReviewRepository.findByReviewedId(id);
+    }
+}
@@ -0,0 +1,35 @@
+package ro.unibuc.hello.service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import reactor.core.publisher.Flux;
+import ro.unibuc.hello.model.Ride;
+import ro.unibuc.hello.repository.reactive.ReactiveRideRepository;
+
+// Non-blocking counterpart of the RideService listings, the writes stay on the blocking service
+@Service
+@Profile("reactive")
+public class ReactiveRideService {
+    private final ReactiveRideRepository reactiveRideRepository;
+
+    public ReactiveRideService(ReactiveRideRepository reactiveRideRepository) {
+        this.reactiveRideRepository = reactiveRideRepository;
+    }
+
+    public Flux<Ride> getAllRides() {
+        return reactiveRideRepository.findAll();
+    }
+
+    public Flux<Ride> getScheduledRidesByDate(Instant date) {
+        LocalDate localDate = date.atZone(ZoneOffset.UTC).toLocalDate();
+        Instant startOfDay = localDate.atStartOfDay(ZoneOffset.UTC).toInstant();
+        Instant endOfDay = localDate.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+
+        return reactiveRideRepository.findScheduledByDepartureDate(startOfDay, endOfDay);
+    }
+}
@@ -5,41 +5,143 @@ import java.time.LocalDate;
 import java.time.ZoneOffset;
 import java.util.List;
 import java.util.Optional;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.annotation.Observed;
+
 import ro.unibuc.hello.dto.review.ReviewRequestDTO;
 import ro.unibuc.hello.dto.review.ReviewResponseDTO;
 import ro.unibuc.hello.enums.RideStatus;
 import ro.unibuc.hello.enums.RideBookingStatus;
 import ro.unibuc.hello.model.Review;
 import ro.unibuc.hello.model.RideBooking;
-import ro.unibuc.hello.model.User;
 import ro.unibuc.hello.model.Ride;
+import ro.unibuc.hello.model.RideEligibility;
 import ro.unibuc.hello.repository.ReviewRepository;
 
 import ro.unibuc.hello.exceptions.review.InvalidReviewException;
 
 import ro.unibuc.hello.repository.RideRepository;
 import ro.unibuc.hello.repository.UserRepository;
-import ro.unibuc.hello.repository.RideBookingRepository;
+import ro.unibuc.hello.service.ValidationPipeline.Cost;
 
 @Service
+@Observed(name = "service.method")
 public class ReviewService {
     private final ReviewRepository reviewRepository;
     private final RideRepository rideRepository;
     private final UserRepository userRepository;
-    private final RideBookingRepository rideBookingRepository;
+    private final UserCache userCache;
+    private final ExecutorService lookupExecutor;
+    private final ValidationPipeline<ReviewCheck> createReviewRules;
 
     public ReviewService(ReviewRepository reviewRepository, 
                         RideRepository rideRepository, 
                         UserRepository userRepository,
-                        RideBookingRepository rideBookingRepository
+                        UserCache userCache,
+                        @Qualifier("lookupExecutor") ExecutorService lookupExecutor,
+                        MeterRegistry meterRegistry
                         ) {
         this.reviewRepository = reviewRepository;
         this.rideRepository = rideRepository;
         this.userRepository = userRepository;
-        this.rideBookingRepository = rideBookingRepository;
+        this.userCache = userCache;
+        this.lookupExecutor = lookupExecutor;
+        this.createReviewRules = createReviewRules(meterRegistry);
+    }
+
+    // A review request and its lookups. They do not depend on each other, so the first rule that needs one
+    // starts them all at once and the rules wait for them in order, keeping the same error for the same request.
+    // The ride, the reviewer's booking and their review are joined by a single aggregation, the users come from the cache.
+    private final class ReviewCheck {
+        private final ReviewRequestDTO request;
+        private Future<Boolean> reviewerExists;
+        private Future<Boolean> reviewedExists;
+        private Future<Optional<RideEligibility>> eligibility;
+
+        private ReviewCheck(ReviewRequestDTO request) {
+            this.request = request;
+        }
+
+        private void start() {
+            if (eligibility == null) {
+                reviewerExists = lookup(() -> userCache.existsById(request.getReviewerId()));
+                reviewedExists = lookup(() -> userCache.existsById(request.getReviewedId()));
+                eligibility = lookup(() -> rideRepository.findReviewEligibility(request.getRideId(), request.getReviewerId()));
+            }
+        }
+
+        private boolean reviewerExists() {
+            start();
+            return await(reviewerExists);
+        }
+
+        private boolean reviewedExists() {
+            start();
+            return await(reviewedExists);
+        }
+
+        private Optional<RideEligibility> eligibility() {
+            start();
+            return await(eligibility);
+        }
+
+        private RideEligibility found() {
+            return eligibility().get();
+        }
+
+        // the lookups a failed rule did not wait for, the running ones are not interrupted,
+        // the Mongo driver drops the connection of an interrupted thread
+        private void cancel() {
+            if (eligibility != null) {
+                reviewerExists.cancel(false);
+                reviewedExists.cancel(false);
+                eligibility.cancel(false);
+            }
+        }
+    }
+
+    // the checks of createReview, the rules after ride_exists rely on it; the IO rules keep the order of the
+    // original checks, a request failing several of them gets the same message as before
+    private ValidationPipeline<ReviewCheck> createReviewRules(MeterRegistry meterRegistry) {
+        return ValidationPipeline.<ReviewCheck>builder("review.create", meterRegistry)
+            .rule("reviewer_exists", Cost.CACHE,
+                ReviewCheck::reviewerExists,
+                () -> new InvalidReviewException("Reviewer does not exist as user."))
+            .rule("reviewed_exists", Cost.CACHE,
+                ReviewCheck::reviewedExists,
+                () -> new InvalidReviewException("Reviewed does not exist as user."))
+            .rule("reviewer_not_reviewed", Cost.MEMORY,
+                check -> !check.request.getReviewerId().equals(check.request.getReviewedId()),
+                () -> new InvalidReviewException("Reviewer can't also be reviewed."))
+            .rule("ride_exists", Cost.IO,
+                check -> check.eligibility().isPresent(),
+                () -> new InvalidReviewException("Ride does not exist."))
+            .rule("ride_completed", Cost.IO,
+                check -> check.found().getRide().getStatus().equals(RideStatus.COMPLETED),
+                () -> new InvalidReviewException("Ride is not completed."))
+            .rule("reviewer_is_passenger", Cost.IO,
+                check -> check.found().getBooking() != null,
+                () -> new InvalidReviewException("Reviewer is not a passenger."))
+            .rule("booking_not_cancelled", Cost.IO,
+                check -> !check.found().getBooking().getRideBookingStatus().equals(RideBookingStatus.CANCELLED),
+                () -> new InvalidReviewException("Reviewer cancelled ride."))
+            .rule("not_reviewed_yet", Cost.IO,
+                check -> !check.found().isReviewed(),
+                () -> new InvalidReviewException("Reviewer already made a review for this ride"))
+            .rule("reviewed_is_driver", Cost.IO,
+                check -> check.found().getRide().getDriverId().equals(check.request.getReviewedId()),
+                () -> new InvalidReviewException("Reviewed is not driver of ride"))
+            .build();
     }
 
     public void deleteAllReviews() {
@@ -59,74 +161,45 @@ public class ReviewService {
     }
 
     public ReviewResponseDTO createReview(ReviewRequestDTO reviewRequestDTO) {
-        // Check if reviewer exists in users table
-        if (!userRepository.existsById(reviewRequestDTO.getReviewerId())) {
-            throw new InvalidReviewException("Reviewer does not exist as user.");
-        }
-
-         // Check if reviewed exists in users table
-         if (!userRepository.existsById(reviewRequestDTO.getReviewedId())) {
-            throw new InvalidReviewException("Reviewed does not exist as user.");
+        ReviewCheck check = new ReviewCheck(reviewRequestDTO);
+        try {
+            createReviewRules.validate(check);
+        } finally {
+            check.cancel();
         }
 
-        // Check if reviewer is different from reviewed
-        if (reviewRequestDTO.getReviewerId().equals(reviewRequestDTO.getReviewedId())) {
-            throw new InvalidReviewException("Reviewer can't also be reviewed.");
-        }
-
-        Optional<Ride> rideOptional = rideRepository.findById(reviewRequestDTO.getRideId());
-        // Check if ride exists in rides table
-        if (rideOptional.isEmpty()) {
-            throw new InvalidReviewException("Ride does not exist.");
-        } 
-
-        Ride ride = rideOptional.get();
-        // Check if ride status is completed
-        if (!ride.getStatus().equals(RideStatus.COMPLETED)) {
-            throw new InvalidReviewException("Ride is not completed.");
-        }
-
-
-        RideBooking rideBooking = rideBookingRepository.findByRideIdAndPassengerId(
-            reviewRequestDTO.getRideId(), reviewRequestDTO.getReviewerId()
-            ).orElse(null);
-
-        // Check if reviewer is passenger
-        if (rideBooking == null) {
-            throw new InvalidReviewException("Reviewer is not a passenger.");
-        }
-
-        // Check if reviewer cancelled the ride
-        if (rideBooking.getRideBookingStatus().equals(RideBookingStatus.CANCELLED)) {
-            throw new InvalidReviewException("Reviewer cancelled ride.");
-        }
-
-        Optional<Review> existingReview = reviewRepository.findByRideIdAndReviewerId(
-            reviewRequestDTO.getRideId(), reviewRequestDTO.getReviewerId());
+        Review newReview = reviewRequestDTO.toEntity();
 
-        // Check if reviewer already reviewed ride
-        if (existingReview.isPresent()) {
+        // A concurrent review of the same ride is still caught by the unique (rideId, reviewerId) index
+        try {
+            reviewRepository.save(newReview);
+        } catch (DuplicateKeyException e) {
             throw new InvalidReviewException("Reviewer already made a review for this ride");
         }
 
-        
-        // Check if reviewed is driver of ride
-        if (!ride.getDriverId().equals(reviewRequestDTO.getReviewedId())) {
-            throw new InvalidReviewException("Reviewed is not driver of ride");
-        }
-
-        Review newReview = reviewRequestDTO.toEntity();
-        User reviewed = userRepository.findById(reviewRequestDTO.getReviewedId()).get();
-        
-        reviewed.setRatingsSum(reviewed.getRatingsSum() + reviewRequestDTO.getRating());
-        reviewed.setReviewsNumber(reviewed.getReviewsNumber() + 1);
+        userRepository.addRating(reviewRequestDTO.getReviewedId(), reviewRequestDTO.getRating());
+        userCache.invalidate(reviewRequestDTO.getReviewedId());
 
-        reviewed.setAvgRating((double) reviewed.getRatingsSum() / reviewed.getReviewsNumber());
+        return ReviewResponseDTO.toDTO(newReview);
 
-        reviewRepository.save(newReview);
-        userRepository.save(reviewed);
+    }
 
-        return ReviewResponseDTO.toDTO(newReview);
+    private <T> Future<T> lookup(Callable<T> query) {
+        return lookupExecutor.submit(query);
+    }
 
+    // the result of a lookup, its failure is rethrown as it would have been by a direct call
+    private static <T> T await(Future<T> lookup) {
+        try {
+            return lookup.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while validating the review.");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
     }
 }
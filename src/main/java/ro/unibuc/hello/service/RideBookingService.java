@@ -1,67 +1,132 @@
 package ro.unibuc.hello.service;
 
-import java.time.Instant;
-import java.time.LocalDate;
-import java.time.ZoneOffset;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.annotation.Observed;
+
 import ro.unibuc.hello.dto.rideBooking.RideBookingRequestDTO;
 import ro.unibuc.hello.dto.rideBooking.RideBookingResponseDTO;
 import ro.unibuc.hello.model.RideBooking;
-import ro.unibuc.hello.dto.ride.RideRequestDTO;
-import ro.unibuc.hello.dto.ride.RideResponseDTO;
 import ro.unibuc.hello.enums.RideStatus;
 import ro.unibuc.hello.exceptions.rideBooking.InvalidRideBookingException;
 import ro.unibuc.hello.exceptions.ride.InvalidRideException;
 import ro.unibuc.hello.model.Ride;
-import ro.unibuc.hello.model.User;
-import ro.unibuc.hello.repository.UserRepository;
+import ro.unibuc.hello.model.RideEligibility;
+import ro.unibuc.hello.model.UserView;
 import ro.unibuc.hello.repository.RideRepository;
-import ro.unibuc.hello.service.UserService;
 import ro.unibuc.hello.repository.RideBookingRepository;
 import ro.unibuc.hello.exception.EntityNotFoundException;
 import ro.unibuc.hello.enums.RideBookingStatus;
+import ro.unibuc.hello.service.ValidationPipeline.Cost;
 
 import java.time.Clock;
-import java.time.Instant;
 
 @Service
+@Observed(name = "service.method")
 public class RideBookingService {
     private final RideBookingRepository rideBookingRepository;
-    private final UserRepository userRepository;
+    private final UserCache userCache;
     private final RideRepository rideRepository;
-    private final UserService userService;
+    private final RideSearchIndex rideSearchIndex;
+    private final RideTemplateService rideTemplateService;
     private final Clock clock;
+    private final ValidationPipeline<BookingCheck> createRideBookingRules;
 
-    public RideBookingService(RideBookingRepository rideBookingRepository, UserRepository userRepository, RideRepository rideRepository, UserService userService, Clock clock)
+    public RideBookingService(RideBookingRepository rideBookingRepository, UserCache userCache, RideRepository rideRepository, RideSearchIndex rideSearchIndex, RideTemplateService rideTemplateService, Clock clock, MeterRegistry meterRegistry)
     {
         this.rideBookingRepository = rideBookingRepository;
-        this.userRepository = userRepository;
+        this.userCache = userCache;
         this.rideRepository = rideRepository;
-        this.userService = userService;
+        this.rideSearchIndex = rideSearchIndex;
+        this.rideTemplateService = rideTemplateService;
         this.clock = clock;
+        this.createRideBookingRules = createRideBookingRules(meterRegistry);
+    }
+
+    // a booking request and the ride it is for, the ride, the passenger's booking on it and their overlapping
+    // bookings are read by a single aggregation the first time a rule needs them
+    private final class BookingCheck {
+        private final RideBookingRequestDTO request;
+        private Optional<RideEligibility> eligibility;
+
+        private BookingCheck(RideBookingRequestDTO request) {
+            this.request = request;
+        }
+
+        private Optional<RideEligibility> eligibility() {
+            if (eligibility == null) {
+                eligibility = rideRepository.findBookingEligibility(request.getRideId(), request.getPassengerId());
+            }
+            return eligibility;
+        }
+
+        private Ride ride() {
+            return eligibility().get().getRide();
+        }
+    }
+
+    // the checks of createRideBooking, all but the passenger one are on the result of the aggregation,
+    // the rules after ride_exists rely on it
+    private ValidationPipeline<BookingCheck> createRideBookingRules(MeterRegistry meterRegistry) {
+        return ValidationPipeline.<BookingCheck>builder("booking.create", meterRegistry)
+            .rule("passenger_exists", Cost.CACHE,
+                check -> userCache.existsById(check.request.getPassengerId()),
+                () -> new InvalidRideBookingException("Passenger's id doesnt exist"))
+            .rule("ride_exists", Cost.IO,
+                check -> check.eligibility().isPresent(),
+                () -> new InvalidRideException("Ride ID does not exist."))
+            .rule("not_already_booked", Cost.IO,
+                check -> check.eligibility().get().getBooking() == null,
+                () -> new InvalidRideBookingException("Passenger already booked for this ride."))
+            .rule("passenger_free", Cost.IO,
+                check -> !check.eligibility().get().isOverlapping(),
+                () -> new InvalidRideBookingException("User involved in another ride at the same time."))
+            .rule("seats_available", Cost.IO,
+                check -> check.ride().getSeatsAvailable() >= 1,
+                () -> new InvalidRideBookingException("No more seats available"))
+            .rule("ride_scheduled", Cost.IO,
+                check -> check.ride().getStatus() == RideStatus.SCHEDULED,
+                () -> new InvalidRideBookingException("Ride is not scheduled"))
+            // its own query, so it runs last: the occurrences of the passenger's recurring rides are not all stored yet
+            .rule("passenger_free_of_templates", Cost.IO,
+                check -> rideTemplateService.findOverlappingTemplate(check.request.getPassengerId(),
+                    check.ride().getDepartureTime(), check.ride().getArrivalTime()).isEmpty(),
+                () -> new InvalidRideBookingException("User involved in another ride at the same time."))
+            .build();
     }
 
     public List<RideBookingResponseDTO> getPassengersByRideId(String rideId) {
 
         List<RideBooking> bookings = rideBookingRepository.findByRideId(rideId);
+
+        // Get all passengers at once, the ones not cached are loaded with a single query
+        Set<String> passengerIds = bookings.stream()
+            .map(RideBooking::getPassengerId)
+            .collect(Collectors.toSet());
+
+        Map<String, UserView> passengersById = userCache.findAllById(passengerIds);
         
         return bookings.stream()
             .map(booking -> {
-                // Get passenger information
-                User passenger = userRepository.findById(booking.getPassengerId())
-                .orElseThrow(() -> new EntityNotFoundException("User"));
+                UserView passenger = passengersById.get(booking.getPassengerId());
+                if (passenger == null) {
+                    throw new EntityNotFoundException("User");
+                }
                 
                 // Create response DTO
                 RideBookingResponseDTO responseDTO = RideBookingResponseDTO.toDTO(booking);
                 
                 // Set passenger full name
-                responseDTO.setPassengerFullName(passenger.getFirstName() + " " + passenger.getLastName());
+                responseDTO.setPassengerFullName(passenger.firstName() + " " + passenger.lastName());
                 
                 return responseDTO;
             })
@@ -71,57 +136,29 @@ public class RideBookingService {
     @Transactional
     public RideBookingResponseDTO createRideBooking (RideBookingRequestDTO rideBookingRequestDTO)
     {
-        //check if passenger id is in users collection
-        if(!userRepository.existsById(rideBookingRequestDTO.getPassengerId())){
-            throw new InvalidRideBookingException("Passenger's id doesnt exist");
-        }
-
-        //ride id has to exist
-        Ride ride = rideRepository.findById(rideBookingRequestDTO.getRideId())
-            .orElseThrow(() -> new InvalidRideException("Ride ID does not exist."));
+        createRideBookingRules.validate(new BookingCheck(rideBookingRequestDTO));
 
-        //passenger shouldnt have already booked
-        RideBooking existingBooking = rideBookingRepository.findByRideIdAndPassengerId(
-            ride.getId(), rideBookingRequestDTO.getPassengerId()
-            ).orElse(null);
+       //take the seat with one conditional update, the checks above only reject early on a snapshot
+       if (rideRepository.reserveSeat(rideBookingRequestDTO.getRideId()) == 0) {
+           throw new InvalidRideBookingException("No more seats available");
+       }
 
-        if (existingBooking != null) {
-            throw new InvalidRideBookingException("Passenger already booked for this ride.");
-        }
-            
-
-        //check if the passenger has a conflicting ride
-        List<RideBooking> bookingsInvolvedAsPassenger = rideBookingRepository
-                        .findByPassengerId(rideBookingRequestDTO.getPassengerId());
-
-        for (RideBooking booking : bookingsInvolvedAsPassenger) {
-            if (!rideRepository.findByIdAndTimeOverlap(
-                rideBookingRequestDTO.getRideId(),
-                ride.getDepartureTime(),
-                ride.getArrivalTime()
-            ).isEmpty()) {
-                throw new InvalidRideBookingException("User involved in another ride at the same time.");
-            }
-        }
-
-        //available seats >0
-        if(ride.getSeatsAvailable() < 1) {
-            throw new InvalidRideBookingException("No more seats available");
-        }
-
-        //ride has to be scheduled
-
-        if(ride.getStatus() != RideStatus.SCHEDULED)
-        {
-            throw new InvalidRideBookingException("Ride is not scheduled");
-        }
+       rideSearchIndex.adjustSeats(rideBookingRequestDTO.getRideId(), -1);
 
        RideBooking newRideBooking = rideBookingRequestDTO.toEntity();
 
-       rideBookingRepository.save(newRideBooking);
-
-       ride.setSeatsAvailable(ride.getSeatsAvailable() - 1);
-       rideRepository.save(ride);
+       try {
+           rideBookingRepository.save(newRideBooking);
+       } catch (RuntimeException e) {
+           //booking was not stored, give the seat back
+           rideRepository.releaseSeat(rideBookingRequestDTO.getRideId());
+           rideSearchIndex.adjustSeats(rideBookingRequestDTO.getRideId(), 1);
+           //a concurrent request of the same passenger passed the checks too, same answer as the check
+           if (e instanceof DuplicateKeyException) {
+               throw new InvalidRideBookingException("Passenger already booked for this ride.");
+           }
+           throw e;
+       }
 
        return RideBookingResponseDTO.toDTO(newRideBooking);
     }
@@ -147,12 +184,16 @@ public class RideBookingService {
             throw new InvalidRideBookingException("Ride cannot be cancelled after it started.");
         }
     
+        // only the request that flips the booking gives its seat back, a concurrent cancel finds it cancelled
+        if (rideBookingRepository.cancel(rideBooking.getId()) == 0) {
+            throw new InvalidRideBookingException("Ride already cancelled.");
+        }
         rideBooking.setRideBookingStatus(RideBookingStatus.CANCELLED);
 
-        ride.setSeatsAvailable(ride.getSeatsAvailable() + 1);
-        rideRepository.save(ride);
+        rideRepository.releaseSeat(rideId);
+        rideSearchIndex.adjustSeats(rideId, 1);
         
-        return RideBookingResponseDTO.toDTO(rideBookingRepository.save(rideBooking));
+        return RideBookingResponseDTO.toDTO(rideBooking);
     }
     
     
@@ -0,0 +1,260 @@
+package ro.unibuc.hello.service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import ro.unibuc.hello.enums.RideStatus;
+import ro.unibuc.hello.model.Ride;
+import ro.unibuc.hello.repository.RideRepository;
+
+// In-process index of the scheduled rides from today on, bucketed by departure day and by route.
+// Writes go to Mongo first and are then applied here, a periodic reload picks up writes made by other nodes.
+// The rides written while a reload streams the collection are read again before the new snapshot replaces the old one,
+// the stream may have read them before or after the write.
+@Component
+public class RideSearchIndex {
+    private final RideRepository rideRepository;
+    private final Clock clock;
+    private final boolean enabled;
+
+    private volatile Snapshot snapshot = new Snapshot();
+    private volatile boolean loaded = false;
+    // ids of the rides written while a reload runs, null when none runs
+    private volatile Set<String> written;
+
+    // a lock instead of synchronized, a virtual thread blocked on Mongo inside synchronized pins its carrier
+    private final ReentrantLock reloadLock = new ReentrantLock();
+
+    public RideSearchIndex(RideRepository rideRepository,
+                           Clock clock,
+                           @Value("${rides.search-index.enabled:true}") boolean enabled) {
+        this.rideRepository = rideRepository;
+        this.clock = clock;
+        this.enabled = enabled;
+    }
+
+    // true if searches for this day can be answered without Mongo
+    public boolean covers(LocalDate day) {
+        return enabled && loaded && !day.isBefore(today());
+    }
+
+    public List<Ride> findByDate(LocalDate day) {
+        return copies(snapshot.byDay.get(day));
+    }
+
+    public List<Ride> findByRoute(LocalDate day, String startLocation, String endLocation) {
+        return copies(snapshot.byRoute.get(new RouteKey(day, startLocation, endLocation)));
+    }
+
+    // indexes the ride if it is scheduled and departs today or later, drops it otherwise
+    public void put(Ride ride) {
+        if (!enabled || ride.getId() == null) {
+            return;
+        }
+        replace(snapshot, ride.getId(), ride);
+        written(ride.getId());
+    }
+
+    public void remove(String rideId) {
+        if (enabled) {
+            snapshot.remove(rideId);
+            written(rideId);
+        }
+    }
+
+    // follows the atomic seat updates made on the rides collection
+    public void adjustSeats(String rideId, int delta) {
+        if (!enabled) {
+            return;
+        }
+        Entry entry = snapshot.byId.get(rideId);
+        if (entry != null) {
+            entry.seatsAvailable.addAndGet(delta);
+        }
+        written(rideId);
+    }
+
+    private void written(String rideId) {
+        Set<String> reloading = written;
+        if (reloading != null) {
+            reloading.add(rideId);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${rides.search-index.refresh-interval:5m}",
+               initialDelayString = "${rides.search-index.refresh-interval:5m}")
+    public void reload() {
+        if (!enabled) {
+            return;
+        }
+        reloadLock.lock();
+        try {
+            rebuild();
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    private void rebuild() {
+        Set<String> reloading = ConcurrentHashMap.newKeySet();
+        written = reloading;
+        Snapshot fresh = new Snapshot();
+        try {
+            Instant startOfToday = today().atStartOfDay(ZoneOffset.UTC).toInstant();
+            try (Stream<Ride> rides = rideRepository.streamScheduledDepartingFrom(startOfToday)) {
+                rides.forEach(fresh::add);
+            }
+            refresh(fresh, reloading);
+            snapshot = fresh;
+            loaded = true;
+        } finally {
+            written = null;
+        }
+        // the writes made between the last refresh and the swap only reached the old snapshot
+        refresh(fresh, reloading);
+    }
+
+    // reads the written rides again until no more are written meanwhile
+    private void refresh(Snapshot target, Set<String> reloading) {
+        while (!reloading.isEmpty()) {
+            Set<String> ids = new HashSet<>(reloading);
+            reloading.removeAll(ids);
+            Map<String, Ride> rides = new HashMap<>();
+            rideRepository.findAllById(ids).forEach(ride -> rides.put(ride.getId(), ride));
+            ids.forEach(id -> replace(target, id, rides.get(id)));
+        }
+    }
+
+    // the ride takes the place of the indexed one if it is still searchable, a null one was deleted
+    private void replace(Snapshot target, String rideId, Ride ride) {
+        target.remove(rideId);
+        if (ride != null && ride.getStatus() == RideStatus.SCHEDULED && !dayOf(ride.getDepartureTime()).isBefore(today())) {
+            target.add(ride);
+        }
+    }
+
+    @Scheduled(cron = "${rides.search-index.evict-cron:0 5 0 * * *}", zone = "UTC")
+    public void evictPastDays() {
+        if (!enabled) {
+            return;
+        }
+        LocalDate today = today();
+        Snapshot current = snapshot;
+        current.byDay.keySet().stream()
+            .filter(day -> day.isBefore(today))
+            .forEach(day -> current.byDay.remove(day).values().forEach(entry -> current.remove(entry.ride.getId())));
+        current.byRoute.keySet().removeIf(route -> route.day().isBefore(today));
+    }
+
+    private LocalDate today() {
+        return dayOf(clock.instant());
+    }
+
+    private static LocalDate dayOf(Instant instant) {
+        return instant.atZone(ZoneOffset.UTC).toLocalDate();
+    }
+
+    private static List<Ride> copies(Map<RideKey, Entry> bucket) {
+        if (bucket == null) {
+            return List.of();
+        }
+        Collection<Entry> entries = bucket.values();
+        List<Ride> result = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            result.add(entry.toRide());
+        }
+        return result;
+    }
+
+    private record RouteKey(LocalDate day, String startLocation, String endLocation) {}
+
+    // orders a bucket by departure time, the id keeps rides leaving at the same time apart
+    private record RideKey(Instant departureTime, String id) implements Comparable<RideKey> {
+        @Override
+        public int compareTo(RideKey other) {
+            int byTime = departureTime.compareTo(other.departureTime);
+            return byTime != 0 ? byTime : id.compareTo(other.id);
+        }
+    }
+
+    // a ride shared by all the buckets it is in, only the seat count changes after it is indexed
+    private static final class Entry {
+        private final Ride ride;
+        private final AtomicInteger seatsAvailable;
+
+        Entry(Ride ride) {
+            this.ride = copyOf(ride, ride.getSeatsAvailable());
+            this.seatsAvailable = new AtomicInteger(ride.getSeatsAvailable());
+        }
+
+        Ride toRide() {
+            return copyOf(ride, seatsAvailable.get());
+        }
+
+        private static Ride copyOf(Ride ride, int seatsAvailable) {
+            Ride copy = new Ride(ride.getDriverId(), ride.getStartLocation(), ride.getEndLocation(),
+                    ride.getDepartureTime(), ride.getArrivalTime(), ride.getSeatPrice(),
+                    seatsAvailable, ride.getCarLicensePlate());
+            copy.setId(ride.getId());
+            copy.setStatus(ride.getStatus());
+            copy.setTemplateId(ride.getTemplateId());
+            return copy;
+        }
+    }
+
+    private static final class Snapshot {
+        private final Map<String, Entry> byId = new ConcurrentHashMap<>();
+        private final Map<LocalDate, ConcurrentSkipListMap<RideKey, Entry>> byDay = new ConcurrentHashMap<>();
+        private final Map<RouteKey, ConcurrentSkipListMap<RideKey, Entry>> byRoute = new ConcurrentHashMap<>();
+
+        void add(Ride ride) {
+            Entry entry = new Entry(ride);
+            RideKey key = new RideKey(ride.getDepartureTime(), ride.getId());
+            LocalDate day = dayOf(ride.getDepartureTime());
+            byId.put(ride.getId(), entry);
+            byDay.computeIfAbsent(day, d -> new ConcurrentSkipListMap<>()).put(key, entry);
+            byRoute.computeIfAbsent(new RouteKey(day, ride.getStartLocation(), ride.getEndLocation()),
+                    r -> new ConcurrentSkipListMap<>()).put(key, entry);
+        }
+
+        void remove(String rideId) {
+            Entry entry = byId.remove(rideId);
+            if (entry == null) {
+                return;
+            }
+            Ride ride = entry.ride;
+            RideKey key = new RideKey(ride.getDepartureTime(), ride.getId());
+            LocalDate day = dayOf(ride.getDepartureTime());
+            removeFrom(byDay, day, key);
+            removeFrom(byRoute, new RouteKey(day, ride.getStartLocation(), ride.getEndLocation()), key);
+        }
+
+        private static <K> void removeFrom(Map<K, ConcurrentSkipListMap<RideKey, Entry>> buckets, K bucketKey, RideKey key) {
+            ConcurrentSkipListMap<RideKey, Entry> bucket = buckets.get(bucketKey);
+            if (bucket != null) {
+                bucket.remove(key);
+            }
+        }
+    }
+}
@@ -3,110 +3,277 @@ package ro.unibuc.hello.service;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.annotation.Observed;
+
+import ro.unibuc.hello.dto.page.PageResponseDTO;
+import ro.unibuc.hello.dto.ride.RideBatchResultDTO;
 import ro.unibuc.hello.dto.ride.RideRequestDTO;
 import ro.unibuc.hello.dto.ride.RideResponseDTO;
+import ro.unibuc.hello.enums.RideBookingStatus;
 import ro.unibuc.hello.enums.RideStatus;
 import ro.unibuc.hello.exceptions.ride.InvalidRideException;
 import ro.unibuc.hello.exceptions.ride.RideConflictException;
 import ro.unibuc.hello.exceptions.rideBooking.InvalidRideBookingException;
+import ro.unibuc.hello.model.BookedRide;
 import ro.unibuc.hello.model.Ride;
 import ro.unibuc.hello.model.RideBooking;
+import ro.unibuc.hello.model.RideTemplate;
 import ro.unibuc.hello.model.Vehicle;
 import ro.unibuc.hello.repository.RideRepository;
-import ro.unibuc.hello.repository.UserRepository;
 import ro.unibuc.hello.repository.VehicleRepository;
 import ro.unibuc.hello.repository.RideBookingRepository;
+import ro.unibuc.hello.service.ValidationPipeline.Cost;
 
 @Service
+@Observed(name = "service.method")
 public class RideService {
+    public static final int MAX_BATCH_SIZE = 500;
+
     private final RideRepository rideRepository;
-    private final UserRepository userRepository;
+    private final UserCache userCache;
     private final VehicleRepository vehicleRepository;
     private final RideBookingRepository rideBookingRepository;
     private final RideBookingService rideBookingService;
+    private final RideSearchIndex rideSearchIndex;
+    private final RideTemplateService rideTemplateService;
+    private final ValidationPipeline<RideRequestDTO> createRideRules;
 
     public RideService(RideRepository rideRepository, 
-                        UserRepository userRepository,
+                        UserCache userCache,
                         VehicleRepository vehicleRepository,
                         RideBookingRepository rideBookingRepository,
-                        RideBookingService rideBookingService
+                        RideBookingService rideBookingService,
+                        RideSearchIndex rideSearchIndex,
+                        RideTemplateService rideTemplateService,
+                        MeterRegistry meterRegistry
                         ) {
         this.rideRepository = rideRepository;
-        this.userRepository = userRepository;
+        this.userCache = userCache;
         this.vehicleRepository = vehicleRepository;
         this.rideBookingRepository = rideBookingRepository;
         this.rideBookingService = rideBookingService;
-        
+        this.rideSearchIndex = rideSearchIndex;
+        this.rideTemplateService = rideTemplateService;
+        this.createRideRules = createRideRules(meterRegistry);
+    }
+
+    // the checks of createRide, the ones on the request alone run before any lookup
+    private ValidationPipeline<RideRequestDTO> createRideRules(MeterRegistry meterRegistry) {
+        return ValidationPipeline.<RideRequestDTO>builder("ride.create", meterRegistry)
+            .rule("driver_exists", Cost.CACHE,
+                request -> userCache.existsById(request.getDriverId()),
+                () -> new InvalidRideException("Driver does not exist as user."))
+            .rule("departure_in_future", Cost.MEMORY,
+                request -> !request.getDepartureTime().isBefore(Instant.now()),
+                () -> new InvalidRideException("Departure time must be in the future."))
+            .rule("distinct_locations", Cost.MEMORY,
+                request -> !request.getStartLocation().equals(request.getEndLocation()),
+                () -> new InvalidRideException("Start location has to be different from end location"))
+            .rule("seats_available", Cost.MEMORY,
+                request -> request.getSeatsAvailable() >= 1,
+                () -> new InvalidRideException("Number of seats has to be greater than 0."))
+            .rule("price_not_negative", Cost.MEMORY,
+                request -> request.getSeatPrice() >= 0,
+                () -> new InvalidRideException("Price has to be greater or equal to 0."))
+            .rule("vehicle_exists", Cost.IO,
+                request -> vehicleRepository.existsByLicensePlate(request.getCarLicensePlate()),
+                () -> new InvalidRideException("Vehicle does not exist in the system."))
+            .rule("driver_free_as_driver", Cost.IO,
+                request -> rideRepository.findByDriverIdAndTimeOverlap(
+                    request.getDriverId(), request.getDepartureTime(), request.getArrivalTime()).isEmpty(),
+                () -> new RideConflictException("Driver involved in another ride."))
+            .rule("driver_free_as_passenger", Cost.IO,
+                request -> rideBookingRepository.findFirstOverlappingRideForPassenger(
+                    request.getDriverId(), request.getDepartureTime(), request.getArrivalTime()).isEmpty(),
+                () -> new InvalidRideBookingException("Driver involved in another ride at the same time as passenger."))
+            // a recurring ride with an occurrence overlapping this one, stored or not
+            .rule("driver_free_in_templates", Cost.IO,
+                request -> rideTemplateService.findOverlappingTemplate(
+                    request.getDriverId(), request.getDepartureTime(), request.getArrivalTime()).isEmpty(),
+                () -> new RideConflictException("Driver involved in another ride."))
+            .build();
     }
 
     public List<Ride> getAllRides() {
         return rideRepository.findAll();
     }
 
+    public Stream<Ride> streamAllRides() {
+        return rideRepository.streamAllBy();
+    }
+
+    public PageResponseDTO<Ride> getRidesPage(String cursor, Integer limit) {
+        int pageSize = PageResponseDTO.clampPageSize(limit);
+
+        // fetch one extra element to know if there is a next page
+        List<Ride> rides = cursor == null
+            ? rideRepository.findByOrderByIdAsc(Limit.of(pageSize + 1))
+            : rideRepository.findByIdGreaterThanOrderByIdAsc(PageResponseDTO.decodeCursor(cursor), Limit.of(pageSize + 1));
+
+        return PageResponseDTO.of(rides, pageSize, Ride::getId);
+    }
+
     public RideResponseDTO createRide(RideRequestDTO rideRequestDTO) {
-        // Check if driver exists in users table
-        if (!userRepository.existsById(rideRequestDTO.getDriverId())) {
-            throw new InvalidRideException("Driver does not exist as user.");
-        } 
-        
-        // Check if departure time is in the future
-        if (rideRequestDTO.getDepartureTime().isBefore(Instant.now())) {
-            throw new InvalidRideException("Departure time must be in the future.");
-        }
+        createRideRules.validate(rideRequestDTO);
 
-        // Check if start location differs from end location
-        if (rideRequestDTO.getStartLocation().equals(rideRequestDTO.getEndLocation())) {
-            throw new InvalidRideException("Start location has to be different from end location");
-        }
+        Ride newRide = rideRequestDTO.toEntity();
 
-        // Check if the number of available seats is > 0
-        if (rideRequestDTO.getSeatsAvailable() < 1) {
-            throw new InvalidRideException("Number of seats has to be greater than 0.");
-        }
+        rideRepository.save(newRide);
+        rideSearchIndex.put(newRide);
 
-        // Check if the price is >= 0
-        if (rideRequestDTO.getSeatPrice() < 0) {
-            throw new InvalidRideException("Price has to be greater or equal to 0.");
+        return RideResponseDTO.toDTO(newRide);
+
+    }
+
+    // Creates the valid rides of a batch and reports the others, each with the error createRide would give it.
+    // The checks read everything with one query per kind: the drivers, the plates, the stored rides of the drivers,
+    // their bookings as passengers and their recurring rides, all over the interval the batch spans.
+    // The rides of a driver inside the batch are checked against each other, the valid ones are inserted together.
+    public List<RideBatchResultDTO> createRides(List<RideRequestDTO> requests) {
+        if (requests.size() > MAX_BATCH_SIZE) {
+            throw new InvalidRideException("At most " + MAX_BATCH_SIZE + " rides can be created at once.");
         }
 
-        // Check if vehicle is stored in vehicles table
-        if (!vehicleRepository.existsByLicensePlate(rideRequestDTO.getCarLicensePlate())) {
-            throw new InvalidRideException("Vehicle does not exist in the system.");
-        } 
-        
-        // Check if driver it's involved in other ride as driver that's overlapping current
-        if(!rideRepository.findByDriverIdAndTimeOverlap(
-                    rideRequestDTO.getDriverId(), 
-                    rideRequestDTO.getDepartureTime(),
-                    rideRequestDTO.getArrivalTime()
-                ).isEmpty()) {
-            throw new RideConflictException("Driver involved in another ride.");
+        RideBatchResultDTO[] results = new RideBatchResultDTO[requests.size()];
+        List<Integer> complete = new ArrayList<>();
+        for (int index = 0; index < requests.size(); index++) {
+            RideRequestDTO request = requests.get(index);
+            if (request == null || request.getDriverId() == null || request.getStartLocation() == null
+                    || request.getEndLocation() == null || request.getDepartureTime() == null
+                    || request.getArrivalTime() == null || request.getCarLicensePlate() == null) {
+                results[index] = RideBatchResultDTO.rejected(index, HttpStatus.BAD_REQUEST,
+                    "Driver, locations, departure time, arrival time and license plate are mandatory.");
+            } else {
+                complete.add(index);
+            }
         }
 
-        // Check if driver it's involved in other ride as passenger that's overlapping current
-        List<RideBooking> bookingsInvolvedAsPassenger = rideBookingRepository
-                        .findByPassengerId(rideRequestDTO.getDriverId());
+        List<Ride> newRides = new ArrayList<>();
+        List<Integer> newRideIndexes = new ArrayList<>();
+        if (!complete.isEmpty()) {
+            BatchLookups lookups = batchLookups(complete.stream().map(requests::get).toList());
+            Map<String, List<RideRequestDTO>> acceptedByDriver = new HashMap<>();
+            Instant now = Instant.now();
 
-        for (RideBooking booking : bookingsInvolvedAsPassenger) {
-            if (!rideRepository.findByIdAndTimeOverlap(
-                booking.getRideId(),
-                rideRequestDTO.getDepartureTime(),
-                rideRequestDTO.getArrivalTime()
-            ).isEmpty()) {
-                throw new InvalidRideBookingException("Driver involved in another ride at the same time as passenger.");
+            for (int index : complete) {
+                RideRequestDTO request = requests.get(index);
+                try {
+                    checkBatchRide(request, lookups, acceptedByDriver, now);
+                    acceptedByDriver.computeIfAbsent(request.getDriverId(), driverId -> new ArrayList<>()).add(request);
+                    newRides.add(request.toEntity());
+                    newRideIndexes.add(index);
+                } catch (RideConflictException e) {
+                    results[index] = RideBatchResultDTO.rejected(index, HttpStatus.CONFLICT, e.getMessage());
+                } catch (InvalidRideException | InvalidRideBookingException e) {
+                    results[index] = RideBatchResultDTO.rejected(index, HttpStatus.BAD_REQUEST, e.getMessage());
+                }
             }
         }
 
-        Ride newRide = rideRequestDTO.toEntity();
+        if (!newRides.isEmpty()) {
+            // a single insertMany for the whole batch
+            List<Ride> inserted = rideRepository.insert(newRides);
+            for (int position = 0; position < inserted.size(); position++) {
+                Ride ride = inserted.get(position);
+                rideSearchIndex.put(ride);
+                results[newRideIndexes.get(position)] = RideBatchResultDTO.created(newRideIndexes.get(position), ride);
+            }
+        }
 
-        rideRepository.save(newRide);
+        return Arrays.asList(results);
+    }
 
-        return RideResponseDTO.toDTO(newRide);
+    private record BatchLookups(Set<String> drivers,
+                                Set<String> licensePlates,
+                                Map<String, List<Ride>> ridesByDriver,
+                                Map<String, List<BookedRide>> bookedRidesByPassenger,
+                                Map<String, List<RideTemplate>> templatesByDriver) {}
+
+    private BatchLookups batchLookups(List<RideRequestDTO> requests) {
+        Set<String> driverIds = requests.stream().map(RideRequestDTO::getDriverId).collect(Collectors.toSet());
+        Instant from = requests.stream().map(RideRequestDTO::getDepartureTime).min(Instant::compareTo).get();
+        Instant to = requests.stream().map(RideRequestDTO::getArrivalTime).max(Instant::compareTo).get();
+
+        Set<String> drivers = userCache.findAllById(driverIds).keySet();
+
+        Set<String> plates = requests.stream().map(RideRequestDTO::getCarLicensePlate).collect(Collectors.toSet());
+        Set<String> licensePlates = vehicleRepository.findLicensePlatesIn(plates).stream()
+            .map(Vehicle::getLicensePlate)
+            .collect(Collectors.toSet());
+
+        // superset of the conflicts, each ride is matched against its own interval below
+        Map<String, List<Ride>> ridesByDriver = rideRepository.findByDriverIdInAndTimeOverlap(driverIds, from, to).stream()
+            .collect(Collectors.groupingBy(Ride::getDriverId));
+        Map<String, List<BookedRide>> bookedRidesByPassenger = rideBookingRepository
+            .findOverlappingBookedRidesForPassengers(driverIds, from, to).stream()
+            .collect(Collectors.groupingBy(BookedRide::getPassengerId));
+        Map<String, List<RideTemplate>> templatesByDriver = rideTemplateService.findTemplatesByDrivers(driverIds);
 
+        return new BatchLookups(drivers, licensePlates, ridesByDriver, bookedRidesByPassenger, templatesByDriver);
+    }
+
+    // the checks of createRide in the same order, against the batch lookups
+    private static void checkBatchRide(RideRequestDTO request, BatchLookups lookups,
+                                       Map<String, List<RideRequestDTO>> acceptedByDriver, Instant now) {
+        String driverId = request.getDriverId();
+        Instant departureTime = request.getDepartureTime();
+        Instant arrivalTime = request.getArrivalTime();
+
+        // same order as the createRide rules, the checks on the request alone first
+        if (departureTime.isBefore(now)) {
+            throw new InvalidRideException("Departure time must be in the future.");
+        }
+        if (request.getStartLocation().equals(request.getEndLocation())) {
+            throw new InvalidRideException("Start location has to be different from end location");
+        }
+        if (request.getSeatsAvailable() < 1) {
+            throw new InvalidRideException("Number of seats has to be greater than 0.");
+        }
+        if (request.getSeatPrice() < 0) {
+            throw new InvalidRideException("Price has to be greater or equal to 0.");
+        }
+        if (!lookups.drivers().contains(driverId)) {
+            throw new InvalidRideException("Driver does not exist as user.");
+        }
+        if (!lookups.licensePlates().contains(request.getCarLicensePlate())) {
+            throw new InvalidRideException("Vehicle does not exist in the system.");
+        }
+        if (lookups.ridesByDriver().getOrDefault(driverId, List.of()).stream()
+                .anyMatch(ride -> overlaps(ride.getDepartureTime(), ride.getArrivalTime(), departureTime, arrivalTime))) {
+            throw new RideConflictException("Driver involved in another ride.");
+        }
+        if (lookups.bookedRidesByPassenger().getOrDefault(driverId, List.of()).stream()
+                .anyMatch(ride -> overlaps(ride.getDepartureTime(), ride.getArrivalTime(), departureTime, arrivalTime))) {
+            throw new InvalidRideBookingException("Driver involved in another ride at the same time as passenger.");
+        }
+        if (lookups.templatesByDriver().getOrDefault(driverId, List.of()).stream()
+                .anyMatch(template -> template.overlaps(departureTime, arrivalTime))) {
+            throw new RideConflictException("Driver involved in another ride.");
+        }
+        // against the rides of the same driver accepted earlier in the batch
+        if (acceptedByDriver.getOrDefault(driverId, List.of()).stream()
+                .anyMatch(other -> overlaps(other.getDepartureTime(), other.getArrivalTime(), departureTime, arrivalTime))) {
+            throw new RideConflictException("Driver involved in another ride.");
+        }
+    }
+
+    // ends included, like the overlap queries
+    private static boolean overlaps(Instant departureTime, Instant arrivalTime, Instant from, Instant to) {
+        return !departureTime.isAfter(to) && !arrivalTime.isBefore(from);
     }
 
     public List<Ride> getRidesByDate(Instant date) {
@@ -118,6 +285,38 @@ public class RideService {
         return rideRepository.findAllByDepartureDate(startOfDay, endOfDay);
     }
 
+    public List<Ride> getScheduledRidesByDate(Instant date) {
+        LocalDate localDate = date.atZone(ZoneOffset.UTC).toLocalDate();
+        // the recurring rides of the coming days are stored ahead, the ones of a day further ahead are stored first
+        if (!rideTemplateService.isMaterialized(localDate)) {
+            rideTemplateService.materialize(localDate);
+        }
+
+        if (rideSearchIndex.covers(localDate)) {
+            return rideSearchIndex.findByDate(localDate);
+        }
+
+        return getRidesByDate(date).stream()
+            .filter(ride -> ride.getStatus() == RideStatus.SCHEDULED)
+            .collect(Collectors.toList());
+    }
+
+    public List<Ride> searchRides(Instant date, String startLocation, String endLocation) {
+        LocalDate localDate = date.atZone(ZoneOffset.UTC).toLocalDate();
+        if (!rideTemplateService.isMaterialized(localDate)) {
+            rideTemplateService.materialize(localDate, startLocation, endLocation);
+        }
+
+        if (rideSearchIndex.covers(localDate)) {
+            return rideSearchIndex.findByRoute(localDate, startLocation, endLocation);
+        }
+
+        Instant startOfDay = localDate.atStartOfDay(ZoneOffset.UTC).toInstant();
+        Instant endOfDay = localDate.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+
+        return rideRepository.findScheduledByDepartureDateAndRoute(startOfDay, endOfDay, startLocation, endLocation);
+    }
+
     public RideResponseDTO updateRideStatusToInProgress(String rideId) {
         Ride ride = rideRepository.findById(rideId)
                 .orElseThrow(() -> new InvalidRideException("Ride not found."));
@@ -130,8 +329,8 @@ public class RideService {
             throw new InvalidRideException("Ride cannot be started before the departure time.");
         }
         
-        ride.setStatus(RideStatus.IN_PROGRESS);
-        return RideResponseDTO.toDTO(rideRepository.save(ride));
+        return RideResponseDTO.toDTO(changeStatus(rideId, RideStatus.SCHEDULED, RideStatus.IN_PROGRESS,
+            "Ride status must be SCHEDULED to start the ride."));
     }
 
     public RideResponseDTO updateRideStatusToCompleted(String rideId, String currentLocation) {
@@ -146,8 +345,8 @@ public class RideService {
             throw new InvalidRideException("Ride cannot be completed unless the location matches the destination.");
         }
         
-        ride.setStatus(RideStatus.COMPLETED);
-        return RideResponseDTO.toDTO(rideRepository.save(ride));
+        return RideResponseDTO.toDTO(changeStatus(rideId, RideStatus.IN_PROGRESS, RideStatus.COMPLETED,
+            "Ride must be IN_PROGRESS to be completed."));
     }
 
     public RideResponseDTO updateRideStatusToCancelled(String rideId) {
@@ -162,14 +361,37 @@ public class RideService {
             throw new InvalidRideException("Ride cannot be canceled after departure time.");
         }
         
+        // cancelled first, no seat can be reserved on it any more while its bookings are cancelled
+        changeStatus(rideId, RideStatus.SCHEDULED, RideStatus.CANCELLED, "Only SCHEDULED rides can be canceled.");
+
         List<RideBooking> bookings = rideBookingRepository.findByRideId(rideId);
         for (RideBooking booking : bookings) {
-            rideBookingService.updateRideBookingStatusToCancelled(rideId, booking.getPassengerId());
+            if (booking.getRideBookingStatus() != RideBookingStatus.BOOKED) {
+                continue;
+            }
+            try {
+                rideBookingService.updateRideBookingStatusToCancelled(rideId, booking.getPassengerId());
+            } catch (InvalidRideBookingException e) {
+                // cancelled by the passenger meanwhile, the seat was given back by that cancel
+            }
         }
 
-        ride.setStatus(RideStatus.CANCELLED);
-        rideBookingRepository.saveAll(bookings);
+        // read again, the seats were given back by the booking cancels
+        return RideResponseDTO.toDTO(findRide(rideId));
+    }
 
-        return RideResponseDTO.toDTO(rideRepository.save(ride));
+    // only the status is written, the seats are changed by the bookings with their own conditional updates
+    // and saving the whole ride read earlier would undo them
+    private Ride changeStatus(String rideId, RideStatus expected, RideStatus status, String conflictMessage) {
+        if (rideRepository.updateStatus(rideId, expected, status) == 0) {
+            throw new InvalidRideException(conflictMessage);
+        }
+        rideSearchIndex.remove(rideId);
+        return findRide(rideId);
+    }
+
+    private Ride findRide(String rideId) {
+        return rideRepository.findById(rideId)
+                .orElseThrow(() -> new InvalidRideException("Ride not found."));
     }
 }
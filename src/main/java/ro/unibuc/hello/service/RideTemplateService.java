@@ -0,0 +1,267 @@
+package ro.unibuc.hello.service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import ro.unibuc.hello.dto.ride.RideTemplateRequestDTO;
+import ro.unibuc.hello.exceptions.ride.InvalidRideException;
+import ro.unibuc.hello.exceptions.ride.RideConflictException;
+import ro.unibuc.hello.exceptions.rideBooking.InvalidRideBookingException;
+import ro.unibuc.hello.model.Ride;
+import ro.unibuc.hello.model.RideTemplate;
+import ro.unibuc.hello.model.RideTemplate.Occurrence;
+import ro.unibuc.hello.repository.RideBookingRepository;
+import ro.unibuc.hello.repository.RideRepository;
+import ro.unibuc.hello.repository.RideTemplateRepository;
+import ro.unibuc.hello.repository.VehicleRepository;
+
+// Recurring rides. A template is validated once, against its whole schedule. Its occurrences of the next
+// rides.templates.materialize-days are stored as rides ahead of time, when it is created and by a daily job, so the
+// searches of those days read the rides alone. A search further ahead or a booking stores the occurrences it reaches.
+// The unique (templateId, departureTime) index keeps a single ride per occurrence when two nodes store it at once.
+@Service
+public class RideTemplateService {
+    private final RideTemplateRepository rideTemplateRepository;
+    private final RideRepository rideRepository;
+    private final RideBookingRepository rideBookingRepository;
+    private final VehicleRepository vehicleRepository;
+    private final UserCache userCache;
+    private final RideSearchIndex rideSearchIndex;
+    private final Clock clock;
+    private final int maxWeeks;
+    private final int materializeDays;
+
+    public RideTemplateService(RideTemplateRepository rideTemplateRepository,
+                               RideRepository rideRepository,
+                               RideBookingRepository rideBookingRepository,
+                               VehicleRepository vehicleRepository,
+                               UserCache userCache,
+                               RideSearchIndex rideSearchIndex,
+                               Clock clock,
+                               @Value("${rides.templates.max-weeks:52}") int maxWeeks,
+                               @Value("${rides.templates.materialize-days:14}") int materializeDays) {
+        this.rideTemplateRepository = rideTemplateRepository;
+        this.rideRepository = rideRepository;
+        this.rideBookingRepository = rideBookingRepository;
+        this.vehicleRepository = vehicleRepository;
+        this.userCache = userCache;
+        this.rideSearchIndex = rideSearchIndex;
+        this.clock = clock;
+        this.maxWeeks = maxWeeks;
+        this.materializeDays = materializeDays;
+    }
+
+    public RideTemplate getTemplate(String templateId) {
+        return rideTemplateRepository.findById(templateId)
+                .orElseThrow(() -> new InvalidRideException("Ride template not found."));
+    }
+
+    public List<RideTemplate> getTemplatesByDriver(String driverId) {
+        return rideTemplateRepository.findByDriverId(driverId);
+    }
+
+    public RideTemplate createTemplate(RideTemplateRequestDTO request) {
+        // Check if driver exists in users table
+        if (!userCache.existsById(request.getDriverId())) {
+            throw new InvalidRideException("Driver does not exist as user.");
+        }
+
+        if (request.getDaysOfWeek() == null || request.getDaysOfWeek().isEmpty()
+                || request.getDepartureTime() == null || request.getStartDate() == null || request.getEndDate() == null) {
+            throw new InvalidRideException("Days of week, departure time, start date and end date are mandatory.");
+        }
+
+        if (request.getDurationMinutes() < 1) {
+            throw new InvalidRideException("Duration has to be greater than 0.");
+        }
+
+        if (request.getEndDate().isBefore(request.getStartDate())) {
+            throw new InvalidRideException("End date can't be before start date.");
+        }
+
+        if (request.getEndDate().isAfter(request.getStartDate().plusWeeks(maxWeeks))) {
+            throw new InvalidRideException("A ride template can span at most " + maxWeeks + " weeks.");
+        }
+
+        RideTemplate template = request.toEntity();
+        List<Occurrence> occurrences = template.occurrences();
+        if (occurrences.isEmpty()) {
+            throw new InvalidRideException("The template has no ride between its start and end dates.");
+        }
+
+        // Check if the first departure is in the future
+        if (occurrences.get(0).departureTime().isBefore(clock.instant())) {
+            throw new InvalidRideException("Departure time must be in the future.");
+        }
+
+        // Check if start location differs from end location
+        if (request.getStartLocation().equals(request.getEndLocation())) {
+            throw new InvalidRideException("Start location has to be different from end location");
+        }
+
+        // Check if the number of available seats is > 0
+        if (request.getSeatsAvailable() < 1) {
+            throw new InvalidRideException("Number of seats has to be greater than 0.");
+        }
+
+        // Check if the price is >= 0
+        if (request.getSeatPrice() < 0) {
+            throw new InvalidRideException("Price has to be greater or equal to 0.");
+        }
+
+        // Check if vehicle is stored in vehicles table
+        if (!vehicleRepository.existsByLicensePlate(request.getCarLicensePlate())) {
+            throw new InvalidRideException("Vehicle does not exist in the system.");
+        }
+
+        checkOverlaps(template, occurrences);
+
+        RideTemplate saved = rideTemplateRepository.save(template);
+        // none of its rides is stored yet, the ones of the coming days are inserted without looking them up
+        Instant now = clock.instant();
+        LocalDate today = today();
+        for (int day = 0; day <= materializeDays; day++) {
+            saved.occurrenceOn(today.plusDays(day))
+                    .filter(occurrence -> occurrence.departureTime().isAfter(now))
+                    .ifPresent(occurrence -> insertOccurrence(saved, occurrence));
+        }
+        return saved;
+    }
+
+    // The schedule is checked once, with one query per kind of conflict over its whole span
+    private void checkOverlaps(RideTemplate template, List<Occurrence> occurrences) {
+        String driverId = template.getDriverId();
+        Instant firstDeparture = occurrences.get(0).departureTime();
+        Instant lastArrival = occurrences.get(occurrences.size() - 1).arrivalTime();
+
+        // Check if driver has another recurring ride overlapping this one
+        for (RideTemplate other : rideTemplateRepository.findByDriverId(driverId)) {
+            if (occurrences.stream().anyMatch(occurrence -> other.overlaps(occurrence.departureTime(), occurrence.arrivalTime()))) {
+                throw new RideConflictException("Driver involved in another ride.");
+            }
+        }
+
+        // Check if driver it's involved in other ride as driver that's overlapping an occurrence
+        for (Ride ride : rideRepository.findByDriverIdAndTimeOverlap(driverId, firstDeparture, lastArrival)) {
+            if (template.overlaps(ride.getDepartureTime(), ride.getArrivalTime())) {
+                throw new RideConflictException("Driver involved in another ride.");
+            }
+        }
+
+        // Check if driver it's involved in other ride as passenger that's overlapping an occurrence
+        for (Ride ride : rideBookingRepository.findOverlappingBookedRidesForPassenger(driverId, firstDeparture, lastArrival)) {
+            if (template.overlaps(ride.getDepartureTime(), ride.getArrivalTime())) {
+                throw new InvalidRideBookingException("Driver involved in another ride at the same time as passenger.");
+            }
+        }
+    }
+
+    // a recurring ride of the driver with an occurrence in [departureTime, arrivalTime]
+    public Optional<RideTemplate> findOverlappingTemplate(String driverId, Instant departureTime, Instant arrivalTime) {
+        return rideTemplateRepository.findByDriverId(driverId).stream()
+                .filter(template -> template.overlaps(departureTime, arrivalTime))
+                .findFirst();
+    }
+
+    // the recurring rides of each of the drivers, in a single query
+    public Map<String, List<RideTemplate>> findTemplatesByDrivers(Collection<String> driverIds) {
+        return rideTemplateRepository.findByDriverIdIn(driverIds).stream()
+                .collect(Collectors.groupingBy(RideTemplate::getDriverId));
+    }
+
+    // true if a search of that day has no recurring ride to store, the past days have none left to run
+    // and the coming ones were stored ahead
+    public boolean isMaterialized(LocalDate date) {
+        return date.isBefore(today().plusDays(materializeDays));
+    }
+
+    // one day more than isMaterialized covers, the day entering the window at midnight is stored before the job runs
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${rides.templates.materialize-cron:0 10 0 * * *}", zone = "UTC")
+    public void materializeUpcoming() {
+        LocalDate today = today();
+        for (int day = 0; day <= materializeDays; day++) {
+            materialize(today.plusDays(day));
+        }
+    }
+
+    private LocalDate today() {
+        return clock.instant().atZone(ZoneOffset.UTC).toLocalDate();
+    }
+
+    // stores the rides of all the templates with a future occurrence on that day
+    public void materialize(LocalDate date) {
+        materialize(date, rideTemplateRepository.findActiveOn(date, date.getDayOfWeek()));
+    }
+
+    // stores the rides of the templates of that route with a future occurrence on that day
+    public void materialize(LocalDate date, String startLocation, String endLocation) {
+        materialize(date, rideTemplateRepository.findActiveOnRoute(date, date.getDayOfWeek(), startLocation, endLocation));
+    }
+
+    private void materialize(LocalDate date, List<RideTemplate> templates) {
+        Instant now = clock.instant();
+        Map<String, RideTemplate> due = templates.stream()
+                .filter(template -> template.occurrenceOn(date)
+                        .map(occurrence -> occurrence.departureTime().isAfter(now))
+                        .orElse(false))
+                .collect(Collectors.toMap(RideTemplate::getId, Function.identity()));
+        if (due.isEmpty()) {
+            return;
+        }
+
+        Instant startOfDay = date.atStartOfDay(ZoneOffset.UTC).toInstant();
+        Instant endOfDay = date.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant();
+        Set<String> stored = rideRepository.findTemplateRidesDepartingBetween(due.keySet(), startOfDay, endOfDay).stream()
+                .map(Ride::getTemplateId)
+                .collect(Collectors.toSet());
+
+        due.values().stream()
+                .filter(template -> !stored.contains(template.getId()))
+                .forEach(template -> insertOccurrence(template, template.occurrenceOn(date).get()));
+    }
+
+    // the ride of the template's occurrence on that day, stored on first use, so it can be booked
+    public Ride materializeOccurrence(String templateId, LocalDate date) {
+        RideTemplate template = getTemplate(templateId);
+        Occurrence occurrence = template.occurrenceOn(date)
+                .orElseThrow(() -> new InvalidRideException("The ride template has no ride on " + date + "."));
+
+        Optional<Ride> stored = rideRepository.findByTemplateIdAndDepartureTime(templateId, occurrence.departureTime());
+        if (stored.isPresent()) {
+            return stored.get();
+        }
+        if (!occurrence.departureTime().isAfter(clock.instant())) {
+            throw new InvalidRideException("Departure time must be in the future.");
+        }
+        return insertOccurrence(template, occurrence);
+    }
+
+    private Ride insertOccurrence(RideTemplate template, Occurrence occurrence) {
+        try {
+            Ride ride = rideRepository.insert(template.toRide(occurrence));
+            rideSearchIndex.put(ride);
+            return ride;
+        } catch (DuplicateKeyException e) {
+            // stored meanwhile by another request
+            return rideRepository.findByTemplateIdAndDepartureTime(template.getId(), occurrence.departureTime())
+                    .orElseThrow(() -> e);
+        }
+    }
+}
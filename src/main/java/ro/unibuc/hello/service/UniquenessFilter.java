@@ -0,0 +1,244 @@
+package ro.unibuc.hello.service;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import ro.unibuc.hello.model.User;
+import ro.unibuc.hello.model.Vehicle;
+import ro.unibuc.hello.repository.UserRepository;
+import ro.unibuc.hello.repository.VehicleRepository;
+
+// In-memory filters of the stored license plates, mails and phone numbers.
+// A negative answer means the value was not stored as of this node's knowledge, a positive one still has to be checked.
+// Every save made on this node is added right away, but the writes of other nodes only show up at the periodic reload,
+// so a negative may be a value stored elsewhere since. Only skip work on a negative where a miss is harmless,
+// in front of a write whose unique index rejects the duplicate anyway, never to conclude that a value does not exist.
+// Deletes are not seen by the mapping events, the services remove the values they delete.
+// Until the first load, or when disabled, every value is reported as possibly stored.
+@Component
+public class UniquenessFilter {
+    public enum Field {
+        LICENSE_PLATE("licensePlate"), MAIL("mail"), PHONE_NUMBER("phoneNumber");
+
+        // "... index: phoneNumber dup key: { ... }", the name may also be the generated one, phoneNumber_1
+        private static final Pattern DUPLICATE_INDEX = Pattern.compile("index: (\\S+) dup key");
+
+        private final String property;
+
+        Field(String property) {
+            this.property = property;
+        }
+
+        // the field whose unique index rejected a write, read from the index name of the duplicate key error
+        public static Optional<Field> ofDuplicateKey(String message) {
+            Matcher matcher = DUPLICATE_INDEX.matcher(message == null ? "" : message);
+            if (!matcher.find()) {
+                return Optional.empty();
+            }
+            String index = matcher.group(1);
+            return Arrays.stream(values())
+                .filter(field -> index.equals(field.property) || index.startsWith(field.property + "_"))
+                .findFirst();
+        }
+    }
+
+    private final UserRepository userRepository;
+    private final VehicleRepository vehicleRepository;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final long expectedEntries;
+    private final double falsePositiveProbability;
+
+    private volatile Map<Field, CountingBloomFilter> filters;
+    // filters being rebuilt by a reload, the writes made meanwhile are added to them as well
+    private volatile Map<Field, CountingBloomFilter> building;
+
+    // a lock instead of synchronized, a virtual thread blocked on Mongo inside synchronized pins its carrier
+    private final ReentrantLock reloadLock = new ReentrantLock();
+
+    private final Map<Field, Counter> negatives = new EnumMap<>(Field.class);
+    private final Map<Field, Counter> positives = new EnumMap<>(Field.class);
+    private final Map<Field, Counter> falsePositives = new EnumMap<>(Field.class);
+
+    public UniquenessFilter(UserRepository userRepository,
+                            VehicleRepository vehicleRepository,
+                            MeterRegistry meterRegistry,
+                            @Value("${uniqueness-filter.enabled:true}") boolean enabled,
+                            @Value("${uniqueness-filter.expected-entries:100000}") long expectedEntries,
+                            @Value("${uniqueness-filter.false-positive-probability:0.01}") double falsePositiveProbability) {
+        this.userRepository = userRepository;
+        this.vehicleRepository = vehicleRepository;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.expectedEntries = expectedEntries;
+        this.falsePositiveProbability = falsePositiveProbability;
+
+        for (Field field : Field.values()) {
+            String tag = field.name().toLowerCase();
+            negatives.put(field, meterRegistry.counter("uniqueness.filter.checks", "field", tag, "result", "negative"));
+            positives.put(field, meterRegistry.counter("uniqueness.filter.checks", "field", tag, "result", "positive"));
+            falsePositives.put(field, meterRegistry.counter("uniqueness.filter.false.positives", "field", tag));
+        }
+    }
+
+    // the gauges hold this filter, they are registered once it is constructed
+    @PostConstruct
+    public void registerMetrics() {
+        for (Field field : Field.values()) {
+            String tag = field.name().toLowerCase();
+            Gauge.builder("uniqueness.filter.entries", this, f -> f.stat(field, CountingBloomFilter::entries))
+                .tag("field", tag)
+                .register(meterRegistry);
+            Gauge.builder("uniqueness.filter.expected.fpp", this, f -> f.stat(field, CountingBloomFilter::expectedFalsePositiveProbability))
+                .tag("field", tag)
+                .register(meterRegistry);
+            Gauge.builder("uniqueness.filter.observed.fpp", this, f -> f.observedFalsePositiveRate(field))
+                .tag("field", tag)
+                .register(meterRegistry);
+            Gauge.builder("uniqueness.filter.memory", this, f -> f.stat(field, CountingBloomFilter::memoryBytes))
+                .tag("field", tag)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        }
+    }
+
+    // false if neither this node nor the last reload saw the value stored
+    public boolean mightContain(Field field, String value) {
+        Map<Field, CountingBloomFilter> current = filters;
+        if (!enabled || current == null || value == null) {
+            return true;
+        }
+        boolean result = current.get(field).mightContain(value);
+        (result ? positives : negatives).get(field).increment();
+        return result;
+    }
+
+    // a positive answer that Mongo did not confirm
+    public void falsePositive(Field field) {
+        falsePositives.get(field).increment();
+    }
+
+    // runs the Mongo lookup only when the filter can not rule the value out, a false may miss a write of another node
+    public boolean exists(Field field, String value, Predicate<String> lookup) {
+        if (!mightContain(field, value)) {
+            return false;
+        }
+        boolean exists = lookup.test(value);
+        if (!exists) {
+            falsePositive(field);
+        }
+        return exists;
+    }
+
+    public void add(Field field, String value) {
+        if (!enabled || value == null) {
+            return;
+        }
+        // read building first: if no reload is running yet, a later one scans this value from Mongo anyway
+        Map<Field, CountingBloomFilter> fresh = building;
+        Map<Field, CountingBloomFilter> current = filters;
+        if (fresh != null && fresh != current) {
+            fresh.get(field).add(value);
+        }
+        if (current != null) {
+            current.get(field).add(value);
+        }
+    }
+
+    // any insert or save of a user or vehicle, whichever repository or template made it
+    @EventListener
+    public void onAfterSave(AfterSaveEvent<?> event) {
+        if (event.getSource() instanceof Vehicle vehicle) {
+            add(Field.LICENSE_PLATE, vehicle.getLicensePlate());
+        } else if (event.getSource() instanceof User user) {
+            add(Field.MAIL, user.getMail());
+            add(Field.PHONE_NUMBER, user.getPhoneNumber());
+        }
+    }
+
+    // only for a value that was stored, a reload in progress keeps it as a false positive until the next one
+    public void remove(Field field, String value) {
+        Map<Field, CountingBloomFilter> current = filters;
+        if (!enabled || current == null || value == null) {
+            return;
+        }
+        CountingBloomFilter filter = current.get(field);
+        if (filter.mightContain(value)) {
+            filter.remove(value);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${uniqueness-filter.refresh-interval:30m}",
+               initialDelayString = "${uniqueness-filter.refresh-interval:30m}")
+    public void reload() {
+        if (!enabled) {
+            return;
+        }
+        reloadLock.lock();
+        try {
+            rebuild();
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    private void rebuild() {
+        Map<Field, CountingBloomFilter> fresh = new EnumMap<>(Field.class);
+        for (Field field : Field.values()) {
+            fresh.put(field, new CountingBloomFilter(expectedEntries, falsePositiveProbability));
+        }
+        building = fresh;
+        try {
+            try (Stream<Vehicle> vehicles = vehicleRepository.streamLicensePlatesBy()) {
+                vehicles.forEach(vehicle -> addTo(fresh, Field.LICENSE_PLATE, vehicle.getLicensePlate()));
+            }
+            try (Stream<User> users = userRepository.streamMailsAndPhoneNumbersBy()) {
+                users.forEach(user -> {
+                    addTo(fresh, Field.MAIL, user.getMail());
+                    addTo(fresh, Field.PHONE_NUMBER, user.getPhoneNumber());
+                });
+            }
+            filters = fresh;
+        } finally {
+            building = null;
+        }
+    }
+
+    private static void addTo(Map<Field, CountingBloomFilter> filters, Field field, String value) {
+        if (value != null) {
+            filters.get(field).add(value);
+        }
+    }
+
+    private double stat(Field field, ToDoubleFunction<CountingBloomFilter> stat) {
+        Map<Field, CountingBloomFilter> current = filters;
+        return current == null ? 0 : stat.applyAsDouble(current.get(field));
+    }
+
+    // false positives over all the values that were not stored, counting every negative answer as a true negative
+    private double observedFalsePositiveRate(Field field) {
+        double falsePositive = falsePositives.get(field).count();
+        double notStored = falsePositive + negatives.get(field).count();
+        return notStored == 0 ? 0 : falsePositive / notStored;
+    }
+}
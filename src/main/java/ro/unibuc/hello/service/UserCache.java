@@ -0,0 +1,152 @@
+package ro.unibuc.hello.service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import ro.unibuc.hello.model.User;
+import ro.unibuc.hello.model.UserView;
+import ro.unibuc.hello.repository.UserRepository;
+
+// Read-through cache in front of the user lookups of the hot paths.
+// Users are cached by id only, mail and phone map to the id, so evicting an id is enough to invalidate a user.
+// A user is loaded through the cache as an in-flight future: an invalidate made while it loads drops the future,
+// so the view read before the change is never stored over it.
+// Only existing users are cached, a miss always goes to Mongo. What is cached is a UserView, loaded with a projection
+// of the fields the services read: immutable, so it can be shared, and without the password hash.
+@Component
+public class UserCache {
+    private final UserRepository userRepository;
+    private final AsyncCache<String, UserView> usersById;
+    private final Cache<String, String> idsByMail;
+    private final Cache<String, String> idsByPhoneNumber;
+
+    public UserCache(UserRepository userRepository,
+                     MeterRegistry meterRegistry,
+                     @Value("${users.cache.max-size:10000}") long maxSize,
+                     @Value("${users.cache.ttl:60s}") Duration ttl) {
+        this.userRepository = userRepository;
+        this.usersById = newBuilder(maxSize, ttl).buildAsync();
+        this.idsByMail = newCache(maxSize, ttl);
+        this.idsByPhoneNumber = newCache(maxSize, ttl);
+
+        CaffeineCacheMetrics.monitor(meterRegistry, usersById, "users.byId");
+        CaffeineCacheMetrics.monitor(meterRegistry, idsByMail, "users.byMail");
+        CaffeineCacheMetrics.monitor(meterRegistry, idsByPhoneNumber, "users.byPhoneNumber");
+    }
+
+    private static <V> Cache<String, V> newCache(long maxSize, Duration ttl) {
+        return newBuilder(maxSize, ttl).build();
+    }
+
+    private static Caffeine<Object, Object> newBuilder(long maxSize, Duration ttl) {
+        return Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(ttl)
+            .recordStats();
+    }
+
+    public Optional<UserView> findById(String id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        // the future is mapped right away and completed by the caller after the query, Cache.get(key, loader)
+        // would run the query inside a synchronized map bin, pinning the carrier of a virtual thread
+        CompletableFuture<UserView> loading = new CompletableFuture<>();
+        CompletableFuture<UserView> user = usersById.get(id, (key, executor) -> loading);
+        if (user == loading) {
+            // a null completes the future without caching it, a missing user is looked up again next time
+            complete(loading, () -> userRepository.findViewById(id).map(UserView::of).orElse(null));
+        }
+        return Optional.ofNullable(user.join());
+    }
+
+    public boolean existsById(String id) {
+        return findById(id).isPresent();
+    }
+
+    // all the found users by id, the misses are loaded with a single query
+    public Map<String, UserView> findAllById(Collection<String> ids) {
+        CompletableFuture<Map<String, UserView>> loading = new CompletableFuture<>();
+        Set<String> missing = new HashSet<>();
+        CompletableFuture<Map<String, UserView>> users = usersById.getAll(ids, (keys, executor) -> {
+            missing.addAll(keys);
+            return loading;
+        });
+        if (!missing.isEmpty()) {
+            complete(loading, () -> userRepository.findViewsByIdIn(Set.copyOf(missing))
+                .stream()
+                .map(UserView::of)
+                .collect(Collectors.toMap(UserView::id, Function.identity())));
+        }
+        return users.join();
+    }
+
+    // a failed load fails the future, Caffeine drops it and the callers waiting on it get the error
+    private static <V> void complete(CompletableFuture<V> loading, Supplier<V> loader) {
+        try {
+            loading.complete(loader.get());
+        } catch (RuntimeException e) {
+            loading.completeExceptionally(e);
+        }
+    }
+
+    public Optional<UserView> findByMail(String mail) {
+        return findBy(mail, idsByMail, userRepository::findViewByMail);
+    }
+
+    public Optional<UserView> findByPhoneNumber(String phoneNumber) {
+        return findBy(phoneNumber, idsByPhoneNumber, userRepository::findViewByPhoneNumber);
+    }
+
+    private Optional<UserView> findBy(String key, Cache<String, String> ids, Function<String, Optional<User>> loader) {
+        if (key == null) {
+            return Optional.empty();
+        }
+        String id = ids.getIfPresent(key);
+        if (id != null) {
+            Optional<UserView> cached = findById(id);
+            if (cached.isPresent()) {
+                return cached;
+            }
+            ids.invalidate(key);
+        }
+
+        // only the id is kept, the view itself is cached by the lookup by id, a put here could store it
+        // over an invalidate made while it was read
+        Optional<UserView> user = loader.apply(key).map(UserView::of);
+        user.ifPresent(this::putIds);
+        return user;
+    }
+
+    private void putIds(UserView user) {
+        if (user.mail() != null) {
+            idsByMail.put(user.mail(), user.id());
+        }
+        if (user.phoneNumber() != null) {
+            idsByPhoneNumber.put(user.phoneNumber(), user.id());
+        }
+    }
+
+    public void invalidate(String id) {
+        if (id != null) {
+            usersById.synchronous().invalidate(id);
+        }
+    }
+}
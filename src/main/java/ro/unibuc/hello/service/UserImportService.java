@@ -0,0 +1,184 @@
+package ro.unibuc.hello.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import ro.unibuc.hello.dto.user.UserImportReportDTO;
+import ro.unibuc.hello.dto.user.UserImportResultDTO;
+import ro.unibuc.hello.dto.user.UserRequestDTO;
+import ro.unibuc.hello.enums.UserImportStatus;
+import ro.unibuc.hello.model.User;
+import ro.unibuc.hello.service.UniquenessFilter.Field;
+
+// Imports a JSON array of users read from the request body as it arrives, one batch at a time.
+// The passwords of a batch are hashed on the PasswordHasher threads shared with the signups, the batch is then
+// written with a single unordered insertMany, so one duplicate does not stop the rows after it.
+// Mails and phone numbers are deduplicated in memory within the import, the unique indexes reject the ones
+// already stored, without a lookup per row.
+@Service
+public class UserImportService {
+    private final MongoTemplate mongoTemplate;
+    private final PasswordHasher passwordHasher;
+    private final ObjectMapper objectMapper;
+    private final UniquenessFilter uniquenessFilter;
+    private final int batchSize;
+    private final Map<UserImportStatus, Counter> rowCounters = new EnumMap<>(UserImportStatus.class);
+
+    public UserImportService(MongoTemplate mongoTemplate,
+                             PasswordHasher passwordHasher,
+                             ObjectMapper objectMapper,
+                             UniquenessFilter uniquenessFilter,
+                             MeterRegistry meterRegistry,
+                             @Value("${users.import.batch-size:1000}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.passwordHasher = passwordHasher;
+        this.objectMapper = objectMapper;
+        this.uniquenessFilter = uniquenessFilter;
+        this.batchSize = batchSize;
+
+        for (UserImportStatus status : UserImportStatus.values()) {
+            rowCounters.put(status, meterRegistry.counter("users.import.rows", "status", status.name().toLowerCase()));
+        }
+    }
+
+    private record PendingRow(int row, UserRequestDTO request, User user) {}
+
+    public UserImportReportDTO importUsers(InputStream body) throws IOException {
+        List<UserImportResultDTO> results = new ArrayList<>();
+        Set<String> mails = new HashSet<>();
+        Set<String> phoneNumbers = new HashSet<>();
+        List<PendingRow> batch = new ArrayList<>(batchSize);
+
+        try (JsonParser parser = objectMapper.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IllegalArgumentException("Expected a JSON array of users.");
+            }
+
+            int row = 0;
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                UserRequestDTO request = objectMapper.readValue(parser, UserRequestDTO.class);
+                UserImportResultDTO rejected = validate(row, request, mails, phoneNumbers);
+                if (rejected != null) {
+                    results.add(rejected);
+                } else {
+                    batch.add(new PendingRow(row, request, request.toEntity()));
+                }
+                row++;
+
+                if (batch.size() == batchSize) {
+                    results.addAll(importBatch(batch));
+                    batch.clear();
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new IllegalArgumentException("Expected a user object at row " + row + ".");
+            }
+        }
+        if (!batch.isEmpty()) {
+            results.addAll(importBatch(batch));
+        }
+
+        // the rows rejected while reading are reported before the batch they were read with, back to request order
+        results.sort((first, second) -> Integer.compare(first.getRow(), second.getRow()));
+        results.forEach(result -> rowCounters.get(result.getStatus()).increment());
+        return new UserImportReportDTO(results);
+    }
+
+    private static UserImportResultDTO validate(int row, UserRequestDTO request, Set<String> mails, Set<String> phoneNumbers) {
+        if (isBlank(request.getMail()) || isBlank(request.getPhoneNumber()) || isBlank(request.getPassword())) {
+            return UserImportResultDTO.rejected(row, request.getMail(), UserImportStatus.INVALID,
+                "Mail, phone number and password are mandatory.");
+        }
+        if (mails.contains(request.getMail())) {
+            return UserImportResultDTO.rejected(row, request.getMail(), UserImportStatus.DUPLICATE_IN_REQUEST,
+                "Email already used by an earlier row: " + request.getMail());
+        }
+        if (phoneNumbers.contains(request.getPhoneNumber())) {
+            return UserImportResultDTO.rejected(row, request.getMail(), UserImportStatus.DUPLICATE_IN_REQUEST,
+                "Phone number " + request.getPhoneNumber() + " already used by an earlier row");
+        }
+        mails.add(request.getMail());
+        phoneNumbers.add(request.getPhoneNumber());
+        return null;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.isBlank();
+    }
+
+    private List<UserImportResultDTO> importBatch(List<PendingRow> batch) {
+        // BCrypt is the expensive part, it runs on the hashing pool next to the signups
+        List<String> hashes = passwordHasher.hashAll(batch.stream().map(pending -> pending.request().getPassword()).toList());
+        for (int index = 0; index < batch.size(); index++) {
+            batch.get(index).user().setPasswordHash(hashes.get(index));
+        }
+
+        List<Document> documents = new ArrayList<>(batch.size());
+        for (PendingRow pending : batch) {
+            // the id is known before the insert, so it can be reported for every imported row
+            pending.user().setId(new ObjectId().toHexString());
+            Document document = new Document();
+            mongoTemplate.getConverter().write(pending.user(), document);
+            documents.add(document);
+        }
+
+        Map<Integer, BulkWriteError> errors = new HashMap<>();
+        try {
+            mongoTemplate.getCollection(mongoTemplate.getCollectionName(User.class))
+                .insertMany(documents, new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            e.getWriteErrors().forEach(error -> errors.put(error.getIndex(), error));
+        }
+
+        List<UserImportResultDTO> results = new ArrayList<>(batch.size());
+        for (int index = 0; index < batch.size(); index++) {
+            PendingRow pending = batch.get(index);
+            BulkWriteError error = errors.get(index);
+            if (error == null) {
+                // written by the driver directly, no mapping event tells the filter about them
+                uniquenessFilter.add(Field.MAIL, pending.user().getMail());
+                uniquenessFilter.add(Field.PHONE_NUMBER, pending.user().getPhoneNumber());
+                results.add(UserImportResultDTO.imported(pending.row(), pending.user().getMail(), pending.user().getId()));
+            } else {
+                results.add(rejected(pending, error));
+            }
+        }
+        return results;
+    }
+
+    private static UserImportResultDTO rejected(PendingRow pending, BulkWriteError error) {
+        String mail = pending.request().getMail();
+        if (ErrorCategory.fromErrorCode(error.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+            return UserImportResultDTO.rejected(pending.row(), mail, UserImportStatus.FAILED, error.getMessage());
+        }
+        // same messages as createUser
+        if (Field.ofDuplicateKey(error.getMessage()).orElse(Field.MAIL) == Field.PHONE_NUMBER) {
+            return UserImportResultDTO.rejected(pending.row(), mail, UserImportStatus.DUPLICATE,
+                "Phone number " + pending.request().getPhoneNumber() + " already used");
+        }
+        return UserImportResultDTO.rejected(pending.row(), mail, UserImportStatus.DUPLICATE, "Email already exists: " + mail);
+    }
+}
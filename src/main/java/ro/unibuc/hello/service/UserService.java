@@ -1,8 +1,12 @@
 package ro.unibuc.hello.service;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.ResourceAccessException;
 
+import io.micrometer.observation.annotation.Observed;
+
+import ro.unibuc.hello.dto.page.PageResponseDTO;
 import ro.unibuc.hello.dto.user.UserRequestDTO;
 import ro.unibuc.hello.dto.user.UserResponseDTO;
 import ro.unibuc.hello.events.UserUpdatedEvent;
@@ -10,55 +14,94 @@ import ro.unibuc.hello.exception.EntityNotFoundException;
 import ro.unibuc.hello.exceptions.user.InvalidUserException;
 import ro.unibuc.hello.model.User;
 import ro.unibuc.hello.repository.UserRepository;
+import ro.unibuc.hello.service.UniquenessFilter.Field;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.dao.DuplicateKeyException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
 
 @Service
+@Observed(name = "service.method")
 public class UserService {
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHasher passwordHasher;
+    private final UserCache userCache;
+    private final UniquenessFilter uniquenessFilter;
 
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository userRepository, PasswordHasher passwordHasher, UserCache userCache,
+                       UniquenessFilter uniquenessFilter) {
         this.userRepository = userRepository;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHasher = passwordHasher;
+        this.userCache = userCache;
+        this.uniquenessFilter = uniquenessFilter;
     }
 
     public List<User> getAllUsers() {
         return userRepository.findAll();
     }
 
+    // closing the mapped stream closes the database cursor
+    public Stream<UserResponseDTO> streamAllUsers() {
+        return userRepository.streamViewsBy().map(UserResponseDTO::toDTO);
+    }
+
+    public PageResponseDTO<UserResponseDTO> getUsersPage(String cursor, Integer limit) {
+        int pageSize = PageResponseDTO.clampPageSize(limit);
+
+        // fetch one extra element to know if there is a next page
+        List<User> users = cursor == null
+            ? userRepository.findByOrderByIdAsc(Limit.of(pageSize + 1))
+            : userRepository.findByIdGreaterThanOrderByIdAsc(PageResponseDTO.decodeCursor(cursor), Limit.of(pageSize + 1));
+
+        // the cursor is the id of the last user, the page itself only has the public fields
+        return PageResponseDTO.of(users, pageSize, User::getId).map(UserResponseDTO::toDTO);
+    }
+
     public UserResponseDTO createUser(UserRequestDTO userDto) {
-        if (userRepository.findByMail(userDto.getMail()).isPresent()) {
-            throw new DuplicateKeyException("Email already exists: " + userDto.getMail());
-        } else if (userRepository.findByPhoneNumber(userDto.getPhoneNumber()).isPresent()) {
-            throw new DuplicateKeyException("Phone number " +
-                                            userDto.getPhoneNumber() + 
-                                            " already used");
+        // checked before the hash, a duplicate must not cost a BCrypt round; the filter skips the lookup of a new
+        // mail or phone number, one stored meanwhile by another node is still rejected by the insert below
+        if (uniquenessFilter.exists(Field.MAIL, userDto.getMail(), userRepository::existsByMail)) {
+            throw duplicateUserException(userDto, Field.MAIL);
+        }
+        if (uniquenessFilter.exists(Field.PHONE_NUMBER, userDto.getPhoneNumber(), userRepository::existsByPhoneNumber)) {
+            throw duplicateUserException(userDto, Field.PHONE_NUMBER);
         }
 
         User newUser = userDto.toEntity();
 
-        String passwordHash = passwordEncoder.encode(userDto.getPassword());
+        // hashed on the bounded hashing pool, fails fast when it is saturated
+        String passwordHash = passwordHasher.hash(userDto.getPassword());
         newUser.setPasswordHash(passwordHash);
 
-        return userRepository.save(newUser).toDTO();
+        // mail and phone number are unique indexes, the insert still rejects a duplicate saved since the checks
+        try {
+            return userRepository.save(newUser).toDTO();
+        } catch (DuplicateKeyException e) {
+            throw duplicateUserException(userDto, Field.ofDuplicateKey(e.getMessage()).orElse(Field.MAIL));
+        }
+    }
+
+    private DuplicateKeyException duplicateUserException(UserRequestDTO userDto, Field field) {
+        if (field == Field.PHONE_NUMBER) {
+            return new DuplicateKeyException("Phone number " +
+                                            userDto.getPhoneNumber() + 
+                                            " already used");
+        }
+        return new DuplicateKeyException("Email already exists: " + userDto.getMail());
     }
 
 
     public UserResponseDTO getUserById(String id)  {
-        return userRepository.findById(id)
+        return userCache.findById(id)
                 .map(UserResponseDTO::toDTO)
                 .orElseThrow(() -> new EntityNotFoundException("User not found with id: " + id));
     }
 
     public UserResponseDTO getUserByMail(String mail)  {
-        return userRepository.findByMail(mail)
+        return userCache.findByMail(mail)
                 .map(UserResponseDTO::toDTO)
                 .orElseThrow(() -> new EntityNotFoundException("User not found with mail: " + mail));
     }
@@ -76,7 +119,9 @@ public class UserService {
             User user = userOptional.get();
             user.setFirstName(newFirstName);
             user.setLastName(newLastName);
-            return userRepository.save(user).toDTO();
+            UserResponseDTO updated = userRepository.save(user).toDTO();
+            userCache.invalidate(id);
+            return updated;
         } else {
             throw new InvalidUserException("User not found with id: " + id);
         }
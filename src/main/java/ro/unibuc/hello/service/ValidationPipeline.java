@@ -0,0 +1,94 @@
+package ro.unibuc.hello.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+// The named checks of a request, run cheapest first: the ones on the request alone, then the ones answered
+// by the in-memory caches, then the ones that query Mongo. Rules of the same cost keep the order they were added in,
+// so a rule may rely on the ones added before it with the same cost, e.g. the checks on a ride loaded by the rule before.
+// Every rule is timed by the validation.rule timer, tagged by pipeline, rule and outcome:
+// passed, rejected, or error when the check itself failed.
+public class ValidationPipeline<T> {
+    public enum Cost {
+        // the request alone
+        MEMORY,
+        // the in-memory caches, a miss goes to Mongo
+        CACHE,
+        // a Mongo query, or the result of one
+        IO
+    }
+
+    private record Rule<T>(String name, Cost cost, Predicate<T> valid, Supplier<? extends RuntimeException> rejection,
+                           Timer passed, Timer rejected, Timer error) {}
+
+    private final List<Rule<T>> rules;
+
+    private ValidationPipeline(List<Rule<T>> rules) {
+        this.rules = rules;
+    }
+
+    public static <T> Builder<T> builder(String pipeline, MeterRegistry meterRegistry) {
+        return new Builder<>(pipeline, meterRegistry);
+    }
+
+    // throws the rejection of the first rule that does not hold
+    public void validate(T target) {
+        for (Rule<T> rule : rules) {
+            long startedAt = System.nanoTime();
+            boolean valid;
+            try {
+                valid = rule.valid().test(target);
+            } catch (RuntimeException e) {
+                rule.error().record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                throw e;
+            }
+            if (!valid) {
+                rule.rejected().record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+                throw rule.rejection().get();
+            }
+            rule.passed().record(System.nanoTime() - startedAt, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public List<String> ruleNames() {
+        return rules.stream().map(Rule::name).toList();
+    }
+
+    public static final class Builder<T> {
+        private final String pipeline;
+        private final MeterRegistry meterRegistry;
+        private final List<Rule<T>> rules = new ArrayList<>();
+
+        private Builder(String pipeline, MeterRegistry meterRegistry) {
+            this.pipeline = pipeline;
+            this.meterRegistry = meterRegistry;
+        }
+
+        public Builder<T> rule(String name, Cost cost, Predicate<T> valid, Supplier<? extends RuntimeException> rejection) {
+            rules.add(new Rule<>(name, cost, valid, rejection,
+                timer(name, cost, "passed"), timer(name, cost, "rejected"), timer(name, cost, "error")));
+            return this;
+        }
+
+        private Timer timer(String rule, Cost cost, String outcome) {
+            return Timer.builder("validation.rule")
+                .description("time spent in a validation rule")
+                .tags("pipeline", pipeline, "rule", rule, "cost", cost.name().toLowerCase(), "outcome", outcome)
+                .register(meterRegistry);
+        }
+
+        public ValidationPipeline<T> build() {
+            List<Rule<T>> ordered = new ArrayList<>(rules);
+            // a stable sort, the order of the rules of the same cost is kept
+            ordered.sort(Comparator.comparing(Rule::cost));
+            return new ValidationPipeline<>(List.copyOf(ordered));
+        }
+    }
+}
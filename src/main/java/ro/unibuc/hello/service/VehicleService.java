@@ -3,48 +3,73 @@ package ro.unibuc.hello.service;
 import java.util.List;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.observation.annotation.Observed;
+
+import ro.unibuc.hello.dto.page.PageResponseDTO;
 import ro.unibuc.hello.dto.vehicle.VehicleDTO;
 import ro.unibuc.hello.exceptions.vehicle.VehicleConflictException;
 import ro.unibuc.hello.model.Vehicle;
-import ro.unibuc.hello.repository.UserRepository;
 import ro.unibuc.hello.repository.VehicleRepository;
+import ro.unibuc.hello.service.UniquenessFilter.Field;
 
 @Service
+@Observed(name = "service.method")
 public class VehicleService {
     private final VehicleRepository vehicleRepository;
-    private final UserRepository userRepository;
+    private final UserCache userCache;
+    private final UniquenessFilter uniquenessFilter;
 
-    public VehicleService(VehicleRepository vehicleRepository, UserRepository userRepository) {
+    public VehicleService(VehicleRepository vehicleRepository, UserCache userCache, UniquenessFilter uniquenessFilter) {
         this.vehicleRepository = vehicleRepository;
-        this.userRepository = userRepository;
+        this.userCache = userCache;
+        this.uniquenessFilter = uniquenessFilter;
     }
 
     public List<Vehicle> getAll() {
         return vehicleRepository.findAll();
         
     }
+
+    public Stream<Vehicle> streamAll() {
+        return vehicleRepository.streamAllBy();
+    }
+
+    public PageResponseDTO<Vehicle> getPage(String cursor, Integer limit) {
+        int pageSize = PageResponseDTO.clampPageSize(limit);
+
+        // fetch one extra element to know if there is a next page
+        List<Vehicle> vehicles = cursor == null
+            ? vehicleRepository.findByOrderByIdAsc(Limit.of(pageSize + 1))
+            : vehicleRepository.findByIdGreaterThanOrderByIdAsc(PageResponseDTO.decodeCursor(cursor), Limit.of(pageSize + 1));
+
+        return PageResponseDTO.of(vehicles, pageSize, Vehicle::getId);
+    }
     
     public VehicleDTO addVehicle(VehicleDTO vehicleDTO) {
-        if (vehicleRepository.existsByLicensePlate(vehicleDTO.getLicensePlate())) {
-            throw new VehicleConflictException("License plate already used.");
-        }
-
-        if (userRepository.findById(vehicleDTO.getUserId()).isEmpty()) {
+        if (userCache.findById(vehicleDTO.getUserId()).isEmpty()) {
             throw new VehicleConflictException("Owner not stored in the system.");
         }
 
-        vehicleRepository.save(vehicleDTO.toEntity());
+        // license plate is a unique index, the insert itself rejects duplicates
+        try {
+            vehicleRepository.save(vehicleDTO.toEntity());
+        } catch (DuplicateKeyException e) {
+            throw new VehicleConflictException("License plate already used.");
+        }
 
         return vehicleDTO;
     }
 
     public VehicleDTO updateLicensePlate(String oldLicensePlate, String newLicensePlate) {
-        if (!vehicleRepository.existsByLicensePlate(oldLicensePlate)) {
+        if (!licensePlateExists(oldLicensePlate)) {
             throw new VehicleConflictException("License plate does not match any car in the system.");
-        } else if (vehicleRepository.existsByLicensePlate(newLicensePlate)) {
+        } else if (licensePlateTaken(newLicensePlate)) {
             throw new VehicleConflictException("License plate already used, try a new one.");
         }
 
@@ -52,14 +77,31 @@ public class VehicleService {
 
         vehicle.setLicensePlate(newLicensePlate);
 
-        return vehicleRepository.save(vehicle).toDTO();
+        VehicleDTO updated;
+        try {
+            updated = vehicleRepository.save(vehicle).toDTO();
+        } catch (DuplicateKeyException e) {
+            throw new VehicleConflictException("License plate already used, try a new one.");
+        }
+        uniquenessFilter.remove(Field.LICENSE_PLATE, oldLicensePlate);
+        return updated;
     }
 
     public void deleteByLicensePlate(String licensePlate) {
-        if (!vehicleRepository.existsByLicensePlate(licensePlate)) {
+        if (!licensePlateExists(licensePlate)) {
             throw new VehicleConflictException("License plate does not match any car in the system.");
         } 
 
         vehicleRepository.delete(vehicleRepository.findOneByLicensePlate(licensePlate));
+        uniquenessFilter.remove(Field.LICENSE_PLATE, licensePlate);
+    }
+
+    private boolean licensePlateExists(String licensePlate) {
+        return vehicleRepository.existsByLicensePlate(licensePlate);
+    }
+
+    // the filter may miss a plate saved by another node, the unique index on the plate still rejects it on save
+    private boolean licensePlateTaken(String licensePlate) {
+        return uniquenessFilter.exists(Field.LICENSE_PLATE, licensePlate, vehicleRepository::existsByLicensePlate);
     }
 }
@@ -0,0 +1,86 @@
+package ro.unibuc.hello.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.time.Duration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.method.HandlerMethod;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ro.unibuc.hello.controller.ReviewController;
+import ro.unibuc.hello.dto.review.ReviewRequestDTO;
+import ro.unibuc.hello.exceptions.review.InvalidReviewException;
+
+public class EndpointMetricsTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private EndpointMetrics endpointMetrics;
+    private HandlerMethod createReview;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+        endpointMetrics = new EndpointMetrics(meterRegistry, new Duration[] { Duration.ofMillis(500) });
+        createReview = new HandlerMethod(mock(ReviewController.class),
+            ReviewController.class.getMethod("createReview", String.class, ReviewRequestDTO.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    // the controller answers with the message of the exception, if any
+    private String handle(int status, Exception rejection) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/reviews");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request, response));
+        endpointMetrics.preHandle(request, response, createReview);
+        String body = rejection == null ? null : EndpointMetrics.rejection(rejection);
+        response.setStatus(status);
+        endpointMetrics.afterCompletion(request, response, createReview, null);
+        return body;
+    }
+
+    @Test
+    void testAfterCompletion_TagsOutcomeAndCountsTheRejectionReason() {
+        handle(201, null);
+        assertEquals("Ride is not completed.", handle(400, new InvalidReviewException("Ride is not completed.")));
+        handle(500, null);
+
+        assertEquals(1, meterRegistry.get("api.requests")
+            .tags("endpoint", "ReviewController.createReview", "outcome", "success", "status", "201").timer().count());
+        assertEquals(1, meterRegistry.get("api.requests").tags("outcome", "rejected", "status", "400").timer().count());
+        assertEquals(1, meterRegistry.get("api.requests").tags("outcome", "error", "status", "500").timer().count());
+        assertTrue(meterRegistry.get("api.requests").timers().stream().allMatch(timer -> timer.getId().getTag("reason") == null));
+        assertEquals(1.0, meterRegistry.get("api.requests.rejected")
+            .tags("endpoint", "ReviewController.createReview", "reason", "invalid_review").counter().count());
+        assertEquals(1, meterRegistry.get("api.requests.rejected").counters().size());
+    }
+
+    @Test
+    void testAfterCompletion_TheMessageNeverBecomesTheReason() {
+        handle(409, new DuplicateKeyException("Email already exists: andrei@gmail.com"));
+        handle(409, new DuplicateKeyException("Email already exists: ivan@gmail.com"));
+
+        assertEquals(2.0, meterRegistry.get("api.requests.rejected").tags("reason", "duplicate_key").counter().count());
+        assertEquals(1, meterRegistry.get("api.requests.rejected").counters().size());
+    }
+
+    @Test
+    void testAfterCompletion_RejectionNotAnsweredByTheControllerHasNoReason() {
+        handle(400, null);
+
+        assertEquals(1.0, meterRegistry.get("api.requests.rejected").tags("reason", "unknown").counter().count());
+    }
+}
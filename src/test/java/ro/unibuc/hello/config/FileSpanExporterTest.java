@@ -0,0 +1,57 @@
+package ro.unibuc.hello.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Scope;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+
+public class FileSpanExporterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testExport_OneLinePerSpanWithItsParent() throws Exception {
+        Path file = directory.resolve("traces/spans.jsonl");
+        ObjectMapper objectMapper = new ObjectMapper();
+        SdkTracerProvider tracerProvider = SdkTracerProvider.builder()
+            .addSpanProcessor(SimpleSpanProcessor.create(new FileSpanExporter(file, objectMapper)))
+            .build();
+        Tracer tracer = tracerProvider.get("test");
+
+        Span request = tracer.spanBuilder("http post /bookings").startSpan();
+        try (Scope ignored = request.makeCurrent()) {
+            tracer.spanBuilder("find rides")
+                .setAttribute("db.mongodb.collection", "rides")
+                .startSpan()
+                .end();
+        } finally {
+            request.end();
+        }
+        tracerProvider.shutdown();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(2, lines.size());
+        JsonNode command = objectMapper.readTree(lines.get(0));
+        JsonNode root = objectMapper.readTree(lines.get(1));
+        assertEquals("find rides", command.get("name").asText());
+        assertEquals("rides", command.get("attributes").get("db.mongodb.collection").asText());
+        assertEquals(root.get("traceId").asText(), command.get("traceId").asText());
+        assertEquals(root.get("spanId").asText(), command.get("parentSpanId").asText());
+        assertNull(root.get("parentSpanId").textValue());
+    }
+}
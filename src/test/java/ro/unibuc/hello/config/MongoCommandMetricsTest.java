@@ -0,0 +1,117 @@
+package ro.unibuc.hello.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonDocument;
+import org.bson.RawBsonDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ro.unibuc.hello.config.MongoCommandMetrics.SlowQuery;
+
+@ExtendWith(MockitoExtension.class)
+public class MongoCommandMetricsTest {
+
+    @Mock
+    private ObjectProvider<MongoClient> mongoClient;
+
+    private SimpleMeterRegistry meterRegistry;
+    private MongoCommandMetrics mongoCommandMetrics;
+
+    private static final BsonDocument FIND = BsonDocument.parse(
+        "{find: 'rides', filter: {driverId: 'driver1', price: {$lte: 50}, status: {$in: ['SCHEDULED', 'IN_PROGRESS']}}, "
+            + "limit: 50, $db: 'test', lsid: {id: 1}}");
+    // the driver passes the listener the raw bytes of the response
+    private static final RawBsonDocument FIND_RESPONSE = RawBsonDocument.parse(
+        "{cursor: {id: 0, ns: 'test.rides', firstBatch: [{_id: 1}, {_id: 2}]}, ok: 1}");
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        mongoCommandMetrics = new MongoCommandMetrics(mongoClient, meterRegistry, Duration.ofMillis(100), 2,
+            Duration.ofMinutes(10), true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mongoCommandMetrics.shutdown();
+    }
+
+    private void run(int requestId, BsonDocument command, BsonDocument response, long millis) {
+        String commandName = command.getFirstKey();
+        CommandStartedEvent started = mock(CommandStartedEvent.class);
+        when(started.getRequestId()).thenReturn(requestId);
+        when(started.getCommandName()).thenReturn(commandName);
+        when(started.getDatabaseName()).thenReturn("test");
+        when(started.getCommand()).thenReturn(command);
+
+        CommandSucceededEvent succeeded = mock(CommandSucceededEvent.class);
+        when(succeeded.getRequestId()).thenReturn(requestId);
+        when(succeeded.getCommandName()).thenReturn(commandName);
+        when(succeeded.getResponse()).thenReturn(response);
+        when(succeeded.getElapsedTime(TimeUnit.NANOSECONDS)).thenReturn(TimeUnit.MILLISECONDS.toNanos(millis));
+
+        mongoCommandMetrics.commandStarted(started);
+        mongoCommandMetrics.commandSucceeded(succeeded);
+    }
+
+    @Test
+    void testCommandSucceeded_RecordsLatencyAndDocumentsPerCollection() {
+        run(1, FIND, FIND_RESPONSE, 5);
+
+        assertEquals(1, meterRegistry.get("mongodb.command")
+            .tags("command", "find", "collection", "rides", "status", "success").timer().count());
+        assertEquals(2.0, meterRegistry.get("mongodb.command.documents")
+            .tags("command", "find", "collection", "rides").summary().totalAmount());
+        assertEquals(FIND_RESPONSE.getByteBuffer().remaining(),
+            meterRegistry.get("mongodb.command.response.size").summary().totalAmount());
+        assertTrue(mongoCommandMetrics.slowQueries().isEmpty());
+    }
+
+    @Test
+    void testCommandSucceeded_SlowQueryKeptWithItsFilterShape() {
+        run(1, FIND, FIND_RESPONSE, 250);
+
+        List<SlowQuery> slowQueries = mongoCommandMetrics.slowQueries();
+        assertEquals(1, slowQueries.size());
+        assertEquals("rides", slowQueries.get(0).collection());
+        assertEquals(250, slowQueries.get(0).durationMillis());
+        assertEquals(BsonDocument.parse("{driverId: '?', price: {$lte: '?'}, status: {$in: '?'}}"),
+            BsonDocument.parse(slowQueries.get(0).filterShape()));
+    }
+
+    @Test
+    void testCommandSucceeded_KeepsOnlyTheLastSlowQueries() {
+        BsonDocument update = BsonDocument.parse(
+            "{update: 'ride_passengers', updates: [{q: {rideId: 'ride1'}, u: {$set: {status: 'CANCELLED'}}}], $db: 'test'}");
+        BsonDocument count = BsonDocument.parse("{count: 'reviews', query: {driverId: 'driver1'}, $db: 'test'}");
+
+        run(1, FIND, FIND_RESPONSE, 150);
+        run(2, update, BsonDocument.parse("{n: 1, ok: 1}"), 150);
+        run(3, count, BsonDocument.parse("{n: 7, ok: 1}"), 150);
+
+        List<SlowQuery> slowQueries = mongoCommandMetrics.slowQueries();
+        assertEquals(2, slowQueries.size());
+        assertEquals("ride_passengers", slowQueries.get(0).collection());
+        assertEquals("{\"rideId\": \"?\"}", slowQueries.get(0).filterShape());
+        assertEquals("reviews", slowQueries.get(1).collection());
+        assertEquals(7, slowQueries.get(1).documents());
+    }
+}
@@ -0,0 +1,86 @@
+package ro.unibuc.hello.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionId;
+import com.mongodb.connection.ConnectionPoolSettings;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.ConnectionCheckOutFailedEvent;
+import com.mongodb.event.ConnectionCheckOutStartedEvent;
+import com.mongodb.event.ConnectionCheckedInEvent;
+import com.mongodb.event.ConnectionCheckedOutEvent;
+import com.mongodb.event.ConnectionCreatedEvent;
+import com.mongodb.event.ConnectionPoolCreatedEvent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class MongoPoolMetricsTest {
+
+    private static final ServerId SERVER = new ServerId(new ClusterId(), new ServerAddress("localhost", 27017));
+
+    private SimpleMeterRegistry meterRegistry;
+    private MongoPoolMetrics mongoPoolMetrics;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        mongoPoolMetrics = new MongoPoolMetrics(meterRegistry);
+        mongoPoolMetrics.connectionPoolCreated(new ConnectionPoolCreatedEvent(SERVER,
+            ConnectionPoolSettings.builder().minSize(2).maxSize(4).build()));
+    }
+
+    private double connections(String state) {
+        return meterRegistry.get("mongodb.pool.connections").tag("state", state).gauge().value();
+    }
+
+    @Test
+    void testCheckout_CountsInUseAndIdleConnections() {
+        ConnectionId first = new ConnectionId(SERVER, 1, null);
+        ConnectionId second = new ConnectionId(SERVER, 2, null);
+        mongoPoolMetrics.connectionCreated(new ConnectionCreatedEvent(first));
+        mongoPoolMetrics.connectionCreated(new ConnectionCreatedEvent(second));
+
+        mongoPoolMetrics.connectionCheckOutStarted(new ConnectionCheckOutStartedEvent(SERVER, 1));
+        assertEquals(1.0, meterRegistry.get("mongodb.pool.waiting").gauge().value());
+
+        mongoPoolMetrics.connectionCheckedOut(new ConnectionCheckedOutEvent(first, 1, TimeUnit.MILLISECONDS.toNanos(3)));
+        assertEquals(1.0, connections("in_use"));
+        assertEquals(1.0, connections("idle"));
+        assertEquals(0.0, meterRegistry.get("mongodb.pool.waiting").gauge().value());
+        assertEquals(1, meterRegistry.get("mongodb.pool.checkout.wait").timer().count());
+
+        mongoPoolMetrics.connectionCheckedIn(new ConnectionCheckedInEvent(first, 1));
+        assertEquals(0.0, connections("in_use"));
+        assertEquals(2.0, connections("idle"));
+        assertEquals(4.0, meterRegistry.get("mongodb.pool.max").gauge().value());
+    }
+
+    @Test
+    void testCheckoutFailed_CountsTimeouts() {
+        mongoPoolMetrics.connectionCheckOutStarted(new ConnectionCheckOutStartedEvent(SERVER, 1));
+        mongoPoolMetrics.connectionCheckOutFailed(new ConnectionCheckOutFailedEvent(SERVER, 1,
+            ConnectionCheckOutFailedEvent.Reason.TIMEOUT, TimeUnit.SECONDS.toNanos(2)));
+
+        assertEquals(1.0, meterRegistry.get("mongodb.pool.checkout.failures").tag("reason", "timeout").counter().count());
+        assertEquals(0.0, meterRegistry.get("mongodb.pool.waiting").gauge().value());
+    }
+
+    @Test
+    void testAwaitMinSize_WaitsForTheMinSize() throws Exception {
+        mongoPoolMetrics.connectionCreated(new ConnectionCreatedEvent(new ConnectionId(SERVER, 1, null)));
+        assertFalse(mongoPoolMetrics.awaitMinSize(Duration.ofMillis(100)));
+
+        mongoPoolMetrics.connectionCreated(new ConnectionCreatedEvent(new ConnectionId(SERVER, 2, null)));
+        assertTrue(mongoPoolMetrics.awaitMinSize(Duration.ofMillis(100)));
+    }
+}
@@ -0,0 +1,141 @@
+package ro.unibuc.hello.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ro.unibuc.hello.enums.RideStatus;
+import ro.unibuc.hello.model.Review;
+import ro.unibuc.hello.model.Ride;
+import ro.unibuc.hello.repository.ReviewRepository;
+import ro.unibuc.hello.repository.RideRepository;
+
+// The /reactive endpoints read through the reactive driver what the blocking repositories wrote
+@AutoConfigureMockMvc
+@Testcontainers
+@SpringBootTest
+@ActiveProfiles("reactive")
+@Tag("IntegrationTest")
+public class ReactiveControllerIntegrationTest {
+
+    @Container
+    public static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:6.0.20")
+            .withExposedPorts(27017)
+            .withSharding();
+
+    @BeforeAll
+    public static void startContainer() {
+        mongoDBContainer.start();
+    }
+
+    @AfterAll
+    public static void stopContainer() {
+        mongoDBContainer.stop();
+    }
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        final String MONGO_URL = "mongodb://localhost:";
+        final String PORT = String.valueOf(mongoDBContainer.getMappedPort(27017));
+
+        registry.add("mongodb.connection.url", () -> MONGO_URL + PORT);
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private RideRepository rideRepository;
+
+    @Autowired
+    private ReviewRepository reviewRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private static final Instant DAY = Instant.parse("2025-05-01T00:00:00Z");
+
+    @BeforeEach
+    void setUp() {
+        rideRepository.deleteAll();
+        reviewRepository.deleteAll();
+    }
+
+    private String streamed(String url) throws Exception {
+        MvcResult result = mockMvc.perform(get(url).accept(NdjsonResponses.APPLICATION_NDJSON_VALUE))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        return mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(NdjsonResponses.APPLICATION_NDJSON_VALUE))
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    @Test
+    void getAllRides_StreamsOneRidePerLine() throws Exception {
+        rideRepository.saveAll(List.of(
+            new Ride("driver1", "Bucharest", "Cluj", DAY.plusSeconds(3600), DAY.plusSeconds(7200), 50, 3, "B123XYZ"),
+            new Ride("driver2", "Cluj", "Iasi", DAY.plusSeconds(7200), DAY.plusSeconds(10800), 60, 4, "CJ01ABC")));
+
+        String[] lines = streamed("/reactive/rides").split("\n");
+
+        assertEquals(2, lines.length);
+        assertEquals("driver1", objectMapper.readTree(lines[0]).get("driverId").asText());
+        assertEquals("driver2", objectMapper.readTree(lines[1]).get("driverId").asText());
+    }
+
+    @Test
+    void getRidesByDate_OnlyScheduledRidesOfThatDay() throws Exception {
+        Ride cancelled = new Ride("driver2", "Cluj", "Iasi", DAY.plusSeconds(7200), DAY.plusSeconds(10800), 60, 4, "CJ01ABC");
+        cancelled.setStatus(RideStatus.CANCELLED);
+        rideRepository.saveAll(List.of(
+            new Ride("driver1", "Bucharest", "Cluj", DAY.plusSeconds(3600), DAY.plusSeconds(7200), 50, 3, "B123XYZ"),
+            cancelled,
+            new Ride("driver3", "Iasi", "Brasov", DAY.plusSeconds(90000), DAY.plusSeconds(93600), 40, 2, "IS02DEF")));
+
+        String[] lines = streamed("/reactive/rides/by-date?date=" + DAY.plusSeconds(60)).split("\n");
+
+        assertEquals(1, lines.length);
+        assertEquals("Bucharest", objectMapper.readTree(lines[0]).get("startLocation").asText());
+    }
+
+    @Test
+    void getReviewsByDriver_AsJsonArray() throws Exception {
+        reviewRepository.saveAll(List.of(
+            new Review("reviewer1", "driver1", "ride1", 5, "Great"),
+            new Review("reviewer2", "driver1", "ride2", 4, "Good"),
+            new Review("reviewer3", "driver2", "ride3", 3, "Ok")));
+
+        MvcResult result = mockMvc.perform(get("/reactive/reviews/by-driver/driver1").accept(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2));
+    }
+}
@@ -1,11 +1,14 @@
 package ro.unibuc.hello.controller;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 
 import static org.hamcrest.Matchers.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -22,6 +25,7 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.http.MediaType;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -129,7 +133,7 @@ public class RideControllerIntegrationTest {
     }
 
     private void setupValidDriverAndVehicle() {
-        User driver = new User("John", "Doe", "john@example.com", "0712345678", List.of(Role.DRIVER));
+        User driver = new User("John", "Doe", "john.doe@example.com", "0712345679", List.of(Role.DRIVER));
         userRepository.save(driver);
         
         Vehicle vehicle = new Vehicle("B123XYZ", "Toyota", "Corolla", "driver123");
@@ -249,6 +253,29 @@ public class RideControllerIntegrationTest {
                 .andExpect(jsonPath("$[1].startLocation").value("Cluj"));
     }
 
+    @Test
+    void getAllRides_ShouldStreamNdjson_WhenRequested() throws Exception {
+        Ride ride1 = new Ride(savedDriver.getId(), "Bucharest", "Cluj",
+            Instant.now().plusSeconds(3600), Instant.now().plusSeconds(7200), 50, 3, "B123XYZ");
+        Ride ride2 = new Ride(savedDriver.getId(), "Cluj", "Bucharest",
+            Instant.now().plusSeconds(10800), Instant.now().plusSeconds(14400), 60, 4, "B123XYZ");
+        rideRepository.saveAll(List.of(ride1, ride2));
+
+        MvcResult result = mockMvc.perform(get("/rides").accept("application/x-ndjson"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("Bucharest", objectMapper.readTree(lines[0]).get("startLocation").asText());
+        assertEquals("Cluj", objectMapper.readTree(lines[1]).get("startLocation").asText());
+    }
+
     @Test
     void getRidesByDate_ShouldReturnFilteredRides() throws Exception {
         setupValidDriverAndVehicle();
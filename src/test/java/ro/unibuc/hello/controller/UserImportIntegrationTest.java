@@ -0,0 +1,111 @@
+package ro.unibuc.hello.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.List;
+
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import ro.unibuc.hello.dto.user.UserRequestDTO;
+import ro.unibuc.hello.model.User;
+import ro.unibuc.hello.repository.UserRepository;
+
+@SpringBootTest(properties = "users.import.batch-size=2")
+@AutoConfigureMockMvc
+@Testcontainers
+@Tag("IntegrationTest")
+public class UserImportIntegrationTest {
+
+    @Container
+    public static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:6.0.20")
+            .withExposedPorts(27017)
+            .withSharding();
+
+    @BeforeAll
+    public static void setUp() {
+        mongoDBContainer.start();
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        mongoDBContainer.stop();
+    }
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        final String MONGO_URL = "mongodb://localhost:";
+        final String PORT = String.valueOf(mongoDBContainer.getMappedPort(27017));
+
+        registry.add("mongodb.connection.url", () -> MONGO_URL + PORT);
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    public void cleanUp() {
+        userRepository.deleteAll();
+        userRepository.save(new User("existing", "user", "existing@mail.com", "0700000000", null));
+    }
+
+    @Test
+    public void testImportUsers_ReportsEveryRow() throws Exception {
+        List<UserRequestDTO> rows = List.of(
+            new UserRequestDTO("Ana", "Pop", "ana@mail.com", "0711111111", "secret1"),
+            new UserRequestDTO("Ana", "Again", "ana@mail.com", "0722222222", "secret2"),
+            new UserRequestDTO("Taken", "Mail", "existing@mail.com", "0733333333", "secret3"),
+            new UserRequestDTO("No", "Password", "nopass@mail.com", "0744444444", null),
+            new UserRequestDTO("Dan", "Ionescu", "dan@mail.com", "0755555555", "secret5"));
+
+        mockMvc.perform(post("/users/import")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(rows)))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.imported").value(2))
+            .andExpect(jsonPath("$.rejected").value(3))
+            .andExpect(jsonPath("$.rows[0].status").value("IMPORTED"))
+            .andExpect(jsonPath("$.rows[1].status").value("DUPLICATE_IN_REQUEST"))
+            .andExpect(jsonPath("$.rows[2].status").value("DUPLICATE"))
+            .andExpect(jsonPath("$.rows[2].message").value("Email already exists: existing@mail.com"))
+            .andExpect(jsonPath("$.rows[3].status").value("INVALID"))
+            .andExpect(jsonPath("$.rows[4].status").value("IMPORTED"));
+
+        assertEquals(3, userRepository.count());
+        User imported = userRepository.findByMail("dan@mail.com").orElseThrow();
+        assertTrue(passwordEncoder.matches("secret5", imported.getPasswordHash()));
+    }
+
+    @Test
+    public void testImportUsers_NotAnArray() throws Exception {
+        mockMvc.perform(post("/users/import")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{ \"mail\": \"ana@mail.com\" }"))
+            .andExpect(status().isBadRequest());
+    }
+}
@@ -0,0 +1,118 @@
+package ro.unibuc.hello.repository;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+// Runs explain on the filters issued by the repository methods and fails if any of them plans a COLLSCAN.
+@SpringBootTest
+@Testcontainers
+@Tag("IntegrationTest")
+public class RepositoryIndexesIntegrationTest {
+
+    @Container
+    public static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:6.0.20")
+            .withExposedPorts(27017)
+            .withSharding();
+
+    @BeforeAll
+    public static void setUp() {
+        mongoDBContainer.start();
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        mongoDBContainer.stop();
+    }
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        final String MONGO_URL = "mongodb://localhost:";
+        final String PORT = String.valueOf(mongoDBContainer.getMappedPort(27017));
+
+        registry.add("mongodb.connection.url", () -> MONGO_URL + PORT);
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private static final Instant FROM = Instant.parse("2025-04-01T00:00:00Z");
+    private static final Instant TO = Instant.parse("2025-04-02T00:00:00Z");
+
+    // collection -> filter, one entry per repository query
+    private static final Map<String, List<Document>> QUERIES = Map.of(
+        "ride_passengers", List.of(
+            // findByRideIdAndPassengerId, booking lookup of the eligibility aggregations
+            new Document("rideId", "r1").append("passengerId", "p1"),
+            // findByRideId
+            new Document("rideId", "r1"),
+            // findFirstOverlappingRideForPassenger ($match stage), overlapping lookup of findBookingEligibility
+            new Document("passengerId", "p1").append("bookingStatus", "BOOKED")
+        ),
+        "reviews", List.of(
+            // findByRideIdAndReviewerId, review lookup of findReviewEligibility
+            new Document("rideId", "r1").append("reviewerId", "u1"),
+            // findByRideId
+            new Document("rideId", "r1"),
+            // findByReviewedId
+            new Document("reviewedId", "u1")
+        ),
+        "rides", List.of(
+            // findByDriverIdAndTimeOverlap
+            new Document("driverId", "d1")
+                .append("departureTime", new Document("$lte", TO))
+                .append("arrivalTime", new Document("$gte", FROM)),
+            // findAllByDepartureDate
+            new Document("departureTime", new Document("$gte", FROM).append("$lt", TO))
+        ),
+        "vehicles", List.of(
+            // existsByLicensePlate, findOneByLicensePlate
+            new Document("licensePlate", "B123XYZ")
+        ),
+        "users", List.of(
+            // findByMail
+            new Document("mail", "john@example.com"),
+            // findByPhoneNumber
+            new Document("phoneNumber", "0712345678")
+        )
+    );
+
+    @Test
+    public void testRepositoryQueriesUseIndexes() {
+        QUERIES.forEach((collection, filters) -> {
+            for (Document filter : filters) {
+                Document explain = mongoTemplate.getCollection(collection).find(filter).explain();
+                Object queryPlanner = explain.get("queryPlanner");
+
+                assertFalse(containsCollScan(queryPlanner),
+                    "COLLSCAN on " + collection + " for " + filter.toJson() + ": " + explain.toJson());
+            }
+        });
+    }
+
+    private static boolean containsCollScan(Object node) {
+        if (node instanceof Map<?, ?> map) {
+            if ("COLLSCAN".equals(map.get("stage"))) {
+                return true;
+            }
+            return map.values().stream().anyMatch(RepositoryIndexesIntegrationTest::containsCollScan);
+        }
+        if (node instanceof List<?> list) {
+            return list.stream().anyMatch(RepositoryIndexesIntegrationTest::containsCollScan);
+        }
+        return false;
+    }
+}
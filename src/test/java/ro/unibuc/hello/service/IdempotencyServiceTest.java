@@ -0,0 +1,223 @@
+package ro.unibuc.hello.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ro.unibuc.hello.model.IdempotencyRecord;
+import ro.unibuc.hello.repository.IdempotencyRecordRepository;
+
+@ExtendWith(MockitoExtension.class)
+public class IdempotencyServiceTest {
+
+    @Mock
+    private IdempotencyRecordRepository idempotencyRecordRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private IdempotencyService idempotencyService;
+
+    private static final Map<String, String> REQUEST = Map.of("rideId", "ride1", "passengerId", "user1");
+    private static final Instant NOW = Instant.parse("2025-05-01T00:00:00Z");
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        Clock clock = Clock.fixed(NOW, ZoneOffset.UTC);
+        idempotencyService = new IdempotencyService(idempotencyRecordRepository, new ObjectMapper(), meterRegistry,
+            clock, Duration.ofHours(24), Duration.ofSeconds(60), 100);
+    }
+
+    private static String fingerprint(Object request) throws Exception {
+        byte[] json = new ObjectMapper().writeValueAsString(request).getBytes(StandardCharsets.UTF_8);
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(json));
+    }
+
+    private static IdempotencyRecord completed(String id, Object request, int status, String body) throws Exception {
+        IdempotencyRecord record = new IdempotencyRecord(id, fingerprint(request), NOW.plus(Duration.ofHours(24)), null);
+        record.setStatus(status);
+        record.setBody(body);
+        return record;
+    }
+
+    @Test
+    void testExecute_WithoutKeyAlwaysRuns() {
+        AtomicInteger runs = new AtomicInteger();
+
+        idempotencyService.execute("bookings", null, REQUEST, () -> ResponseEntity.status(HttpStatus.CREATED).body(runs.incrementAndGet()));
+        idempotencyService.execute("bookings", "", REQUEST, () -> ResponseEntity.status(HttpStatus.CREATED).body(runs.incrementAndGet()));
+
+        assertEquals(2, runs.get());
+        verify(idempotencyRecordRepository, never()).insert(any(IdempotencyRecord.class));
+    }
+
+    @Test
+    void testExecute_RetryIsReplayedWithoutRunning() {
+        AtomicInteger runs = new AtomicInteger();
+
+        ResponseEntity<?> first = idempotencyService.execute("rides", "key1", REQUEST,
+            () -> ResponseEntity.status(HttpStatus.CREATED).body(Map.of("run", runs.incrementAndGet())));
+        ResponseEntity<?> retry = idempotencyService.execute("rides", "key1", REQUEST,
+            () -> ResponseEntity.status(HttpStatus.CREATED).body(Map.of("run", runs.incrementAndGet())));
+
+        assertEquals(1, runs.get());
+        assertEquals(HttpStatus.CREATED, retry.getStatusCode());
+        assertEquals(first.getBody(), retry.getBody());
+        assertEquals("true", retry.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        assertNull(first.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        verify(idempotencyRecordRepository, times(1)).insert(any(IdempotencyRecord.class));
+        verify(idempotencyRecordRepository, times(1)).save(any(IdempotencyRecord.class));
+    }
+
+    @Test
+    void testExecute_KeyReusedWithAnotherRequestIsRefused() {
+        idempotencyService.execute("rides", "key1", REQUEST, () -> ResponseEntity.status(HttpStatus.CREATED).build());
+
+        ResponseEntity<?> reused = idempotencyService.execute("rides", "key1", Map.of("rideId", "ride2"),
+            () -> ResponseEntity.status(HttpStatus.CREATED).build());
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, reused.getStatusCode());
+        assertEquals(1.0, meterRegistry.get("idempotency.requests").tag("outcome", "mismatch").counter().count());
+    }
+
+    @Test
+    void testExecute_ConcurrentDuplicatesRunOnce() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        CompletableFuture<ResponseEntity<?>> first = CompletableFuture.supplyAsync(() ->
+            idempotencyService.execute("bookings", "key1", REQUEST, () -> {
+                runs.incrementAndGet();
+                running.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return ResponseEntity.status(HttpStatus.CREATED).body("created");
+            }));
+        running.await(5, TimeUnit.SECONDS);
+
+        CompletableFuture<ResponseEntity<?>> duplicate = CompletableFuture.supplyAsync(() ->
+            idempotencyService.execute("bookings", "key1", REQUEST, () -> {
+                runs.incrementAndGet();
+                return ResponseEntity.status(HttpStatus.CREATED).body("created again");
+            }));
+        release.countDown();
+
+        assertEquals("created", first.get(5, TimeUnit.SECONDS).getBody());
+        ResponseEntity<?> collapsed = duplicate.get(5, TimeUnit.SECONDS);
+        assertEquals(HttpStatus.CREATED, collapsed.getStatusCode());
+        assertEquals("created", collapsed.getBody());
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    void testExecute_StoredResponseOfAnotherNodeIsReplayed() throws Exception {
+        IdempotencyRecord pending = new IdempotencyRecord("reviews:key1", fingerprint(REQUEST),
+            NOW.plus(Duration.ofHours(24)), NOW.plusSeconds(30));
+        when(idempotencyRecordRepository.insert(any(IdempotencyRecord.class)))
+            .thenThrow(new DuplicateKeyException("duplicate"));
+        when(idempotencyRecordRepository.findById("reviews:key1")).thenReturn(Optional.of(pending));
+
+        ResponseEntity<?> running = idempotencyService.execute("reviews", "key1", REQUEST,
+            () -> ResponseEntity.status(HttpStatus.CREATED).build());
+        assertEquals(HttpStatus.CONFLICT, running.getStatusCode());
+
+        // the other node finished meanwhile
+        when(idempotencyRecordRepository.findById("reviews:key1"))
+            .thenReturn(Optional.of(completed("reviews:key1", REQUEST, HttpStatus.BAD_REQUEST.value(), "Rating must be between 1 and 5.")));
+
+        ResponseEntity<?> replayed = idempotencyService.execute("reviews", "key1", REQUEST,
+            () -> ResponseEntity.status(HttpStatus.CREATED).build());
+        assertEquals(HttpStatus.BAD_REQUEST, replayed.getStatusCode());
+        assertEquals("Rating must be between 1 and 5.", replayed.getBody());
+        assertEquals("true", replayed.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+    }
+
+    @Test
+    void testExecute_KeyStoredByAnotherNodeReusedWithAnotherRequestIsRefused() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        when(idempotencyRecordRepository.insert(any(IdempotencyRecord.class)))
+            .thenThrow(new DuplicateKeyException("duplicate"));
+        when(idempotencyRecordRepository.findById("bookings:key1"))
+            .thenReturn(Optional.of(completed("bookings:key1", Map.of("rideId", "ride2"), HttpStatus.CREATED.value(), null)));
+
+        ResponseEntity<?> reused = idempotencyService.execute("bookings", "key1", REQUEST, () -> {
+            runs.incrementAndGet();
+            return ResponseEntity.status(HttpStatus.CREATED).build();
+        });
+
+        assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, reused.getStatusCode());
+        assertEquals(0, runs.get());
+        assertEquals(1.0, meterRegistry.get("idempotency.requests").tag("outcome", "mismatch").counter().count());
+    }
+
+    @Test
+    void testExecute_PendingKeyPastItsLeaseIsTakenOver() throws Exception {
+        Instant expiredLease = NOW.minusSeconds(1);
+        IdempotencyRecord abandoned = new IdempotencyRecord("rides:key1", fingerprint(REQUEST),
+            NOW.plus(Duration.ofHours(23)), expiredLease);
+        when(idempotencyRecordRepository.insert(any(IdempotencyRecord.class)))
+            .thenThrow(new DuplicateKeyException("duplicate"));
+        when(idempotencyRecordRepository.findById("rides:key1")).thenReturn(Optional.of(abandoned));
+        when(idempotencyRecordRepository.takeOver("rides:key1", expiredLease, fingerprint(REQUEST),
+            NOW.plusSeconds(60), NOW.plus(Duration.ofHours(24)))).thenReturn(1L);
+
+        ResponseEntity<?> response = idempotencyService.execute("rides", "key1", REQUEST,
+            () -> ResponseEntity.status(HttpStatus.CREATED).body("created"));
+
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertNull(response.getHeaders().getFirst(IdempotencyService.REPLAYED_HEADER));
+        verify(idempotencyRecordRepository, times(1)).save(any(IdempotencyRecord.class));
+    }
+
+    @Test
+    void testExecute_ServerErrorIsNotKept() {
+        AtomicInteger runs = new AtomicInteger();
+
+        ResponseEntity<?> failed = idempotencyService.execute("rides", "key1", REQUEST, () -> {
+            runs.incrementAndGet();
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error creating ride: timeout");
+        });
+        ResponseEntity<?> retried = idempotencyService.execute("rides", "key1", REQUEST, () -> {
+            runs.incrementAndGet();
+            return ResponseEntity.status(HttpStatus.CREATED).build();
+        });
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, failed.getStatusCode());
+        assertEquals(HttpStatus.CREATED, retried.getStatusCode());
+        assertEquals(2, runs.get());
+        verify(idempotencyRecordRepository, times(1)).deleteById("rides:key1");
+    }
+}
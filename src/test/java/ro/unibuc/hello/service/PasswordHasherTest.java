@@ -0,0 +1,90 @@
+package ro.unibuc.hello.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ro.unibuc.hello.exceptions.user.PasswordHashingUnavailableException;
+
+@ExtendWith(MockitoExtension.class)
+public class PasswordHasherTest {
+
+    @Mock
+    private PasswordEncoder passwordEncoder;
+
+    private SimpleMeterRegistry meterRegistry;
+    private PasswordHasher passwordHasher;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // one hashing thread and room for one waiting hash
+        passwordHasher = new PasswordHasher(passwordEncoder, meterRegistry, 1, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        passwordHasher.shutdown();
+    }
+
+    @Test
+    void testHash_RunsTheEncoderAndRecordsTheTime() {
+        when(passwordEncoder.encode("secret")).thenReturn("hash");
+
+        assertEquals("hash", passwordHasher.hash("secret"));
+        assertEquals(1, meterRegistry.get("password.hashing.time").timer().count());
+    }
+
+    @Test
+    void testHashAll_KeepsTheOrderAndWaitsForTheThreads() {
+        when(passwordEncoder.encode("first")).thenReturn("first-hash");
+        when(passwordEncoder.encode("second")).thenReturn("second-hash");
+        when(passwordEncoder.encode("third")).thenReturn("third-hash");
+
+        // three hashes on one thread with room for one waiting, none of them is rejected
+        assertEquals(List.of("first-hash", "second-hash", "third-hash"), passwordHasher.hashAll(List.of("first", "second", "third")));
+        assertEquals(3, meterRegistry.get("password.hashing.time").timer().count());
+        assertEquals(0.0, meterRegistry.get("password.hashing.rejected").counter().count());
+    }
+
+    @Test
+    void testHash_RejectedWhenTheQueueIsFull() throws Exception {
+        CountDownLatch hashing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(passwordEncoder.encode("first")).thenAnswer(invocation -> {
+            hashing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return "first-hash";
+        });
+        when(passwordEncoder.encode("second")).thenReturn("second-hash");
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> passwordHasher.hash("first"));
+        assertTrue(hashing.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> passwordHasher.hash("second"));
+        while (meterRegistry.get("password.hashing.queue.depth").gauge().value() < 1) {
+            Thread.onSpinWait();
+        }
+
+        assertThrows(PasswordHashingUnavailableException.class, () -> passwordHasher.hash("third"));
+        assertEquals(1.0, meterRegistry.get("password.hashing.rejected").counter().count());
+
+        release.countDown();
+        assertEquals("first-hash", first.get(5, TimeUnit.SECONDS));
+        assertEquals("second-hash", second.get(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,149 @@
+package ro.unibuc.hello.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import ro.unibuc.hello.dto.review.ReviewRequestDTO;
+import ro.unibuc.hello.enums.RideStatus;
+import ro.unibuc.hello.enums.Role;
+import ro.unibuc.hello.model.Ride;
+import ro.unibuc.hello.model.RideBooking;
+import ro.unibuc.hello.model.User;
+import ro.unibuc.hello.repository.ReviewRepository;
+import ro.unibuc.hello.repository.RideBookingRepository;
+import ro.unibuc.hello.repository.RideRepository;
+import ro.unibuc.hello.repository.UserRepository;
+
+// Posts many reviews for one driver in parallel and checks that no rating is lost.
+@SpringBootTest
+@Testcontainers
+@Tag("IntegrationTest")
+public class ReviewConcurrencyIntegrationTest {
+
+    private static final int REVIEWERS = 500;
+    private static final int THREADS = 32;
+
+    @Container
+    public static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:6.0.20")
+            .withExposedPorts(27017)
+            .withSharding();
+
+    @BeforeAll
+    public static void setUp() {
+        mongoDBContainer.start();
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        mongoDBContainer.stop();
+    }
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        final String MONGO_URL = "mongodb://localhost:";
+        final String PORT = String.valueOf(mongoDBContainer.getMappedPort(27017));
+
+        registry.add("mongodb.connection.url", () -> MONGO_URL + PORT);
+    }
+
+    @Autowired
+    private ReviewService reviewService;
+
+    @Autowired
+    private ReviewRepository reviewRepository;
+
+    @Autowired
+    private RideRepository rideRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RideBookingRepository rideBookingRepository;
+
+    private User driver;
+    private Ride ride;
+    private List<User> reviewers;
+
+    @BeforeEach
+    public void cleanUpAndAddTestData() {
+        reviewRepository.deleteAll();
+        rideBookingRepository.deleteAll();
+        userRepository.deleteAll();
+        rideRepository.deleteAll();
+
+        driver = userRepository.save(new User("Driver", "One", "driver@mail.com", "0700000000", Collections.singletonList(Role.DRIVER)));
+
+        Ride completedRide = new Ride(driver.getId(), "Bucuresti", "Cluj",
+            Instant.now().minusSeconds(7200), Instant.now().minusSeconds(3600), 50, REVIEWERS, "B-123-ABC");
+        completedRide.setStatus(RideStatus.COMPLETED);
+        ride = rideRepository.save(completedRide);
+
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < REVIEWERS; i++) {
+            users.add(new User("reviewer", "no" + i, "reviewer" + i + "@mail.com", "07" + String.format("%08d", i + 1), null));
+        }
+        reviewers = userRepository.saveAll(users);
+
+        List<RideBooking> bookings = new ArrayList<>();
+        for (User reviewer : reviewers) {
+            bookings.add(new RideBooking(ride.getId(), reviewer.getId(), Instant.now()));
+        }
+        rideBookingRepository.saveAll(bookings);
+    }
+
+    @Test
+    public void testParallelReviewsKeepExactTotals() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        int expectedSum = 0;
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < reviewers.size(); i++) {
+            ReviewRequestDTO request = new ReviewRequestDTO();
+            request.setReviewerId(reviewers.get(i).getId());
+            request.setReviewedId(driver.getId());
+            request.setRideId(ride.getId());
+            request.setRating(i % 5 + 1);
+            request.setComment("review " + i);
+            expectedSum += request.getRating();
+
+            futures.add(executor.submit(() -> {
+                start.await();
+                reviewService.createReview(request);
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        User reviewed = userRepository.findById(driver.getId()).get();
+        assertEquals(REVIEWERS, reviewed.getReviewsNumber());
+        assertEquals(expectedSum, reviewed.getRatingsSum());
+        assertEquals((double) expectedSum / REVIEWERS, reviewed.getAvgRating(), 1e-9);
+        assertEquals(REVIEWERS, reviewRepository.findByReviewedId(driver.getId()).size());
+    }
+}
@@ -3,17 +3,24 @@ package ro.unibuc.hello.service;
 import static org.junit.Assert.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.Collections;
 import java.util.Optional;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.dao.DuplicateKeyException;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
@@ -25,12 +32,13 @@ import ro.unibuc.hello.enums.Role;
 import ro.unibuc.hello.exceptions.review.InvalidReviewException;
 import ro.unibuc.hello.model.Ride;
 import ro.unibuc.hello.model.RideBooking;
+import ro.unibuc.hello.model.RideEligibility;
 import ro.unibuc.hello.model.Review;
 import ro.unibuc.hello.model.User;
-import ro.unibuc.hello.repository.RideBookingRepository;
 import ro.unibuc.hello.repository.RideRepository;
 import ro.unibuc.hello.repository.ReviewRepository;
 import ro.unibuc.hello.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 import java.time.Instant;
 
@@ -49,9 +57,8 @@ public class ReviewServiceTest {
     private UserRepository userRepository;
     
     @Mock
-    private RideBookingRepository rideBookingRepository;
+    private UserCache userCache;
     
-    @InjectMocks
     private ReviewService reviewService;
     
     private ReviewRequestDTO validReviewRequest;
@@ -62,6 +69,9 @@ public class ReviewServiceTest {
     
     @BeforeEach
     void setUp() {
+        reviewService = new ReviewService(reviewRepository, rideRepository, userRepository, userCache,
+                Executors.newVirtualThreadPerTaskExecutor(), new SimpleMeterRegistry());
+
         validReviewRequest = new ReviewRequestDTO();
         validReviewRequest.setReviewerId("reviewer1");
         validReviewRequest.setReviewedId("driver1");
@@ -85,14 +95,11 @@ public class ReviewServiceTest {
     @Test
     void testCreateReview_validReview() {
        
-        when(userRepository.existsById(validReviewRequest.getReviewerId())).thenReturn(true);
-        when(userRepository.existsById(validReviewRequest.getReviewedId())).thenReturn(true);
-        when(rideRepository.findById(validReviewRequest.getRideId())).thenReturn(Optional.of(ride));
-        when(rideBookingRepository.findByRideIdAndPassengerId(validReviewRequest.getRideId(), validReviewRequest.getReviewerId()))
-                .thenReturn(Optional.of(rideBooking));
-        when(reviewRepository.findByRideIdAndReviewerId(validReviewRequest.getRideId(), validReviewRequest.getReviewerId()))
-                .thenReturn(Optional.empty());
-        when(userRepository.findById(validReviewRequest.getReviewedId())).thenReturn(Optional.of(reviewed));
+        when(userCache.existsById(validReviewRequest.getReviewerId())).thenReturn(true);
+        when(userCache.existsById(validReviewRequest.getReviewedId())).thenReturn(true);
+        when(rideRepository.findReviewEligibility(validReviewRequest.getRideId(), validReviewRequest.getReviewerId()))
+                .thenReturn(Optional.of(new RideEligibility(ride, rideBooking)));
+        when(userRepository.addRating(validReviewRequest.getReviewedId(), validReviewRequest.getRating())).thenReturn(1L);
 
  
         ReviewResponseDTO response = reviewService.createReview(validReviewRequest);
@@ -107,18 +114,22 @@ public class ReviewServiceTest {
         assertNotNull(response.getCreatedAt());
 
   
-        verify(userRepository, times(1)).existsById(validReviewRequest.getReviewerId());
-        verify(userRepository, times(1)).existsById(validReviewRequest.getReviewedId());
-        verify(rideRepository, times(1)).findById(validReviewRequest.getRideId());
-        verify(rideBookingRepository, times(1)).findByRideIdAndPassengerId(validReviewRequest.getRideId(), validReviewRequest.getReviewerId());
-        verify(reviewRepository, times(1)).findByRideIdAndReviewerId(validReviewRequest.getRideId(), validReviewRequest.getReviewerId());
-        verify(userRepository, times(1)).findById(validReviewRequest.getReviewedId());
+        verify(userCache, times(1)).existsById(validReviewRequest.getReviewerId());
+        verify(userCache, times(1)).existsById(validReviewRequest.getReviewedId());
+        verify(rideRepository, times(1)).findReviewEligibility(validReviewRequest.getRideId(), validReviewRequest.getReviewerId());
+        verify(rideRepository, never()).findById(any());
+        verify(reviewRepository, never()).findByRideIdAndReviewerId(any(), any());
         verify(reviewRepository, times(1)).save(any(Review.class));
+        verify(userRepository, times(1)).addRating(validReviewRequest.getReviewedId(), validReviewRequest.getRating());
+        verify(userCache, times(1)).invalidate(validReviewRequest.getReviewedId());
+        verify(userRepository, never()).save(any());
     }
 
     @Test
     void testCreateReview_reviewerDoesNotExist() {
-        when(userRepository.existsById(validReviewRequest.getReviewerId())).thenReturn(false);
+        when(userCache.existsById(validReviewRequest.getReviewerId())).thenReturn(false);
+        // looked up at the same time, the call may be cancelled before it runs
+        lenient().when(userCache.existsById(validReviewRequest.getReviewedId())).thenReturn(true);
 
     
         InvalidReviewException exception = assertThrows(InvalidReviewException.class, () -> reviewService.createReview(validReviewRequest));
@@ -127,8 +138,8 @@ public class ReviewServiceTest {
 
     @Test
     void testCreateReview_reviewedDoesNotExist() {
-        when(userRepository.existsById(validReviewRequest.getReviewerId())).thenReturn(true);
-        when(userRepository.existsById(validReviewRequest.getReviewedId())).thenReturn(false);
+        when(userCache.existsById(validReviewRequest.getReviewerId())).thenReturn(true);
+        when(userCache.existsById(validReviewRequest.getReviewedId())).thenReturn(false);
 
 
         InvalidReviewException exception = assertThrows(InvalidReviewException.class, () -> reviewService.createReview(validReviewRequest));
@@ -137,9 +148,9 @@ public class ReviewServiceTest {
 
     @Test
     void testCreateReview_rideDoesNotExist() {
-        when(userRepository.existsById(validReviewRequest.getReviewerId())).thenReturn(true);
-        when(userRepository.existsById(validReviewRequest.getReviewedId())).thenReturn(true);
-        when(rideRepository.findById(validReviewRequest.getRideId())).thenReturn(Optional.empty());
+        when(userCache.existsById(validReviewRequest.getReviewerId())).thenReturn(true);
+        when(userCache.existsById(validReviewRequest.getReviewedId())).thenReturn(true);
+        when(rideRepository.findReviewEligibility(validReviewRequest.getRideId(), validReviewRequest.getReviewerId())).thenReturn(Optional.empty());
 
      
         InvalidReviewException exception = assertThrows(InvalidReviewException.class, () -> reviewService.createReview(validReviewRequest));
@@ -150,9 +161,10 @@ public class ReviewServiceTest {
     void testCreateReview_rideNotCompleted() {
         ride.setStatus(RideStatus.SCHEDULED);
 
-        when(userRepository.existsById(validReviewRequest.getReviewerId())).thenReturn(true);
-        when(userRepository.existsById(validReviewRequest.getReviewedId())).thenReturn(true);
-        when(rideRepository.findById(validReviewRequest.getRideId())).thenReturn(Optional.of(ride));
+        when(userCache.existsById(validReviewRequest.getReviewerId())).thenReturn(true);
+        when(userCache.existsById(validReviewRequest.getReviewedId())).thenReturn(true);
+        when(rideRepository.findReviewEligibility(validReviewRequest.getRideId(), validReviewRequest.getReviewerId()))
+                .thenReturn(Optional.of(new RideEligibility(ride, rideBooking)));
 
     
         InvalidReviewException exception = assertThrows(InvalidReviewException.class, () -> reviewService.createReview(validReviewRequest));
@@ -161,11 +173,10 @@ public class ReviewServiceTest {
 
     @Test
     void testCreateReview_reviewerNotPassenger() {
-        when(userRepository.existsById(validReviewRequest.getReviewerId())).thenReturn(true);
-        when(userRepository.existsById(validReviewRequest.getReviewedId())).thenReturn(true);
-        when(rideRepository.findById(validReviewRequest.getRideId())).thenReturn(Optional.of(ride));
-        when(rideBookingRepository.findByRideIdAndPassengerId(validReviewRequest.getRideId(), validReviewRequest.getReviewerId()))
-                .thenReturn(Optional.empty());
+        when(userCache.existsById(validReviewRequest.getReviewerId())).thenReturn(true);
+        when(userCache.existsById(validReviewRequest.getReviewedId())).thenReturn(true);
+        when(rideRepository.findReviewEligibility(validReviewRequest.getRideId(), validReviewRequest.getReviewerId()))
+                .thenReturn(Optional.of(new RideEligibility(ride, null)));
 
     
         InvalidReviewException exception = assertThrows(InvalidReviewException.class, () -> reviewService.createReview(validReviewRequest));
@@ -174,17 +185,74 @@ public class ReviewServiceTest {
 
     @Test
     void testCreateReview_reviewerAlreadyReviewed() {
-        when(userRepository.existsById(validReviewRequest.getReviewerId())).thenReturn(true);
-        when(userRepository.existsById(validReviewRequest.getReviewedId())).thenReturn(true);
-        when(rideRepository.findById(validReviewRequest.getRideId())).thenReturn(Optional.of(ride));
-        when(rideBookingRepository.findByRideIdAndPassengerId(validReviewRequest.getRideId(), validReviewRequest.getReviewerId()))
-                .thenReturn(Optional.of(rideBooking));
-        when(reviewRepository.findByRideIdAndReviewerId(validReviewRequest.getRideId(), validReviewRequest.getReviewerId()))
-                .thenReturn(Optional.of(new Review(validReviewRequest.getReviewerId(), validReviewRequest.getReviewedId(), 
-                validReviewRequest.getRideId(), validReviewRequest.getRating(), validReviewRequest.getComment() )));
+        when(userCache.existsById(validReviewRequest.getReviewerId())).thenReturn(true);
+        when(userCache.existsById(validReviewRequest.getReviewedId())).thenReturn(true);
+        when(rideRepository.findReviewEligibility(validReviewRequest.getRideId(), validReviewRequest.getReviewerId()))
+                .thenReturn(Optional.of(new RideEligibility(ride, rideBooking)));
+        when(reviewRepository.save(any(Review.class)))
+                .thenThrow(new DuplicateKeyException("E11000 duplicate key error collection: test.reviews index: ride_reviewer_idx"));
+
+
+        InvalidReviewException exception = assertThrows(InvalidReviewException.class, () -> reviewService.createReview(validReviewRequest));
+        assertEquals("Reviewer already made a review for this ride", exception.getMessage());
+        verify(userRepository, never()).addRating(any(), anyInt());
+    }
+
+    @Test
+    void testCreateReview_existingReviewRejectedBeforeSave() {
+        RideEligibility eligibility = new RideEligibility(ride, rideBooking);
+        eligibility.setReviewed(true);
+
+        when(userCache.existsById(validReviewRequest.getReviewerId())).thenReturn(true);
+        when(userCache.existsById(validReviewRequest.getReviewedId())).thenReturn(true);
+        when(rideRepository.findReviewEligibility(validReviewRequest.getRideId(), validReviewRequest.getReviewerId()))
+                .thenReturn(Optional.of(eligibility));
+
+
+        InvalidReviewException exception = assertThrows(InvalidReviewException.class, () -> reviewService.createReview(validReviewRequest));
+        assertEquals("Reviewer already made a review for this ride", exception.getMessage());
+        verify(reviewRepository, never()).save(any(Review.class));
+    }
+
+    @Test
+    void testCreateReview_existingReviewReportedBeforeTheWrongDriver() {
+        // fails both checks, answered with the message of the check that came first originally
+        Ride otherDriversRide = new Ride("driver2", "startLocation", "endLocation", Instant.now(), Instant.now().plusSeconds(3600), 20, 3, "XYZ123");
+        otherDriversRide.setStatus(RideStatus.COMPLETED);
+        RideEligibility eligibility = new RideEligibility(otherDriversRide, rideBooking);
+        eligibility.setReviewed(true);
 
+        when(userCache.existsById(validReviewRequest.getReviewerId())).thenReturn(true);
+        when(userCache.existsById(validReviewRequest.getReviewedId())).thenReturn(true);
+        when(rideRepository.findReviewEligibility(validReviewRequest.getRideId(), validReviewRequest.getReviewerId()))
+                .thenReturn(Optional.of(eligibility));
 
         InvalidReviewException exception = assertThrows(InvalidReviewException.class, () -> reviewService.createReview(validReviewRequest));
         assertEquals("Reviewer already made a review for this ride", exception.getMessage());
     }
+
+    @Test
+    void testCreateReview_lookupsRunConcurrently() {
+        // every lookup waits for the other two, a sequential createReview would time out on the first one
+        CyclicBarrier allLookupsStarted = new CyclicBarrier(3);
+
+        when(userCache.existsById(validReviewRequest.getReviewerId())).thenAnswer(invocation -> {
+            allLookupsStarted.await(5, TimeUnit.SECONDS);
+            return true;
+        });
+        when(userCache.existsById(validReviewRequest.getReviewedId())).thenAnswer(invocation -> {
+            allLookupsStarted.await(5, TimeUnit.SECONDS);
+            return true;
+        });
+        when(rideRepository.findReviewEligibility(validReviewRequest.getRideId(), validReviewRequest.getReviewerId()))
+                .thenAnswer(invocation -> {
+                    allLookupsStarted.await(5, TimeUnit.SECONDS);
+                    return Optional.of(new RideEligibility(ride, rideBooking));
+                });
+
+        ReviewResponseDTO response = reviewService.createReview(validReviewRequest);
+
+        assertEquals(validReviewRequest.getRideId(), response.getRideId());
+        verify(reviewRepository, times(1)).save(any(Review.class));
+    }
 }
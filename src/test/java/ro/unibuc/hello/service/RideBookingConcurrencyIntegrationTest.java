@@ -0,0 +1,208 @@
+package ro.unibuc.hello.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import ro.unibuc.hello.dto.rideBooking.RideBookingRequestDTO;
+import ro.unibuc.hello.enums.RideBookingStatus;
+import ro.unibuc.hello.enums.RideStatus;
+import ro.unibuc.hello.exceptions.rideBooking.InvalidRideBookingException;
+import ro.unibuc.hello.model.Ride;
+import ro.unibuc.hello.model.User;
+import ro.unibuc.hello.repository.RideBookingRepository;
+import ro.unibuc.hello.repository.RideRepository;
+import ro.unibuc.hello.repository.UserRepository;
+
+// Fires many parallel bookings at one ride and checks that seats are never oversold or given back twice.
+@SpringBootTest
+@Testcontainers
+@Tag("IntegrationTest")
+public class RideBookingConcurrencyIntegrationTest {
+    private static final Logger log = LoggerFactory.getLogger(RideBookingConcurrencyIntegrationTest.class);
+
+    private static final int PASSENGERS = 2000;
+    private static final int SEATS = 50;
+    private static final int THREADS = 64;
+
+    @Container
+    public static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:6.0.20")
+            .withExposedPorts(27017)
+            .withSharding();
+
+    @BeforeAll
+    public static void setUp() {
+        mongoDBContainer.start();
+    }
+
+    @AfterAll
+    public static void tearDown() {
+        mongoDBContainer.stop();
+    }
+
+    @DynamicPropertySource
+    static void setProperties(DynamicPropertyRegistry registry) {
+        final String MONGO_URL = "mongodb://localhost:";
+        final String PORT = String.valueOf(mongoDBContainer.getMappedPort(27017));
+
+        registry.add("mongodb.connection.url", () -> MONGO_URL + PORT);
+    }
+
+    @Autowired
+    private RideBookingService rideBookingService;
+
+    @Autowired
+    private RideService rideService;
+
+    @Autowired
+    private RideRepository rideRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private RideBookingRepository rideBookingRepository;
+
+    private Ride ride;
+    private List<User> passengers;
+
+    @BeforeEach
+    public void cleanUpAndAddTestData() {
+        rideBookingRepository.deleteAll();
+        userRepository.deleteAll();
+        rideRepository.deleteAll();
+
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < PASSENGERS; i++) {
+            users.add(new User("passenger", "no" + i, "passenger" + i + "@example.com", "07" + String.format("%08d", i), null));
+        }
+        passengers = userRepository.saveAll(users);
+
+        ride = rideRepository.save(new Ride("driver1", "Bucuresti", "Cluj",
+            Instant.now().plusSeconds(3600), Instant.now().plusSeconds(7200), 50, SEATS, "B-123-ABC"));
+    }
+
+    @Test
+    public void testParallelBookingsNeverOverbook() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger booked = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (User passenger : passengers) {
+            futures.add(executor.submit(() -> {
+                RideBookingRequestDTO request = new RideBookingRequestDTO();
+                request.setRideId(ride.getId());
+                request.setPassengerId(passenger.getId());
+                request.setCreatedAt(Instant.now());
+
+                start.await();
+                try {
+                    rideBookingService.createRideBooking(request);
+                    booked.incrementAndGet();
+                } catch (InvalidRideBookingException e) {
+                    rejected.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+
+        long startNanos = System.nanoTime();
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        log.info("{} booking attempts on {} threads in {} ms, {} booked, {} rejected",
+            PASSENGERS, THREADS, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), booked.get(), rejected.get());
+
+        assertEquals(SEATS, booked.get());
+        assertEquals(PASSENGERS - SEATS, rejected.get());
+        assertEquals(SEATS, rideBookingRepository.findByRideId(ride.getId()).size());
+        assertEquals(0, rideRepository.findById(ride.getId()).get().getSeatsAvailable());
+    }
+
+    @Test
+    public void testParallelCancelsReleaseTheSeatOnce() throws Exception {
+        User passenger = passengers.get(0);
+        RideBookingRequestDTO request = new RideBookingRequestDTO();
+        request.setRideId(ride.getId());
+        request.setPassengerId(passenger.getId());
+        request.setCreatedAt(Instant.now());
+        rideBookingService.createRideBooking(request);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger cancelled = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    rideBookingService.updateRideBookingStatusToCancelled(ride.getId(), passenger.getId());
+                    cancelled.incrementAndGet();
+                } catch (InvalidRideBookingException e) {
+                    rejected.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        assertEquals(1, cancelled.get());
+        assertEquals(THREADS - 1, rejected.get());
+        assertEquals(SEATS, rideRepository.findById(ride.getId()).get().getSeatsAvailable());
+    }
+
+    @Test
+    public void testCancelledRideKeepsTheSeatsItsBookingsGaveBack() {
+        for (User passenger : passengers.subList(0, 3)) {
+            RideBookingRequestDTO request = new RideBookingRequestDTO();
+            request.setRideId(ride.getId());
+            request.setPassengerId(passenger.getId());
+            request.setCreatedAt(Instant.now());
+            rideBookingService.createRideBooking(request);
+        }
+        rideBookingService.updateRideBookingStatusToCancelled(ride.getId(), passengers.get(0).getId());
+
+        rideService.updateRideStatusToCancelled(ride.getId());
+
+        Ride cancelled = rideRepository.findById(ride.getId()).get();
+        assertEquals(RideStatus.CANCELLED, cancelled.getStatus());
+        assertEquals(SEATS, cancelled.getSeatsAvailable());
+        assertTrue(rideBookingRepository.findByRideId(ride.getId()).stream()
+            .allMatch(booking -> booking.getRideBookingStatus() == RideBookingStatus.CANCELLED));
+    }
+}
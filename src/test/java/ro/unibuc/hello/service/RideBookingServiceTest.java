@@ -2,21 +2,26 @@ package ro.unibuc.hello.service;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
+import org.mockito.Spy;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import ro.unibuc.hello.dto.rideBooking.RideBookingRequestDTO;
 import ro.unibuc.hello.dto.rideBooking.RideBookingResponseDTO;
 import ro.unibuc.hello.model.Ride;
 import ro.unibuc.hello.model.RideBooking;
+import ro.unibuc.hello.model.RideEligibility;
+import ro.unibuc.hello.model.RideTemplate;
 import ro.unibuc.hello.model.User;
+import ro.unibuc.hello.model.UserView;
 import ro.unibuc.hello.repository.RideBookingRepository;
-import ro.unibuc.hello.repository.UserRepository;
 import ro.unibuc.hello.repository.RideRepository;
 import ro.unibuc.hello.enums.RideBookingStatus;
 import ro.unibuc.hello.enums.Role;
@@ -26,12 +31,14 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.time.Clock;
 
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -48,7 +55,16 @@ public class RideBookingServiceTest {
     private RideRepository rideRepository;
 
     @Mock
-    private UserRepository userRepository;
+    private UserCache userCache;
+
+    @Mock
+    private RideSearchIndex rideSearchIndex;
+
+    @Mock
+    private RideTemplateService rideTemplateService;
+
+    @Spy
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
 
     @InjectMocks
     private RideBookingService rideBookingService;
@@ -75,10 +91,11 @@ public class RideBookingServiceTest {
         // Create mock User objects for passengers
         User user1 = new User("diaconescu", "alexandra", "alexandra@gmail.com", "0721226744", Arrays.asList(Role.PASSENGER));
         User user2 = new User("popescu", "mihai", "mihai@gmail.com", "0721226544", Arrays.asList(Role.PASSENGER));
+        user1.setId("67d767dca086f159e0e3ad65");
+        user2.setId("67d767dca086f159e0e3ad66");
 
-        // Mock user repository
-        when(userRepository.findById("67d767dca086f159e0e3ad65")).thenReturn(Optional.of(user1));
-        when(userRepository.findById("67d767dca086f159e0e3ad66")).thenReturn(Optional.of(user2));
+        // Mock user cache
+        when(userCache.findAllById(anyCollection())).thenReturn(Map.of(user2.getId(), UserView.of(user2), user1.getId(), UserView.of(user1)));
 
         // Act
         List<RideBookingResponseDTO> rideBookings = rideBookingService.getPassengersByRideId(rideId);
@@ -88,7 +105,8 @@ public class RideBookingServiceTest {
         assertEquals(2, rideBookings.size());
         
         verify(rideBookingRepository).findByRideId(rideId);
-        verify(userRepository, times(2)).findById(anyString());
+        verify(userCache, times(1)).findAllById(anyCollection());
+        verify(userCache, never()).findById(anyString());
 
         RideBookingResponseDTO responseDTO1 = rideBookings.get(0);
         assertEquals("67d60c0f12400d215806d06c", responseDTO1.getRideId());
@@ -105,6 +123,35 @@ public class RideBookingServiceTest {
     
 
 
+    @Test
+    public void testGetPassengerByRideId_SingleUserLookupForFullRide() {
+        // Arrange
+        String rideId = "67d60c0f12400d215806d06c";
+        int passengersCount = 500;
+
+        List<RideBooking> bookings = new java.util.ArrayList<>();
+        Map<String, UserView> passengers = new java.util.HashMap<>();
+        for (int i = 0; i < passengersCount; i++) {
+            bookings.add(new RideBooking(rideId, "p" + i, Instant.parse("2025-03-24T15:52:00Z")));
+            User passenger = new User("passenger", "no" + i, "p" + i + "@gmail.com", "07" + i, null);
+            passenger.setId("p" + i);
+            passengers.put(passenger.getId(), UserView.of(passenger));
+        }
+
+        when(rideBookingRepository.findByRideId(rideId)).thenReturn(bookings);
+        when(userCache.findAllById(anyCollection())).thenReturn(passengers);
+
+        // Act
+        List<RideBookingResponseDTO> rideBookings = rideBookingService.getPassengersByRideId(rideId);
+
+        // Assert: one booking query and one user query, no matter how many passengers
+        assertEquals(passengersCount, rideBookings.size());
+        assertEquals("passenger no" + (passengersCount - 1), rideBookings.get(passengersCount - 1).getPassengerFullName());
+        verify(rideBookingRepository, times(1)).findByRideId(rideId);
+        verify(userCache, times(1)).findAllById(anyCollection());
+        verifyNoMoreInteractions(userCache);
+    }
+
     @Test
         void testCreateRideBooking_Success() {
             
@@ -114,27 +161,101 @@ public class RideBookingServiceTest {
             
             User user = new User("diaconescu", "alexandra", "alexandra@gmail.com", "0721226744", null);
             
-            when(userRepository.existsById("p1")).thenReturn(true);
+            when(userCache.existsById("p1")).thenReturn(true);
             
           
             Instant departureTime = Instant.parse("2025-03-24T15:52:00Z");
             Instant arrivalTime = Instant.parse("2025-03-24T16:52:00Z");
             Ride ride = new Ride("driver123", "City A", "City B", departureTime, arrivalTime, 
                                 100, 10, "B45NNN");
-            when(rideRepository.findById("r1")).thenReturn(Optional.of(ride));
-            
-            when(rideBookingRepository.findByRideIdAndPassengerId("r1", "p1")).thenReturn(Optional.empty());
-            
-            when(rideBookingRepository.findByPassengerId("p1")).thenReturn(java.util.Collections.emptyList());
+            when(rideRepository.findBookingEligibility("r1", "p1")).thenReturn(Optional.of(new RideEligibility(ride, null)));
+
+            when(rideRepository.reserveSeat("r1")).thenReturn(1L);
             
             RideBookingResponseDTO responseDTO = rideBookingService.createRideBooking(rideBookingRequestDTO);
 
             assertNotNull(responseDTO);
             assertEquals("r1", responseDTO.getRideId());
-            assertEquals(9, ride.getSeatsAvailable()); 
             
+            verify(rideRepository).reserveSeat("r1");
             verify(rideBookingRepository).save(any(RideBooking.class));
-            verify(rideRepository).save(ride);
+            verify(rideRepository, never()).save(any(Ride.class));
+        }
+
+    @Test
+        void testCreateRideBooking_PassengerDrivesARecurringRideAtTheSameTime() {
+
+            RideBookingRequestDTO rideBookingRequestDTO = new RideBookingRequestDTO();
+            rideBookingRequestDTO.setRideId("r1");
+            rideBookingRequestDTO.setPassengerId("p1");
+
+            when(userCache.existsById("p1")).thenReturn(true);
+
+            Instant departureTime = Instant.parse("2025-03-24T15:52:00Z");
+            Instant arrivalTime = Instant.parse("2025-03-24T16:52:00Z");
+            Ride ride = new Ride("driver123", "City A", "City B", departureTime, arrivalTime,
+                                100, 10, "B45NNN");
+            when(rideRepository.findBookingEligibility("r1", "p1")).thenReturn(Optional.of(new RideEligibility(ride, null)));
+            // the occurrence of that day is not stored as a ride yet
+            when(rideTemplateService.findOverlappingTemplate("p1", departureTime, arrivalTime))
+                .thenReturn(Optional.of(new RideTemplate()));
+
+            InvalidRideBookingException exception = assertThrows(InvalidRideBookingException.class,
+                () -> rideBookingService.createRideBooking(rideBookingRequestDTO));
+
+            assertEquals("User involved in another ride at the same time.", exception.getMessage());
+            verify(rideRepository, never()).reserveSeat(anyString());
+        }
+
+    @Test
+        void testCreateRideBooking_SeatTakenConcurrently() {
+
+            RideBookingRequestDTO rideBookingRequestDTO = new RideBookingRequestDTO();
+            rideBookingRequestDTO.setRideId("r1");
+            rideBookingRequestDTO.setPassengerId("p1");
+
+            when(userCache.existsById("p1")).thenReturn(true);
+
+            // snapshot still shows a free seat, but the conditional update finds none
+            Instant departureTime = Instant.parse("2025-03-24T15:52:00Z");
+            Instant arrivalTime = Instant.parse("2025-03-24T16:52:00Z");
+            Ride ride = new Ride("driver123", "City A", "City B", departureTime, arrivalTime, 
+                                100, 1, "B45NNN");
+            when(rideRepository.findBookingEligibility("r1", "p1")).thenReturn(Optional.of(new RideEligibility(ride, null)));
+            when(rideRepository.reserveSeat("r1")).thenReturn(0L);
+
+            InvalidRideBookingException exception = assertThrows(InvalidRideBookingException.class, 
+                () -> rideBookingService.createRideBooking(rideBookingRequestDTO));
+
+            assertEquals("No more seats available", exception.getMessage());
+            verify(rideBookingRepository, never()).save(any(RideBooking.class));
+        }
+
+    @Test
+        void testCreateRideBooking_SamePassengerBookedConcurrently() {
+
+            RideBookingRequestDTO rideBookingRequestDTO = new RideBookingRequestDTO();
+            rideBookingRequestDTO.setRideId("r1");
+            rideBookingRequestDTO.setPassengerId("p1");
+
+            when(userCache.existsById("p1")).thenReturn(true);
+
+            // the snapshot has no booking yet, the other request's booking is stored before this one
+            Instant departureTime = Instant.parse("2025-03-24T15:52:00Z");
+            Instant arrivalTime = Instant.parse("2025-03-24T16:52:00Z");
+            Ride ride = new Ride("driver123", "City A", "City B", departureTime, arrivalTime, 
+                                100, 10, "B45NNN");
+            when(rideRepository.findBookingEligibility("r1", "p1")).thenReturn(Optional.of(new RideEligibility(ride, null)));
+            when(rideRepository.reserveSeat("r1")).thenReturn(1L);
+            when(rideBookingRepository.save(any(RideBooking.class))).thenThrow(new DuplicateKeyException(
+                "E11000 duplicate key error collection: test.ride_passengers index: ride_passenger_idx dup key"));
+
+            InvalidRideBookingException exception = assertThrows(InvalidRideBookingException.class, 
+                () -> rideBookingService.createRideBooking(rideBookingRequestDTO));
+
+            assertEquals("Passenger already booked for this ride.", exception.getMessage());
+            verify(rideRepository).releaseSeat("r1");
+            verify(rideSearchIndex).adjustSeats("r1", 1);
         }
 
     @Test
@@ -145,7 +266,7 @@ public class RideBookingServiceTest {
         rideBookingRequestDTO.setPassengerId("p1");
 
         //passenger ID does not exist
-        when(userRepository.existsById("p1")).thenReturn(false);
+        when(userCache.existsById("p1")).thenReturn(false);
 
         // Act , Assert
         assertThrows(InvalidRideBookingException.class, 
@@ -153,8 +274,7 @@ public class RideBookingServiceTest {
             "Passenger's id doesnt exist");
 
         // Verify that rideRepository and rideBookingRepository were never called
-        verify(rideRepository, never()).findById(anyString());
-        verify(rideBookingRepository, never()).findByRideIdAndPassengerId(anyString(), anyString());
+        verify(rideRepository, never()).findBookingEligibility(anyString(), anyString());
         }
 
     @Test
@@ -165,7 +285,7 @@ public class RideBookingServiceTest {
             rideBookingRequestDTO.setPassengerId("p1");
         
             // passenger exists
-            when(userRepository.existsById("p1")).thenReturn(true);
+            when(userCache.existsById("p1")).thenReturn(true);
         
             // Create a ride that the passenger wants to book
             Instant departureTime = Instant.parse("2025-03-24T15:52:00Z");
@@ -173,16 +293,10 @@ public class RideBookingServiceTest {
             Ride ride = new Ride("driver123", "City A", "City B", departureTime, arrivalTime, 
                                  100, 10, "B45NNN");
         
-            when(rideRepository.findById("r1")).thenReturn(Optional.of(ride));
-        
-            // existing ride booking that overlaps with the new ride
-            Instant existingBookingTime = Instant.parse("2025-03-24T16:00:00Z"); 
-            RideBooking existingBooking = new RideBooking("existingRideId", "p1", existingBookingTime);
-            when(rideBookingRepository.findByPassengerId("p1")).thenReturn(List.of(existingBooking));
-        
-            // findByIdAndTimeOverlap() to return : conflict exists
-            when(rideRepository.findByIdAndTimeOverlap("r1", departureTime, arrivalTime))
-                .thenReturn(List.of(new Ride()));
+            // passenger is already booked on a ride that overlaps with the new ride
+            RideEligibility eligibility = new RideEligibility(ride, null);
+            eligibility.setOverlapping(true);
+            when(rideRepository.findBookingEligibility("r1", "p1")).thenReturn(Optional.of(eligibility));
         
             // Act, assert
             InvalidRideBookingException exception = assertThrows(InvalidRideBookingException.class, 
@@ -208,7 +322,7 @@ public class RideBookingServiceTest {
             Clock fixedClock = Clock.fixed(fixedNow, ZoneId.of("UTC"));
 
             // Create the service using the mocked Clock
-            RideBookingService rideBookingService = new RideBookingService(rideBookingRepository, userRepository, rideRepository, userService, fixedClock);
+            RideBookingService rideBookingService = new RideBookingService(rideBookingRepository, userCache, rideRepository, rideSearchIndex, rideTemplateService, fixedClock, meterRegistry);
 
             // mock Ride
             Ride ride = new Ride("driver123", "City A", "City B", departureTime, arrivalTime, 100, 5, "B45NNN");
@@ -217,13 +331,13 @@ public class RideBookingServiceTest {
 
             // mock RideBooking
             RideBooking rideBooking = new RideBooking(rideId, passengerId, Instant.parse("2025-03-24T19:39:58Z"));
+            rideBooking.setId("b1");
             rideBooking.setRideBookingStatus(RideBookingStatus.BOOKED);
             when(rideBookingRepository.findByRideIdAndPassengerId(rideId, passengerId))
                     .thenReturn(Optional.of(rideBooking));
 
-            // save operation to return the updated rideBooking
-            when(rideBookingRepository.save(any(RideBooking.class))).thenReturn(rideBooking);
-            when(rideRepository.save(any(Ride.class))).thenReturn(ride);
+            // the conditional update finds the booking still booked
+            when(rideBookingRepository.cancel("b1")).thenReturn(1L);
 
             // Act
             RideBookingResponseDTO responseDTO = rideBookingService.updateRideBookingStatusToCancelled(rideId, passengerId);
@@ -231,11 +345,40 @@ public class RideBookingServiceTest {
             // Assert
             assertNotNull(responseDTO);
             assertEquals(RideBookingStatus.CANCELLED, rideBooking.getRideBookingStatus());  
-            assertEquals(6, ride.getSeatsAvailable());  
 
-            // Verify repository save calls
-            verify(rideBookingRepository).save(rideBooking);
-            verify(rideRepository).save(ride);
+            // Verify repository calls
+            verify(rideBookingRepository).cancel("b1");
+            verify(rideBookingRepository, never()).save(any(RideBooking.class));
+            verify(rideRepository).releaseSeat(rideId);
+            verify(rideSearchIndex).adjustSeats(rideId, 1);
+            verify(rideRepository, never()).save(any(Ride.class));
+        }
+
+        @Test
+        void testUpdateRideBookingStatusToCancelled_ConcurrentCancelReleasesNoSeat() {
+            String rideId = "r1";
+            String passengerId = "p1";
+            Clock fixedClock = Clock.fixed(Instant.parse("2025-03-24T19:54:00Z"), ZoneId.of("UTC"));
+            RideBookingService rideBookingService = new RideBookingService(rideBookingRepository, userCache, rideRepository, rideSearchIndex, rideTemplateService, fixedClock, meterRegistry);
+
+            Ride ride = new Ride("driver123", "City A", "City B", Instant.parse("2025-03-25T20:00:00Z"),
+                    Instant.parse("2025-03-25T21:00:00Z"), 100, 5, "B45NNN");
+            ride.setId(rideId);
+            when(rideRepository.findById(rideId)).thenReturn(Optional.of(ride));
+
+            // both requests read the booking as booked, the other one cancelled it first
+            RideBooking rideBooking = new RideBooking(rideId, passengerId, Instant.parse("2025-03-24T19:39:58Z"));
+            rideBooking.setId("b1");
+            when(rideBookingRepository.findByRideIdAndPassengerId(rideId, passengerId))
+                    .thenReturn(Optional.of(rideBooking));
+            when(rideBookingRepository.cancel("b1")).thenReturn(0L);
+
+            InvalidRideBookingException exception = assertThrows(InvalidRideBookingException.class,
+                    () -> rideBookingService.updateRideBookingStatusToCancelled(rideId, passengerId));
+
+            assertEquals("Ride already cancelled.", exception.getMessage());
+            verify(rideRepository, never()).releaseSeat(anyString());
+            verify(rideSearchIndex, never()).adjustSeats(anyString(), anyInt());
         }
         
 
@@ -0,0 +1,135 @@
+package ro.unibuc.hello.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import ro.unibuc.hello.enums.RideStatus;
+import ro.unibuc.hello.model.Ride;
+import ro.unibuc.hello.repository.RideRepository;
+
+@ExtendWith(MockitoExtension.class)
+public class RideSearchIndexTest {
+
+    @Mock
+    private RideRepository rideRepository;
+
+    private static final Instant NOW = Instant.parse("2025-04-01T08:00:00Z");
+    private static final LocalDate TODAY = LocalDate.of(2025, 4, 1);
+    private static final LocalDate TOMORROW = TODAY.plusDays(1);
+
+    private RideSearchIndex rideSearchIndex;
+
+    @BeforeEach
+    void setUp() {
+        rideSearchIndex = new RideSearchIndex(rideRepository, Clock.fixed(NOW, ZoneOffset.UTC), true);
+    }
+
+    private Ride ride(String id, String from, String to, Instant departureTime) {
+        Ride ride = new Ride("driver1", from, to, departureTime, departureTime.plusSeconds(3600), 50, 3, "B-123-ABC");
+        ride.setId(id);
+        return ride;
+    }
+
+    @Test
+    void testReload_IndexesByDayAndRouteInDepartureOrder() {
+        Ride late = ride("r1", "Bucuresti", "Cluj", NOW.plusSeconds(7200));
+        Ride early = ride("r2", "Bucuresti", "Cluj", NOW.plusSeconds(3600));
+        Ride other = ride("r3", "Cluj", "Iasi", NOW.plusSeconds(3600));
+        Ride tomorrow = ride("r4", "Bucuresti", "Cluj", NOW.plusSeconds(86400));
+        when(rideRepository.streamScheduledDepartingFrom(TODAY.atStartOfDay(ZoneOffset.UTC).toInstant()))
+            .thenReturn(Stream.of(late, early, other, tomorrow));
+
+        assertFalse(rideSearchIndex.covers(TODAY));
+        rideSearchIndex.reload();
+
+        assertTrue(rideSearchIndex.covers(TODAY));
+        assertFalse(rideSearchIndex.covers(TODAY.minusDays(1)));
+
+        List<Ride> today = rideSearchIndex.findByDate(TODAY);
+        assertEquals(List.of("r2", "r3", "r1"), today.stream().map(Ride::getId).toList());
+
+        List<Ride> route = rideSearchIndex.findByRoute(TODAY, "Bucuresti", "Cluj");
+        assertEquals(List.of("r2", "r1"), route.stream().map(Ride::getId).toList());
+
+        assertEquals(1, rideSearchIndex.findByDate(TOMORROW).size());
+        assertEquals(0, rideSearchIndex.findByRoute(TODAY, "Iasi", "Cluj").size());
+    }
+
+    @Test
+    void testReload_KeepsTheWritesMadeWhileStreaming() {
+        Ride streamed = ride("r1", "Bucuresti", "Cluj", NOW.plusSeconds(3600));
+        Ride created = ride("r2", "Bucuresti", "Cluj", NOW.plusSeconds(7200));
+        Ride booked = ride("r1", "Bucuresti", "Cluj", NOW.plusSeconds(3600));
+        booked.setSeatsAvailable(2);
+        // the ride is created and the streamed one booked while the cursor is read
+        when(rideRepository.streamScheduledDepartingFrom(TODAY.atStartOfDay(ZoneOffset.UTC).toInstant()))
+            .thenReturn(Stream.of(streamed).peek(ride -> {
+                rideSearchIndex.put(created);
+                rideSearchIndex.adjustSeats("r1", -1);
+            }));
+        when(rideRepository.findAllById(Set.of("r1", "r2"))).thenReturn(List.of(booked, created));
+
+        rideSearchIndex.reload();
+
+        List<Ride> today = rideSearchIndex.findByDate(TODAY);
+        assertEquals(List.of("r1", "r2"), today.stream().map(Ride::getId).toList());
+        assertEquals(2, today.get(0).getSeatsAvailable());
+    }
+
+    @Test
+    void testPut_StatusChangeRemovesRide() {
+        when(rideRepository.streamScheduledDepartingFrom(TODAY.atStartOfDay(ZoneOffset.UTC).toInstant()))
+            .thenReturn(Stream.empty());
+        rideSearchIndex.reload();
+
+        Ride ride = ride("r1", "Bucuresti", "Cluj", NOW.plusSeconds(3600));
+        rideSearchIndex.put(ride);
+        assertEquals(1, rideSearchIndex.findByRoute(TODAY, "Bucuresti", "Cluj").size());
+
+        ride.setStatus(RideStatus.IN_PROGRESS);
+        rideSearchIndex.put(ride);
+        assertEquals(0, rideSearchIndex.findByDate(TODAY).size());
+        assertEquals(0, rideSearchIndex.findByRoute(TODAY, "Bucuresti", "Cluj").size());
+    }
+
+    @Test
+    void testAdjustSeats_VisibleInEveryBucket() {
+        when(rideRepository.streamScheduledDepartingFrom(TODAY.atStartOfDay(ZoneOffset.UTC).toInstant()))
+            .thenReturn(Stream.of(ride("r1", "Bucuresti", "Cluj", NOW.plusSeconds(3600))));
+        rideSearchIndex.reload();
+
+        rideSearchIndex.adjustSeats("r1", -1);
+        rideSearchIndex.adjustSeats("r1", -1);
+        rideSearchIndex.adjustSeats("r1", 1);
+
+        assertEquals(2, rideSearchIndex.findByDate(TODAY).get(0).getSeatsAvailable());
+        assertEquals(2, rideSearchIndex.findByRoute(TODAY, "Bucuresti", "Cluj").get(0).getSeatsAvailable());
+    }
+
+    @Test
+    void testFindByDate_ReturnsCopies() {
+        when(rideRepository.streamScheduledDepartingFrom(TODAY.atStartOfDay(ZoneOffset.UTC).toInstant()))
+            .thenReturn(Stream.of(ride("r1", "Bucuresti", "Cluj", NOW.plusSeconds(3600))));
+        rideSearchIndex.reload();
+
+        rideSearchIndex.findByDate(TODAY).get(0).setSeatsAvailable(0);
+
+        assertEquals(3, rideSearchIndex.findByDate(TODAY).get(0).getSeatsAvailable());
+    }
+}
@@ -2,8 +2,11 @@ package ro.unibuc.hello.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -11,28 +14,38 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.time.Instant;
+import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ro.unibuc.hello.dto.page.PageResponseDTO;
+import ro.unibuc.hello.dto.ride.RideBatchResultDTO;
 import ro.unibuc.hello.dto.ride.RideRequestDTO;
 import ro.unibuc.hello.dto.ride.RideResponseDTO;
 import ro.unibuc.hello.dto.user.UserResponseDTO;
+import ro.unibuc.hello.enums.RideBookingStatus;
 import ro.unibuc.hello.enums.RideStatus;
 import ro.unibuc.hello.exceptions.ride.InvalidRideException;
 import ro.unibuc.hello.exceptions.ride.RideConflictException;
 import ro.unibuc.hello.exceptions.rideBooking.InvalidRideBookingException;
 import ro.unibuc.hello.model.Ride;
 import ro.unibuc.hello.model.RideBooking;
+import ro.unibuc.hello.model.User;
+import ro.unibuc.hello.model.UserView;
+import ro.unibuc.hello.model.Vehicle;
 import ro.unibuc.hello.repository.RideBookingRepository;
 import ro.unibuc.hello.repository.RideRepository;
-import ro.unibuc.hello.repository.UserRepository;
 import ro.unibuc.hello.repository.VehicleRepository;
 
 @ExtendWith(MockitoExtension.class)
@@ -44,7 +57,7 @@ public class RideServiceTest {
     private RideBookingRepository rideBookingRepository;
 
     @Mock
-    private UserRepository userRepository;
+    private UserCache userCache;
 
     @Mock 
     private VehicleRepository vehicleRepository;
@@ -52,6 +65,15 @@ public class RideServiceTest {
     @Mock 
     private RideBookingService rideBookingService;
 
+    @Mock
+    private RideSearchIndex rideSearchIndex;
+
+    @Mock
+    private RideTemplateService rideTemplateService;
+
+    @Spy
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @InjectMocks
     private RideService rideService;
 
@@ -68,18 +90,51 @@ public class RideServiceTest {
         );
     }
 
+    @Test
+    void testCreateRides_ReportsEachRide() {
+        RideRequestDTO valid = createValidRideRequest();
+        // same driver, overlapping the first ride of the batch
+        RideRequestDTO overlapping = createValidRideRequest();
+        overlapping.setDepartureTime(valid.getDepartureTime().plusSeconds(1800));
+        overlapping.setArrivalTime(valid.getArrivalTime().plusSeconds(1800));
+        RideRequestDTO unknownPlate = createValidRideRequest();
+        unknownPlate.setDepartureTime(valid.getDepartureTime().plusSeconds(86400));
+        unknownPlate.setArrivalTime(valid.getArrivalTime().plusSeconds(86400));
+        unknownPlate.setCarLicensePlate("CJ-99-XYZ");
+
+        when(userCache.findAllById(anyCollection()))
+            .thenReturn(Map.of("driver123", UserView.of(new User("Ion", "Popescu", "ion@mail.com", "0711111111", null))));
+        when(vehicleRepository.findLicensePlatesIn(anyCollection()))
+            .thenReturn(List.of(new Vehicle("driver123", "Dacia", "Logan", "B-123-ABC")));
+        when(rideRepository.insert(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        List<RideBatchResultDTO> results = rideService.createRides(List.of(valid, overlapping, unknownPlate));
+
+        assertEquals(201, results.get(0).getStatus());
+        assertEquals(409, results.get(1).getStatus());
+        assertEquals("Driver involved in another ride.", results.get(1).getMessage());
+        assertEquals(400, results.get(2).getStatus());
+        assertEquals("Vehicle does not exist in the system.", results.get(2).getMessage());
+        // one lookup per kind for the whole batch, one insert for the valid rides
+        verify(userCache, times(1)).findAllById(anyCollection());
+        verify(vehicleRepository, never()).existsByLicensePlate(anyString());
+        verify(rideRepository, times(1)).findByDriverIdInAndTimeOverlap(anyCollection(), any(), any());
+        verify(rideRepository, times(1)).insert(anyList());
+        verify(rideSearchIndex, times(1)).put(any(Ride.class));
+    }
+
     @Test
     void testCreateRide_DriverNotFound() {
        
         RideRequestDTO request = createValidRideRequest();
-        when(userRepository.existsById(request.getDriverId())).thenReturn(false);
+        when(userCache.existsById(request.getDriverId())).thenReturn(false);
 
    
         assertThrows(InvalidRideException.class, () -> {
             rideService.createRide(request);
         });
         
-        verify(userRepository, times(1)).existsById(request.getDriverId());
+        verify(userCache, times(1)).existsById(request.getDriverId());
         verify(rideRepository, never()).save(any());
     }
 
@@ -88,12 +143,12 @@ public class RideServiceTest {
 
         RideRequestDTO request = createValidRideRequest();
         request.setDepartureTime(Instant.now().minusSeconds(3600)); // 1 hour in the past
-        
-        when(userRepository.existsById(request.getDriverId())).thenReturn(true);
 
         assertThrows(InvalidRideException.class, () -> {
             rideService.createRide(request);
         });
+        // rejected before any lookup
+        verify(userCache, never()).existsById(anyString());
     }
 
     @Test
@@ -101,12 +156,12 @@ public class RideServiceTest {
  
         RideRequestDTO request = createValidRideRequest();
         request.setEndLocation(request.getStartLocation());
-        
-        when(userRepository.existsById(request.getDriverId())).thenReturn(true);
 
         assertThrows(InvalidRideException.class, () -> {
             rideService.createRide(request);
         });
+        // rejected before any lookup
+        verify(userCache, never()).existsById(anyString());
     }
 
     @Test
@@ -114,12 +169,12 @@ public class RideServiceTest {
 
         RideRequestDTO request = createValidRideRequest();
         request.setSeatsAvailable(0);
-        
-        when(userRepository.existsById(request.getDriverId())).thenReturn(true);
 
         assertThrows(InvalidRideException.class, () -> {
             rideService.createRide(request);
         });
+        // rejected before any lookup
+        verify(userCache, never()).existsById(anyString());
     }
 
     @Test
@@ -127,12 +182,12 @@ public class RideServiceTest {
 
         RideRequestDTO request = createValidRideRequest();
         request.setSeatPrice(-10);
-        
-        when(userRepository.existsById(request.getDriverId())).thenReturn(true);
 
         assertThrows(InvalidRideException.class, () -> {
             rideService.createRide(request);
         });
+        // rejected before any lookup
+        verify(userCache, never()).existsById(anyString());
     }
 
     @Test
@@ -140,7 +195,7 @@ public class RideServiceTest {
 
         RideRequestDTO request = createValidRideRequest();
         
-        when(userRepository.existsById(request.getDriverId())).thenReturn(true);
+        when(userCache.existsById(request.getDriverId())).thenReturn(true);
         when(vehicleRepository.existsByLicensePlate(request.getCarLicensePlate())).thenReturn(false);
 
         assertThrows(InvalidRideException.class, () -> {
@@ -153,7 +208,7 @@ public class RideServiceTest {
 
         RideRequestDTO request = createValidRideRequest();
         
-        when(userRepository.existsById(request.getDriverId())).thenReturn(true);
+        when(userCache.existsById(request.getDriverId())).thenReturn(true);
 
         when(vehicleRepository.existsByLicensePlate(request.getCarLicensePlate())).thenReturn(true);
 
@@ -175,13 +230,17 @@ public class RideServiceTest {
         RideRequestDTO request = createValidRideRequest();
         Ride expectedRide = request.toEntity();
         
-        when(userRepository.existsById(request.getDriverId())).thenReturn(true);
+        when(userCache.existsById(request.getDriverId())).thenReturn(true);
 
         when(vehicleRepository.existsByLicensePlate(request.getCarLicensePlate())).thenReturn(true);
 
         when(rideRepository.findByDriverIdAndTimeOverlap(any(), any(), any())).thenReturn(List.of());
 
-        when(rideBookingRepository.findByPassengerId(request.getDriverId())).thenReturn(List.of());
+        when(rideBookingRepository.findFirstOverlappingRideForPassenger(
+            request.getDriverId(),
+            request.getDepartureTime(),
+            request.getArrivalTime()
+        )).thenReturn(Optional.empty());
         
         when(rideRepository.save(any(Ride.class))).thenReturn(expectedRide);
 
@@ -209,6 +268,86 @@ public class RideServiceTest {
         verify(rideRepository, times(1)).findAll();
     }
 
+    @Test
+    void testGetRidesPage_FirstPageHasNextCursor() {
+
+        List<Ride> mockRides = new java.util.ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Ride ride = new Ride("driver" + i, "Bucuresti", "Cluj", Instant.now(), Instant.now().plusSeconds(3600), 50, 3, "B-123-ABC");
+            ride.setId("ride" + i);
+            mockRides.add(ride);
+        }
+        when(rideRepository.findByOrderByIdAsc(Limit.of(3))).thenReturn(mockRides);
+
+        PageResponseDTO<Ride> page = rideService.getRidesPage(null, 2);
+
+        assertEquals(2, page.getItems().size());
+        assertEquals("ride1", PageResponseDTO.decodeCursor(page.getNextCursor()));
+        verify(rideRepository, never()).findAll();
+    }
+
+    @Test
+    void testGetRidesPage_LastPageAfterCursor() {
+
+        Ride ride = new Ride("driver1", "Bucuresti", "Cluj", Instant.now(), Instant.now().plusSeconds(3600), 50, 3, "B-123-ABC");
+        ride.setId("ride2");
+        when(rideRepository.findByIdGreaterThanOrderByIdAsc("ride1", Limit.of(3))).thenReturn(List.of(ride));
+
+        PageResponseDTO<Ride> page = rideService.getRidesPage(PageResponseDTO.encodeCursor("ride1"), 2);
+
+        assertEquals(1, page.getItems().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void testGetRidesPage_PageSizeIsCapped() {
+
+        when(rideRepository.findByOrderByIdAsc(Limit.of(PageResponseDTO.MAX_PAGE_SIZE + 1))).thenReturn(List.of());
+
+        PageResponseDTO<Ride> page = rideService.getRidesPage(null, 100000);
+
+        assertEquals(0, page.getItems().size());
+        assertThrows(IllegalArgumentException.class, () -> rideService.getRidesPage(null, 0));
+    }
+
+    @Test
+    void testGetScheduledRidesByDate_ServedFromIndex() {
+
+        Instant testDate = Instant.parse("2023-01-01T10:00:00Z");
+        LocalDate day = LocalDate.of(2023, 1, 1);
+        List<Ride> indexedRides = List.of(
+            new Ride("1", "Bucuresti", "Cluj", testDate, testDate.plusSeconds(3600), 50, 3, "B-123-ABC")
+        );
+
+        when(rideTemplateService.isMaterialized(day)).thenReturn(true);
+        when(rideSearchIndex.covers(day)).thenReturn(true);
+        when(rideSearchIndex.findByDate(day)).thenReturn(indexedRides);
+
+        List<Ride> result = rideService.getScheduledRidesByDate(testDate);
+
+        assertEquals(1, result.size());
+        verify(rideRepository, never()).findAllByDepartureDate(any(), any());
+        verify(rideTemplateService, never()).materialize(any(LocalDate.class));
+    }
+
+    @Test
+    void testGetScheduledRidesByDate_FallsBackToMongo() {
+
+        Instant testDate = Instant.parse("2023-01-01T00:00:00Z");
+        Ride scheduled = new Ride("1", "Bucuresti", "Cluj", testDate.plusSeconds(3600), testDate.plusSeconds(7200), 50, 3, "B-123-ABC");
+        Ride completed = new Ride("2", "Cluj", "Iasi", testDate.plusSeconds(3600), testDate.plusSeconds(7200), 50, 3, "B-123-ABC");
+        completed.setStatus(RideStatus.COMPLETED);
+
+        when(rideSearchIndex.covers(LocalDate.of(2023, 1, 1))).thenReturn(false);
+        when(rideRepository.findAllByDepartureDate(any(Instant.class), any(Instant.class)))
+            .thenReturn(List.of(scheduled, completed));
+
+        List<Ride> result = rideService.getScheduledRidesByDate(testDate);
+
+        assertEquals(1, result.size());
+        assertEquals("Bucuresti", result.get(0).getStartLocation());
+    }
+
     @Test
     void testGetRidesByDate() {
 
@@ -233,15 +372,37 @@ public class RideServiceTest {
         Ride mockRide = new Ride("driver1", "Bucuresti", "Cluj", 
             Instant.now().plusSeconds(0), Instant.now().plusSeconds(7200), 50, 3, "B-123-ABC");
         mockRide.setStatus(RideStatus.SCHEDULED);
+        Ride started = new Ride("driver1", "Bucuresti", "Cluj", 
+            mockRide.getDepartureTime(), mockRide.getArrivalTime(), 50, 3, "B-123-ABC");
+        started.setStatus(RideStatus.IN_PROGRESS);
         
-        when(rideRepository.findById(rideId)).thenReturn(Optional.of(mockRide));
-        when(rideRepository.save(any(Ride.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(rideRepository.findById(rideId)).thenReturn(Optional.of(mockRide), Optional.of(started));
+        when(rideRepository.updateStatus(rideId, RideStatus.SCHEDULED, RideStatus.IN_PROGRESS)).thenReturn(1L);
 
         RideResponseDTO result = rideService.updateRideStatusToInProgress(rideId);
 
-        assertEquals(RideStatus.IN_PROGRESS, mockRide.getStatus());
-        verify(rideRepository, times(1)).findById(rideId);
-        verify(rideRepository, times(1)).save(mockRide);
+        // the response is built from the ride read again after the status update
+        verify(rideRepository, times(2)).findById(rideId);
+        verify(rideRepository, times(1)).updateStatus(rideId, RideStatus.SCHEDULED, RideStatus.IN_PROGRESS);
+        verify(rideSearchIndex, times(1)).remove(rideId);
+        verify(rideRepository, never()).save(any());
+    }
+
+    @Test
+    void testUpdateRideStatusToInProgress_StartedMeanwhile() {
+
+        String rideId = "ride123";
+        Ride mockRide = new Ride("driver1", "Bucuresti", "Cluj", 
+            Instant.now().plusSeconds(0), Instant.now().plusSeconds(7200), 50, 3, "B-123-ABC");
+        mockRide.setStatus(RideStatus.SCHEDULED);
+
+        when(rideRepository.findById(rideId)).thenReturn(Optional.of(mockRide));
+        when(rideRepository.updateStatus(rideId, RideStatus.SCHEDULED, RideStatus.IN_PROGRESS)).thenReturn(0L);
+
+        assertThrows(InvalidRideException.class, () -> {
+            rideService.updateRideStatusToInProgress(rideId);
+        });
+        verify(rideSearchIndex, never()).remove(rideId);
     }
 
     @Test
@@ -267,15 +428,18 @@ public class RideServiceTest {
         Ride mockRide = new Ride("driver1", "Bucuresti", "Cluj", 
             Instant.now().minusSeconds(3600), Instant.now().plusSeconds(3600), 50, 3, "B-123-ABC");
         mockRide.setStatus(RideStatus.IN_PROGRESS);
+        Ride completed = new Ride("driver1", "Bucuresti", "Cluj", 
+            mockRide.getDepartureTime(), mockRide.getArrivalTime(), 50, 3, "B-123-ABC");
+        completed.setStatus(RideStatus.COMPLETED);
         
-        when(rideRepository.findById(rideId)).thenReturn(Optional.of(mockRide));
-        when(rideRepository.save(any(Ride.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(rideRepository.findById(rideId)).thenReturn(Optional.of(mockRide), Optional.of(completed));
+        when(rideRepository.updateStatus(rideId, RideStatus.IN_PROGRESS, RideStatus.COMPLETED)).thenReturn(1L);
 
         RideResponseDTO result = rideService.updateRideStatusToCompleted(rideId, currentLocation);
 
-        assertEquals(RideStatus.COMPLETED, mockRide.getStatus());
-        verify(rideRepository, times(1)).findById(rideId);
-        verify(rideRepository, times(1)).save(mockRide);
+        verify(rideRepository, times(2)).findById(rideId);
+        verify(rideRepository, times(1)).updateStatus(rideId, RideStatus.IN_PROGRESS, RideStatus.COMPLETED);
+        verify(rideRepository, never()).save(any());
     }
 
     @Test
@@ -324,20 +488,32 @@ public class RideServiceTest {
             Instant.now().plusSeconds(3600), Instant.now().plusSeconds(7200), 50, 3, "B-123-ABC");
         mockRide.setStatus(RideStatus.SCHEDULED);
         
-        RideBooking booking1 = new RideBooking("1", "67d767dca086f159e0e3ad65", Instant.now());
-        RideBooking booking2 = new RideBooking("2", "67d767dca086f159e0e3ad65", Instant.now());
-        List<RideBooking> mockBookings = Arrays.asList(booking1, booking2);
+        RideBooking booking1 = new RideBooking(rideId, "67d767dca086f159e0e3ad65", Instant.now());
+        RideBooking booking2 = new RideBooking(rideId, "67d767dca086f159e0e3ad66", Instant.now());
+        RideBooking booking3 = new RideBooking(rideId, "67d767dca086f159e0e3ad67", Instant.now());
+        booking3.setRideBookingStatus(RideBookingStatus.CANCELLED);
+        List<RideBooking> mockBookings = Arrays.asList(booking1, booking2, booking3);
+
+        // as stored after the two bookings gave their seats back
+        Ride cancelled = new Ride("driver1", "Bucuresti", "Cluj", 
+            mockRide.getDepartureTime(), mockRide.getArrivalTime(), 50, 5, "B-123-ABC");
+        cancelled.setStatus(RideStatus.CANCELLED);
         
-        when(rideRepository.findById(rideId)).thenReturn(Optional.of(mockRide));
+        when(rideRepository.findById(rideId)).thenReturn(Optional.of(mockRide), Optional.of(mockRide), Optional.of(cancelled));
+        when(rideRepository.updateStatus(rideId, RideStatus.SCHEDULED, RideStatus.CANCELLED)).thenReturn(1L);
         when(rideBookingRepository.findByRideId(rideId)).thenReturn(mockBookings);
-        when(rideRepository.save(any(Ride.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
         RideResponseDTO result = rideService.updateRideStatusToCancelled(rideId);
 
-        assertEquals(RideStatus.CANCELLED, mockRide.getStatus());
+        verify(rideRepository, times(1)).updateStatus(rideId, RideStatus.SCHEDULED, RideStatus.CANCELLED);
+        verify(rideRepository, times(3)).findById(rideId);
         verify(rideBookingRepository, times(1)).findByRideId(rideId);
+        // only the bookings still booked, each one flips its own status and gives its own seat back
+        verify(rideBookingService).updateRideBookingStatusToCancelled(rideId, "67d767dca086f159e0e3ad65");
+        verify(rideBookingService).updateRideBookingStatusToCancelled(rideId, "67d767dca086f159e0e3ad66");
         verify(rideBookingService, times(2)).updateRideBookingStatusToCancelled(anyString(), anyString());
-        verify(rideRepository, times(1)).save(mockRide);
+        verify(rideBookingRepository, never()).saveAll(any());
+        verify(rideRepository, never()).save(any());
     }
 
     @Test
@@ -380,4 +556,20 @@ public class RideServiceTest {
         verify(rideRepository, never()).save(any());
     }
 
+
+    @Test
+    void testCreateRide_RulesOnTheRequestRunFirstAndAreMeasured() {
+        RideRequestDTO request = createValidRideRequest();
+        request.setSeatsAvailable(0);
+
+        assertThrows(InvalidRideException.class, () -> rideService.createRide(request));
+
+        assertEquals(1, meterRegistry.get("validation.rule")
+            .tags("pipeline", "ride.create", "rule", "seats_available", "outcome", "rejected").timer().count());
+        assertEquals(1, meterRegistry.get("validation.rule")
+            .tags("pipeline", "ride.create", "rule", "distinct_locations", "outcome", "passed").timer().count());
+        assertEquals(0, meterRegistry.get("validation.rule")
+            .tags("pipeline", "ride.create", "rule", "driver_exists", "outcome", "passed").timer().count());
+        verify(rideRepository, never()).findByDriverIdAndTimeOverlap(any(), any(), any());
+    }
 }
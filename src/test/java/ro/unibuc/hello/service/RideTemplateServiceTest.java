@@ -0,0 +1,167 @@
+package ro.unibuc.hello.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import ro.unibuc.hello.dto.ride.RideTemplateRequestDTO;
+import ro.unibuc.hello.exceptions.ride.RideConflictException;
+import ro.unibuc.hello.model.Ride;
+import ro.unibuc.hello.model.RideTemplate;
+import ro.unibuc.hello.repository.RideBookingRepository;
+import ro.unibuc.hello.repository.RideRepository;
+import ro.unibuc.hello.repository.RideTemplateRepository;
+import ro.unibuc.hello.repository.VehicleRepository;
+
+@ExtendWith(MockitoExtension.class)
+public class RideTemplateServiceTest {
+
+    @Mock
+    private RideTemplateRepository rideTemplateRepository;
+
+    @Mock
+    private RideRepository rideRepository;
+
+    @Mock
+    private RideBookingRepository rideBookingRepository;
+
+    @Mock
+    private VehicleRepository vehicleRepository;
+
+    @Mock
+    private UserCache userCache;
+
+    @Mock
+    private RideSearchIndex rideSearchIndex;
+
+    private RideTemplateService rideTemplateService;
+
+    // a Monday
+    private static final Instant NOW = Instant.parse("2025-06-02T00:00:00Z");
+    private static final LocalDate WEDNESDAY = LocalDate.parse("2025-06-04");
+
+    @BeforeEach
+    void setUp() {
+        rideTemplateService = new RideTemplateService(rideTemplateRepository, rideRepository, rideBookingRepository,
+                vehicleRepository, userCache, rideSearchIndex, Clock.fixed(NOW, ZoneOffset.UTC), 52, 14);
+    }
+
+    private RideTemplateRequestDTO commute() {
+        return new RideTemplateRequestDTO("driver1", "Bucuresti", "Ploiesti",
+                Set.of(DayOfWeek.MONDAY, DayOfWeek.WEDNESDAY), LocalTime.of(8, 0), 60,
+                LocalDate.parse("2025-06-02"), LocalDate.parse("2025-06-30"), 20, 3, "B-123-ABC");
+    }
+
+    private RideTemplate storedCommute() {
+        RideTemplate template = commute().toEntity();
+        template.setId("template1");
+        return template;
+    }
+
+    @Test
+    void testOccurrences_OnlyThePatternDaysWithinTheDates() {
+        RideTemplate template = storedCommute();
+
+        // 5 Mondays and 4 Wednesdays in June 2025
+        assertEquals(9, template.occurrences().size());
+        assertEquals(Instant.parse("2025-06-04T08:00:00Z"), template.occurrenceOn(WEDNESDAY).get().departureTime());
+        assertTrue(template.occurrenceOn(LocalDate.parse("2025-06-03")).isEmpty());
+        assertTrue(template.overlaps(Instant.parse("2025-06-04T08:30:00Z"), Instant.parse("2025-06-04T10:00:00Z")));
+        assertFalse(template.overlaps(Instant.parse("2025-06-04T09:30:00Z"), Instant.parse("2025-06-04T10:00:00Z")));
+    }
+
+    @Test
+    void testCreateTemplate_ChecksTheScheduleOnce() {
+        when(userCache.existsById("driver1")).thenReturn(true);
+        when(vehicleRepository.existsByLicensePlate("B-123-ABC")).thenReturn(true);
+        when(rideTemplateRepository.save(any(RideTemplate.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(rideRepository.insert(any(Ride.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        rideTemplateService.createTemplate(commute());
+
+        // the rides of the next 15 days are stored right away, Mondays 2, 9 and 16 and Wednesdays 4 and 11
+        ArgumentCaptor<Ride> inserted = ArgumentCaptor.forClass(Ride.class);
+        verify(rideRepository, times(5)).insert(inserted.capture());
+        assertEquals(Instant.parse("2025-06-02T08:00:00Z"), inserted.getAllValues().get(0).getDepartureTime());
+        assertEquals(Instant.parse("2025-06-16T08:00:00Z"), inserted.getAllValues().get(4).getDepartureTime());
+        verify(rideTemplateRepository, never()).findActiveOn(any(), any());
+
+        verify(rideRepository, times(1)).findByDriverIdAndTimeOverlap(
+                "driver1", Instant.parse("2025-06-02T08:00:00Z"), Instant.parse("2025-06-30T09:00:00Z"));
+        verify(rideBookingRepository, times(1)).findOverlappingBookedRidesForPassenger(
+                "driver1", Instant.parse("2025-06-02T08:00:00Z"), Instant.parse("2025-06-30T09:00:00Z"));
+        verify(rideTemplateRepository, times(1)).save(any(RideTemplate.class));
+    }
+
+    @Test
+    void testCreateTemplate_ConflictWithAStoredRide() {
+        Ride wednesdayRide = new Ride("driver1", "Ploiesti", "Brasov",
+                Instant.parse("2025-06-11T08:45:00Z"), Instant.parse("2025-06-11T10:00:00Z"), 30, 2, "B-123-ABC");
+
+        when(userCache.existsById("driver1")).thenReturn(true);
+        when(vehicleRepository.existsByLicensePlate("B-123-ABC")).thenReturn(true);
+        when(rideRepository.findByDriverIdAndTimeOverlap(any(), any(), any())).thenReturn(List.of(wednesdayRide));
+
+        RideConflictException exception = assertThrows(RideConflictException.class,
+                () -> rideTemplateService.createTemplate(commute()));
+
+        assertEquals("Driver involved in another ride.", exception.getMessage());
+        verify(rideTemplateRepository, never()).save(any(RideTemplate.class));
+    }
+
+    @Test
+    void testMaterialize_StoresOnlyTheMissingRides() {
+        RideTemplate stored = storedCommute();
+        RideTemplate missing = storedCommute();
+        missing.setId("template2");
+        Ride storedRide = stored.toRide(stored.occurrenceOn(WEDNESDAY).get());
+
+        when(rideTemplateRepository.findActiveOn(WEDNESDAY, DayOfWeek.WEDNESDAY)).thenReturn(List.of(stored, missing));
+        when(rideRepository.findTemplateRidesDepartingBetween(anyCollection(), any(), any())).thenReturn(List.of(storedRide));
+        when(rideRepository.insert(any(Ride.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        rideTemplateService.materialize(WEDNESDAY);
+
+        ArgumentCaptor<Ride> inserted = ArgumentCaptor.forClass(Ride.class);
+        verify(rideRepository, times(1)).insert(inserted.capture());
+        assertEquals("template2", inserted.getValue().getTemplateId());
+        assertEquals(Instant.parse("2025-06-04T08:00:00Z"), inserted.getValue().getDepartureTime());
+        verify(rideSearchIndex, times(1)).put(inserted.getValue());
+    }
+
+    @Test
+    void testMaterializeUpcoming_StoresOneDayMoreThanTheSearchesSkip() {
+        when(rideTemplateRepository.findActiveOn(any(LocalDate.class), any(DayOfWeek.class))).thenReturn(List.of());
+
+        rideTemplateService.materializeUpcoming();
+
+        verify(rideTemplateRepository, times(15)).findActiveOn(any(LocalDate.class), any(DayOfWeek.class));
+        verify(rideTemplateRepository, times(1)).findActiveOn(LocalDate.parse("2025-06-16"), DayOfWeek.MONDAY);
+        assertTrue(rideTemplateService.isMaterialized(LocalDate.parse("2025-05-30")));
+        assertTrue(rideTemplateService.isMaterialized(LocalDate.parse("2025-06-15")));
+        assertFalse(rideTemplateService.isMaterialized(LocalDate.parse("2025-06-16")));
+    }
+}
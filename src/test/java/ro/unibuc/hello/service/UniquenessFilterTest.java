@@ -0,0 +1,133 @@
+package ro.unibuc.hello.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ro.unibuc.hello.model.User;
+import ro.unibuc.hello.model.Vehicle;
+import ro.unibuc.hello.repository.UserRepository;
+import ro.unibuc.hello.repository.VehicleRepository;
+import ro.unibuc.hello.service.UniquenessFilter.Field;
+
+@ExtendWith(MockitoExtension.class)
+public class UniquenessFilterTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private VehicleRepository vehicleRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private UniquenessFilter uniquenessFilter;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        uniquenessFilter = new UniquenessFilter(userRepository, vehicleRepository, meterRegistry, true, 1000, 0.0001);
+        uniquenessFilter.registerMetrics();
+    }
+
+    private void load() {
+        when(vehicleRepository.streamLicensePlatesBy())
+            .thenReturn(Stream.of(new Vehicle("u1", "Dacia", "Logan", "B-123-ABC")));
+        when(userRepository.streamMailsAndPhoneNumbersBy())
+            .thenReturn(Stream.of(new User("Andrei", "Popescu", "andrei@gmail.com", "0787828282", new ArrayList<>())));
+        uniquenessFilter.reload();
+    }
+
+    @Test
+    void testMightContain_EverythingBeforeTheFirstLoad() {
+        assertTrue(uniquenessFilter.mightContain(Field.LICENSE_PLATE, "B-999-ZZZ"));
+        assertTrue(uniquenessFilter.mightContain(Field.MAIL, "nobody@gmail.com"));
+    }
+
+    @Test
+    void testReload_LoadsEveryField() {
+        load();
+
+        assertTrue(uniquenessFilter.mightContain(Field.LICENSE_PLATE, "B-123-ABC"));
+        assertTrue(uniquenessFilter.mightContain(Field.MAIL, "andrei@gmail.com"));
+        assertTrue(uniquenessFilter.mightContain(Field.PHONE_NUMBER, "0787828282"));
+        assertFalse(uniquenessFilter.mightContain(Field.MAIL, "0787828282"));
+        assertEquals(1.0, meterRegistry.get("uniqueness.filter.entries").tag("field", "license_plate").gauge().value());
+    }
+
+    @Test
+    void testExists_DefiniteNegativeSkipsTheLookup() {
+        load();
+
+        assertFalse(uniquenessFilter.exists(Field.LICENSE_PLATE, "B-999-ZZZ", vehicleRepository::existsByLicensePlate));
+        verify(vehicleRepository, never()).existsByLicensePlate("B-999-ZZZ");
+
+        when(vehicleRepository.existsByLicensePlate("B-123-ABC")).thenReturn(true);
+        assertTrue(uniquenessFilter.exists(Field.LICENSE_PLATE, "B-123-ABC", vehicleRepository::existsByLicensePlate));
+        verify(vehicleRepository, times(1)).existsByLicensePlate("B-123-ABC");
+    }
+
+    @Test
+    void testOnAfterSave_AddsSavedValues() {
+        load();
+        Vehicle vehicle = new Vehicle("u1", "Dacia", "Duster", "CJ-01-NEW");
+
+        assertFalse(uniquenessFilter.mightContain(Field.LICENSE_PLATE, "CJ-01-NEW"));
+        uniquenessFilter.onAfterSave(new AfterSaveEvent<>(vehicle, null, "vehicles"));
+
+        assertTrue(uniquenessFilter.mightContain(Field.LICENSE_PLATE, "CJ-01-NEW"));
+    }
+
+    @Test
+    void testRemove_DeletedPlateIsRuledOut() {
+        load();
+
+        uniquenessFilter.remove(Field.LICENSE_PLATE, "B-123-ABC");
+
+        assertFalse(uniquenessFilter.mightContain(Field.LICENSE_PLATE, "B-123-ABC"));
+    }
+
+    @Test
+    void testCountingBloomFilter_NoFalseNegativesAndBoundedFalsePositives() {
+        CountingBloomFilter filter = new CountingBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.add("B-" + i + "-ABC");
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("B-" + i + "-ABC"));
+            if (filter.mightContain("CJ-" + i + "-XYZ")) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+        assertEquals(0.01, filter.expectedFalsePositiveProbability(), 0.005);
+    }
+
+    @Test
+    void testOfDuplicateKey_ReadsTheIndexNameNotTheKey() {
+        assertEquals(Optional.of(Field.PHONE_NUMBER), Field.ofDuplicateKey(
+            "E11000 duplicate key error collection: test.users index: phoneNumber_1 dup key: { phoneNumber: \"0787828282\" }"));
+        // a mail that spells the other field still names the mail index
+        assertEquals(Optional.of(Field.MAIL), Field.ofDuplicateKey(
+            "E11000 duplicate key error collection: test.users index: mail dup key: { mail: \"phoneNumber@gmail.com\" }"));
+        assertEquals(Optional.empty(), Field.ofDuplicateKey("connection reset"));
+    }
+}
@@ -0,0 +1,140 @@
+package ro.unibuc.hello.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ro.unibuc.hello.model.User;
+import ro.unibuc.hello.model.UserView;
+import ro.unibuc.hello.repository.UserRepository;
+
+@ExtendWith(MockitoExtension.class)
+public class UserCacheTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private UserCache userCache;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        userCache = new UserCache(userRepository, meterRegistry, 100, Duration.ofMinutes(1));
+
+        user = new User("Andrei", "Popescu", "andrei@gmail.com", "0787828282", new ArrayList<>());
+        user.setId("1");
+    }
+
+    @Test
+    void testFindById_LoadsOnce() {
+        when(userRepository.findViewById("1")).thenReturn(Optional.of(user));
+
+        assertTrue(userCache.existsById("1"));
+        assertEquals("Andrei", userCache.findById("1").get().firstName());
+
+        verify(userRepository, times(1)).findViewById("1");
+        verify(userRepository, never()).findById("1");
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "users.byId").tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void testFindById_MissIsNotCached() {
+        when(userRepository.findViewById("2")).thenReturn(Optional.empty());
+
+        assertFalse(userCache.existsById("2"));
+        assertFalse(userCache.existsById("2"));
+
+        verify(userRepository, times(2)).findViewById("2");
+    }
+
+    @Test
+    void testFindByMail_KeepsTheIdForTheLookupById() {
+        when(userRepository.findViewByMail("andrei@gmail.com")).thenReturn(Optional.of(user));
+        when(userRepository.findViewById("1")).thenReturn(Optional.of(user));
+
+        assertEquals("1", userCache.findByMail("andrei@gmail.com").get().id());
+        assertEquals("1", userCache.findByMail("andrei@gmail.com").get().id());
+        assertEquals("1", userCache.findByMail("andrei@gmail.com").get().id());
+        assertTrue(userCache.existsById("1"));
+
+        verify(userRepository, times(1)).findViewByMail("andrei@gmail.com");
+        verify(userRepository, times(1)).findViewById("1");
+    }
+
+    @Test
+    void testInvalidate_WhileLoadingTheOldUserIsNotKept() throws Exception {
+        User renamed = new User("Razvan", "Leclerc", "andrei@gmail.com", "0787828282", new ArrayList<>());
+        renamed.setId("1");
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch invalidated = new CountDownLatch(1);
+        when(userRepository.findViewById("1")).thenAnswer(invocation -> {
+            loading.countDown();
+            invalidated.await(5, TimeUnit.SECONDS);
+            return Optional.of(user);
+        }).thenReturn(Optional.of(renamed));
+
+        CompletableFuture<Optional<UserView>> stale = CompletableFuture.supplyAsync(() -> userCache.findById("1"));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        // the rename is saved and the user invalidated while the old view is being read
+        userCache.invalidate("1");
+        invalidated.countDown();
+
+        assertEquals("Andrei", stale.get(5, TimeUnit.SECONDS).get().firstName());
+        assertEquals("Razvan", userCache.findById("1").get().firstName());
+        verify(userRepository, times(2)).findViewById("1");
+    }
+
+    @Test
+    void testInvalidate_ReloadsTheUser() {
+        User renamed = new User("Razvan", "Leclerc", "andrei@gmail.com", "0787828282", new ArrayList<>());
+        renamed.setId("1");
+        when(userRepository.findViewByPhoneNumber("0787828282")).thenReturn(Optional.of(user));
+        when(userRepository.findViewById("1")).thenReturn(Optional.of(renamed));
+
+        userCache.findByPhoneNumber("0787828282");
+        userCache.invalidate("1");
+
+        assertEquals("Razvan", userCache.findByPhoneNumber("0787828282").get().firstName());
+        verify(userRepository, times(1)).findViewByPhoneNumber("0787828282");
+    }
+
+    @Test
+    void testFindAllById_LoadsOnlyTheMisses() {
+        User other = new User("Marius", "Ivan", "ivan@gmail.com", "0712354324", new ArrayList<>());
+        other.setId("2");
+        when(userRepository.findViewById("1")).thenReturn(Optional.of(user));
+        when(userRepository.findViewsByIdIn(anyCollection())).thenReturn(List.of(other));
+
+        userCache.findById("1");
+        Map<String, UserView> users = userCache.findAllById(List.of("1", "2", "3"));
+
+        assertEquals(2, users.size());
+        assertEquals("Marius", users.get("2").firstName());
+        verify(userRepository, times(1)).findViewsByIdIn(Set.of("2", "3"));
+        verify(userRepository, never()).findAllById(anyCollection());
+    }
+}
@@ -2,8 +2,10 @@ package ro.unibuc.hello.service;
 
 import static org.junit.Assert.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -14,22 +16,26 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.springframework.security.crypto.password.PasswordEncoder;
-
 
+import ro.unibuc.hello.dto.page.PageResponseDTO;
 import ro.unibuc.hello.dto.user.UserRequestDTO;
 import ro.unibuc.hello.dto.user.UserResponseDTO;
 import ro.unibuc.hello.exceptions.user.InvalidUserException;
 import ro.unibuc.hello.model.User;
+import ro.unibuc.hello.model.UserView;
 import ro.unibuc.hello.repository.UserRepository;
+import ro.unibuc.hello.service.UniquenessFilter.Field;
 
 @ExtendWith(MockitoExtension.class)
 public class UserServiceTest {
@@ -38,7 +44,13 @@ public class UserServiceTest {
     private UserRepository userRepository;
 
     @Mock
-    private PasswordEncoder passwordEncoder;
+    private PasswordHasher passwordHasher;
+
+    @Mock
+    private UserCache userCache;
+
+    @Mock
+    private UniquenessFilter uniquenessFilter;
 
     @InjectMocks
     private UserService userService;
@@ -71,12 +83,42 @@ public class UserServiceTest {
 
    }
 
+   @Test
+   void testGetUsersPage_MapsTheUsersAndKeepsTheCursor() {
+    List<User> users = new ArrayList<>();
+    for (int i = 1; i <= 3; i++) {
+        User user = new User("Andrei", "Popescu" + i, "andrei" + i + "@gmail.com", "078782828" + i, new ArrayList<>());
+        user.setId(String.valueOf(i));
+        user.setPasswordHash("hash" + i);
+        users.add(user);
+    }
+    when(userRepository.findByOrderByIdAsc(Limit.of(3))).thenReturn(users);
+
+    PageResponseDTO<UserResponseDTO> page = userService.getUsersPage(null, 2);
+
+    assertEquals(2, page.getItems().size());
+    assertEquals("andrei2@gmail.com", page.getItems().get(1).getMail());
+    assertEquals(PageResponseDTO.encodeCursor("2"), page.getNextCursor());
+   }
+
+   @Test
+   void testStreamAllUsers_MapsTheUsersAndClosesTheCursor() {
+    User user = new User("Andrei", "Popescu", "andrei@gmail.com", "0787828282", new ArrayList<>());
+    AtomicBoolean closed = new AtomicBoolean();
+    when(userRepository.streamViewsBy()).thenReturn(Stream.of(user).onClose(() -> closed.set(true)));
+
+    try (Stream<UserResponseDTO> users = userService.streamAllUsers()) {
+        assertEquals("andrei@gmail.com", users.findFirst().get().getMail());
+    }
+    assertTrue(closed.get());
+   }
+
    @Test
    void testGetById() {
 
     User user = new User("Andrei", "Popescu", "andrei@gmail.com", "0787828282", new ArrayList<>());
 
-    when(userRepository.findById("1")).thenReturn(Optional.of(user));
+    when(userCache.findById("1")).thenReturn(Optional.of(UserView.of(user)));
 
     UserResponseDTO result = userService.getUserById("1");
 
@@ -99,7 +141,7 @@ public class UserServiceTest {
 
     User user = new User("Andrei", "Popescu", "andrei@gmail.com", "0787828282", new ArrayList<>());
 
-    when(userRepository.findByMail("andrei@gmail.com")).thenReturn(Optional.of(user));
+    when(userCache.findByMail("andrei@gmail.com")).thenReturn(Optional.of(UserView.of(user)));
 
     UserResponseDTO result = userService.getUserByMail("andrei@gmail.com");
 
@@ -128,6 +170,9 @@ public class UserServiceTest {
 
     UserResponseDTO result = userService.updateUserName("1", "Andrei", "Popescu");
 
+    // Assert the cached user is dropped
+    verify(userCache, times(1)).invalidate("1");
+
     // Assert name
     assertEquals("Razvan", result.getFirstName());
     assertEquals("Leclerc", result.getLastName());
@@ -164,8 +209,6 @@ public class UserServiceTest {
 
     UserRequestDTO newUser = new UserRequestDTO("Andrei", "Popescu", "andrei@gmail.com", "0787828282", "parolamea");
 
-    when(userRepository.findByMail(newUser.getMail())).thenReturn(Optional.empty());
-    when(userRepository.findByPhoneNumber(newUser.getPhoneNumber())).thenReturn(Optional.empty());
     when(userRepository.save(any(User.class))).thenReturn(newUser.toEntity());
 
     UserResponseDTO result = userService.createUser(newUser);
@@ -175,6 +218,29 @@ public class UserServiceTest {
     assertEquals(newUser.getMail(), result.getMail());
     assertEquals(newUser.getPhoneNumber(), result.getPhoneNumber());
 
+    // no entity lookups before the insert, only the uniqueness checks
+    verify(userRepository, never()).findByMail(anyString());
+    verify(userRepository, never()).findByPhoneNumber(anyString());
+    verify(uniquenessFilter).exists(eq(Field.MAIL), eq("andrei@gmail.com"), any());
+    verify(uniquenessFilter).exists(eq(Field.PHONE_NUMBER), eq("0787828282"), any());
+
+   }
+
+   @Test 
+   void testCreateUser_StoredPhoneRejectedBeforeHashing() {
+
+    UserRequestDTO newUser = new UserRequestDTO("Andrei", "Popescu", "andrei@gmail.com", "0787828282", "parolamea");
+
+    when(uniquenessFilter.exists(eq(Field.MAIL), eq("andrei@gmail.com"), any())).thenReturn(false);
+    when(uniquenessFilter.exists(eq(Field.PHONE_NUMBER), eq("0787828282"), any())).thenReturn(true);
+    DuplicateKeyException exception = assertThrows(DuplicateKeyException.class, () -> {
+        UserResponseDTO result = userService.createUser(newUser);
+    });
+
+    assertEquals("Phone number 0787828282 already used", exception.getMessage());
+    verify(passwordHasher, never()).hash(anyString());
+    verify(userRepository, never()).save(any());
+
    }
 
    @Test 
@@ -182,14 +248,14 @@ public class UserServiceTest {
 
     UserRequestDTO newUser = new UserRequestDTO("Andrei", "Popescu", "andrei@gmail.com", "0787828282", "parolamea");
 
-    when(userRepository.findByMail(newUser.getMail())).thenReturn(Optional.of(newUser.toEntity()));
-    assertThrows(DuplicateKeyException.class, () -> {
+    when(userRepository.save(any(User.class))).thenThrow(new DuplicateKeyException(
+        "E11000 duplicate key error collection: test.users index: mail dup key: { mail: \"andrei@gmail.com\" }"));
+    DuplicateKeyException exception = assertThrows(DuplicateKeyException.class, () -> {
         UserResponseDTO result = userService.createUser(newUser);
     });
 
-    verify(userRepository, times(0)).save(any());
-    verify(userRepository, times(1)).findByMail(newUser.getMail());
-    verify(userRepository, times(0)).findByPhoneNumber(newUser.getPhoneNumber());
+    assertEquals("Email already exists: andrei@gmail.com", exception.getMessage());
+    verify(userRepository, times(1)).save(any());
 
    }
 
@@ -198,15 +264,14 @@ public class UserServiceTest {
 
     UserRequestDTO newUser = new UserRequestDTO("Andrei", "Popescu", "andrei@gmail.com", "0787828282", "parolamea");
 
-    when(userRepository.findByMail(newUser.getMail())).thenReturn(Optional.empty());
-    when(userRepository.findByPhoneNumber(newUser.getPhoneNumber())).thenReturn(Optional.of(newUser.toEntity()));
-    assertThrows(DuplicateKeyException.class, () -> {
+    when(userRepository.save(any(User.class))).thenThrow(new DuplicateKeyException(
+        "E11000 duplicate key error collection: test.users index: phoneNumber_1 dup key: { phoneNumber: \"0787828282\" }"));
+    DuplicateKeyException exception = assertThrows(DuplicateKeyException.class, () -> {
         UserResponseDTO result = userService.createUser(newUser);
     });
 
-    verify(userRepository, times(0)).save(any());
-    verify(userRepository, times(1)).findByMail(newUser.getMail());
-    verify(userRepository, times(1)).findByPhoneNumber(newUser.getPhoneNumber());
+    assertEquals("Phone number 0787828282 already used", exception.getMessage());
+    verify(userRepository, times(1)).save(any());
 
    }
 
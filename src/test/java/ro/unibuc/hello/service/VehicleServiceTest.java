@@ -15,19 +15,23 @@ import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+import org.springframework.dao.DuplicateKeyException;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import ro.unibuc.hello.dto.vehicle.VehicleDTO;
 import ro.unibuc.hello.exceptions.vehicle.VehicleConflictException;
 import ro.unibuc.hello.model.User;
+import ro.unibuc.hello.model.UserView;
 import ro.unibuc.hello.model.Vehicle;
-import ro.unibuc.hello.repository.UserRepository;
 import ro.unibuc.hello.repository.VehicleRepository;
 
 @ExtendWith(MockitoExtension.class)
@@ -37,7 +41,11 @@ public class VehicleServiceTest {
     private VehicleRepository vehicleRepository;
 
     @Mock
-    private UserRepository userRepository;
+    private UserCache userCache;
+
+    // disabled filter, every plate lookup goes to the repository
+    @Spy
+    private UniquenessFilter uniquenessFilter = new UniquenessFilter(null, null, new SimpleMeterRegistry(), false, 100, 0.01);
 
     @InjectMocks
     private VehicleService vehicleService;
@@ -76,8 +84,7 @@ public class VehicleServiceTest {
         VehicleDTO vehicleDTO = new VehicleDTO("userId1", "Dacia", "Logan", "B-123-XYZ");
         Vehicle vehicle = vehicleDTO.toEntity();
         
-        when(vehicleRepository.existsByLicensePlate("B-123-XYZ")).thenReturn(false);
-        when(userRepository.findById("userId1")).thenReturn(Optional.of(new User()));
+        when(userCache.findById("userId1")).thenReturn(Optional.of(UserView.of(new User())));
         when(vehicleRepository.save(any(Vehicle.class))).thenReturn(vehicle);
 
         // When
@@ -85,8 +92,8 @@ public class VehicleServiceTest {
 
         // Then
         assertEquals("B-123-XYZ", result.getLicensePlate());
-        verify(vehicleRepository, times(1)).existsByLicensePlate("B-123-XYZ");
-        verify(userRepository, times(1)).findById("userId1");
+        verify(vehicleRepository, never()).existsByLicensePlate(anyString());
+        verify(userCache, times(1)).findById("userId1");
         verify(vehicleRepository, times(1)).save(any(Vehicle.class));
     }
 
@@ -95,16 +102,17 @@ public class VehicleServiceTest {
         // Given
         VehicleDTO vehicleDTO = new VehicleDTO("userId1", "Dacia", "Logan", "B-123-XYZ");
         
-        when(vehicleRepository.existsByLicensePlate("B-123-XYZ")).thenReturn(true);
+        when(userCache.findById("userId1")).thenReturn(Optional.of(UserView.of(new User())));
+        when(vehicleRepository.save(any(Vehicle.class))).thenThrow(new DuplicateKeyException("licensePlate dup key"));
 
         // When/Then
-        assertThrows(VehicleConflictException.class, () -> {
+        VehicleConflictException exception = assertThrows(VehicleConflictException.class, () -> {
             vehicleService.addVehicle(vehicleDTO);
         });
         
-        verify(vehicleRepository, times(1)).existsByLicensePlate("B-123-XYZ");
-        verify(userRepository, never()).findById(anyString());
-        verify(vehicleRepository, never()).save(any());
+        assertEquals("License plate already used.", exception.getMessage());
+        verify(vehicleRepository, never()).existsByLicensePlate(anyString());
+        verify(vehicleRepository, times(1)).save(any());
     }
 
     @Test
@@ -112,16 +120,14 @@ public class VehicleServiceTest {
         // Given
         VehicleDTO vehicleDTO = new VehicleDTO("userId1", "Dacia", "Logan", "B-123-XYZ");
         
-        when(vehicleRepository.existsByLicensePlate("B-123-XYZ")).thenReturn(false);
-        when(userRepository.findById("userId1")).thenReturn(Optional.empty());
+        when(userCache.findById("userId1")).thenReturn(Optional.empty());
 
         // When/Then
         assertThrows(VehicleConflictException.class, () -> {
             vehicleService.addVehicle(vehicleDTO);
         });
         
-        verify(vehicleRepository, times(1)).existsByLicensePlate("B-123-XYZ");
-        verify(userRepository, times(1)).findById("userId1");
+        verify(userCache, times(1)).findById("userId1");
         verify(vehicleRepository, never()).save(any());
     }
 
@@ -187,6 +193,26 @@ public class VehicleServiceTest {
         verify(vehicleRepository, never()).save(any());
     }
 
+    @Test
+    void testUpdateLicensePlate_NewPlateSavedMeanwhileConflict() {
+        // Given
+        String oldPlate = "B-OLD-123";
+        String newPlate = "B-NEW-123";
+        Vehicle vehicle = new Vehicle("id1", "Dacia", "Logan", oldPlate);
+
+        when(vehicleRepository.existsByLicensePlate(oldPlate)).thenReturn(true);
+        when(vehicleRepository.existsByLicensePlate(newPlate)).thenReturn(false);
+        when(vehicleRepository.findOneByLicensePlate(oldPlate)).thenReturn(vehicle);
+        when(vehicleRepository.save(any(Vehicle.class))).thenThrow(new DuplicateKeyException("licensePlate dup key"));
+
+        // When/Then
+        VehicleConflictException exception = assertThrows(VehicleConflictException.class, () -> {
+            vehicleService.updateLicensePlate(oldPlate, newPlate);
+        });
+
+        assertEquals("License plate already used, try a new one.", exception.getMessage());
+    }
+
     @Test
     void testDeleteByLicensePlate_Success() {
         // Given